@@ -0,0 +1,56 @@
+package it.polimi.tiw.bench;
+
+import java.util.List;
+
+/**
+ * @file BenchCase.java
+ * @brief This class is a benchmark run by BenchRunner.
+ * @class BenchCase
+ *
+ * A benchmark has a grid of parameters, e.g. the shape and size of a tree: for each of
+ * them setup builds the data once, then run is timed over and over. When the operation
+ * changes its input, prepare restores it before every run, outside the timed region.
+ */
+public abstract class BenchCase {
+
+	/**
+	 * @brief Gets the name of the benchmark.
+	 * @return the name, unique among the benchmarks.
+	 */
+	public abstract String getName();
+
+	/**
+	 * @brief Gets the parameters the benchmark runs with.
+	 * @return the parameters, e.g. "deep/1000".
+	 */
+	public abstract List<String> getParams();
+
+	/**
+	 * @brief Builds the data of a run of the benchmark.
+	 * @param param one of the parameters of the benchmark.
+	 * @throws Exception if the data cannot be built.
+	 */
+	public abstract void setup(String param) throws Exception;
+
+	/**
+	 * @brief Tells whether prepare must be called before every run.
+	 * @return true if run changes its input.
+	 */
+	public boolean hasPrepare() {
+		return false;
+	}
+
+	/**
+	 * @brief Restores the input of run; not timed.
+	 * @throws Exception if the input cannot be restored.
+	 */
+	public void prepare() throws Exception {
+	}
+
+	/**
+	 * @brief Runs the measured operation once.
+	 * @return the result of the operation, consumed so that it is not optimized away.
+	 * @throws Exception if the operation fails, stopping the benchmark.
+	 */
+	public abstract Object run() throws Exception;
+}
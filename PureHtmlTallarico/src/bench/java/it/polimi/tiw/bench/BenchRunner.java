@@ -0,0 +1,307 @@
+package it.polimi.tiw.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * @file BenchRunner.java
+ * @brief This class runs the benchmarks and compares their results with a baseline.
+ * @class BenchRunner
+ *
+ * Each benchmark runs once for every one of its parameters: warm-up iterations let the
+ * JIT compile the code, then the measurement iterations give the average time of an
+ * operation. Every case runs in a fresh JVM, so the profile collected by one case does
+ * not steer the compilation of the next. The options are:
+ * - -f forks: JVMs per case, 0 to run in this JVM (default 1);
+ * - -wi iterations, -i iterations: warm-up and measurement iterations (default 5 and 5);
+ * - -t ms: length of an iteration (default 1000);
+ * - -jvmArgs "args": options of the forked JVMs (default "-Xms1g -Xmx1g");
+ * - -o file: writes the results as CSV, e.g. to keep them as a baseline;
+ * - -b file: compares the results with a baseline written by -o;
+ * - any other argument is a regular expression selecting the cases, e.g. "treeOrder:deep".
+ *
+ * Unlike TreeOrderBenchmark and TreeRenderBenchmark, which compare an algorithm with the
+ * one it replaced, the suite measures the current code, to be judged against the results
+ * of a previous build. Run it from the project directory with the webapp classes, the
+ * bench sources and the libraries on the classpath:
+ *
+ *     java it.polimi.tiw.bench.BenchRunner -o baseline.csv
+ *     java it.polimi.tiw.bench.BenchRunner -b baseline.csv [cases...]
+ */
+public class BenchRunner {
+	private static final String RESULT = "RESULT ";
+
+	private int forks = 1;
+	private int warmups = 5;
+	private int iterations = 5;
+	private long iterationNanos = 1_000_000_000L;
+	private String jvmArgs = "-Xms1g -Xmx1g";
+	private Path output;
+	private Path baseline;
+	private final List<Pattern> filters = new ArrayList<>();
+
+	/**
+	 * @brief Runs the benchmarks selected by the arguments.
+	 * @param args the options, see the class description.
+	 * @throws Exception if a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		BenchRunner runner = new BenchRunner();
+		String single = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-f":
+				runner.forks = Integer.parseInt(args[++i]);
+				break;
+			case "-wi":
+				runner.warmups = Integer.parseInt(args[++i]);
+				break;
+			case "-i":
+				runner.iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-t":
+				runner.iterationNanos = Long.parseLong(args[++i]) * 1_000_000L;
+				break;
+			case "-jvmArgs":
+				runner.jvmArgs = args[++i];
+				break;
+			case "-o":
+				runner.output = Path.of(args[++i]);
+				break;
+			case "-b":
+				runner.baseline = Path.of(args[++i]);
+				break;
+			case "--case":
+				single = args[++i];
+				break;
+			default:
+				runner.filters.add(Pattern.compile(args[i]));
+			}
+		}
+		if (single != null) {
+			// forked by the parent: run one case and print its times
+			System.out.println(RESULT + single + " " + join(runner.measure(single)));
+			return;
+		}
+		runner.runAll();
+	}
+
+	/**
+	 * @brief Gets every benchmark of the application.
+	 * @return the benchmarks.
+	 */
+	static List<BenchCase> benchmarks() {
+		return List.of(new TreeOrderCase(), new RowMappingCase(), new RenderCase());
+	}
+
+	private void runAll() throws Exception {
+		Map<String, double[]> expected = baseline != null ? read(baseline) : Map.of();
+		Map<String, double[]> results = new LinkedHashMap<>();
+		System.out.printf("%-40s %14s %12s %14s %9s%n", "Case", "us/op", "stddev", "baseline", "change");
+		for (BenchCase benchmark : benchmarks()) {
+			for (String param : benchmark.getParams()) {
+				String id = benchmark.getName() + ":" + param;
+				if (!selected(id)) {
+					continue;
+				}
+				List<Double> times = new ArrayList<>();
+				if (forks == 0) {
+					times.addAll(measure(id));
+				} else {
+					for (int fork = 0; fork < forks; fork++) {
+						times.addAll(fork(id));
+					}
+				}
+				double[] score = score(times);
+				results.put(id, score);
+				print(id, score, expected.get(id));
+			}
+		}
+		if (output != null) {
+			write(output, results);
+		}
+	}
+
+	private boolean selected(String id) {
+		if (filters.isEmpty()) {
+			return true;
+		}
+		for (Pattern filter : filters) {
+			if (filter.matcher(id).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @brief Runs a case in this JVM.
+	 * @param id the benchmark and its parameter, separated by a colon.
+	 * @return the average time of an operation in every measurement iteration, in nanoseconds.
+	 * @throws Exception if the benchmark fails.
+	 */
+	private List<Double> measure(String id) throws Exception {
+		int colon = id.indexOf(':');
+		BenchCase benchmark = null;
+		for (BenchCase candidate : benchmarks()) {
+			if (candidate.getName().equals(id.substring(0, colon))) {
+				benchmark = candidate;
+			}
+		}
+		if (benchmark == null) {
+			throw new IllegalArgumentException("Unknown benchmark: " + id);
+		}
+		benchmark.setup(id.substring(colon + 1));
+		for (int i = 0; i < warmups; i++) {
+			iteration(benchmark);
+		}
+		List<Double> times = new ArrayList<>();
+		for (int i = 0; i < iterations; i++) {
+			times.add(iteration(benchmark));
+		}
+		return times;
+	}
+
+	private double iteration(BenchCase benchmark) throws Exception {
+		System.gc();
+		long operations = 0;
+		long measured = 0;
+		long end = System.nanoTime() + iterationNanos;
+		if (benchmark.hasPrepare()) {
+			// only the operations are timed, not the preparation of their input
+			while (System.nanoTime() < end || operations == 0) {
+				benchmark.prepare();
+				long start = System.nanoTime();
+				Object result = benchmark.run();
+				measured += System.nanoTime() - start;
+				Blackhole.consume(result);
+				operations++;
+			}
+		} else {
+			long start = System.nanoTime();
+			long now = start;
+			while (now < end || operations == 0) {
+				Blackhole.consume(benchmark.run());
+				operations++;
+				now = System.nanoTime();
+			}
+			measured = now - start;
+		}
+		return (double) measured / operations;
+	}
+
+	private List<Double> fork(String id) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		for (String arg : jvmArgs.trim().split("\\s+")) {
+			if (!arg.isEmpty()) {
+				command.add(arg);
+			}
+		}
+		String webapp = System.getProperty("bench.webapp");
+		if (webapp != null) {
+			command.add("-Dbench.webapp=" + webapp);
+		}
+		command.addAll(List.of("-cp", System.getProperty("java.class.path"), BenchRunner.class.getName(), "--case", id,
+				"-wi", Integer.toString(warmups), "-i", Integer.toString(iterations), "-t",
+				Long.toString(iterationNanos / 1_000_000L)));
+		Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		List<Double> times = null;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(RESULT + id + " ")) {
+					times = new ArrayList<>();
+					for (String time : line.substring(RESULT.length() + id.length() + 1).split(",")) {
+						times.add(Double.parseDouble(time));
+					}
+				}
+			}
+		}
+		if (process.waitFor() != 0 || times == null) {
+			throw new IllegalStateException("The fork running " + id + " failed");
+		}
+		return times;
+	}
+
+	/**
+	 * @brief Computes the mean and the standard deviation of the times of a case.
+	 * @param times the times of the iterations, in nanoseconds.
+	 * @return the mean and the standard deviation, in nanoseconds.
+	 */
+	private static double[] score(List<Double> times) {
+		double sum = 0;
+		for (double time : times) {
+			sum += time;
+		}
+		double mean = sum / times.size();
+		double squares = 0;
+		for (double time : times) {
+			squares += (time - mean) * (time - mean);
+		}
+		return new double[] { mean, times.size() > 1 ? Math.sqrt(squares / (times.size() - 1)) : 0 };
+	}
+
+	/**
+	 * @brief Prints a result, with its change from the baseline if there is one.
+	 * @param id the case.
+	 * @param score the mean and the standard deviation.
+	 * @param expected the mean and the standard deviation of the baseline, or null.
+	 *
+	 * A change within twice the combined standard deviations is marked with a tilde,
+	 * as it is not distinguishable from noise.
+	 */
+	private static void print(String id, double[] score, double[] expected) {
+		String base = "";
+		String change = "";
+		if (expected != null) {
+			base = String.format("%.3f", expected[0] / 1000);
+			double delta = (score[0] - expected[0]) / expected[0] * 100;
+			boolean noise = Math.abs(score[0] - expected[0]) < 2 * Math.hypot(score[1], expected[1]);
+			change = String.format("%+.1f%%%s", delta, noise ? "~" : "");
+		}
+		System.out.printf("%-40s %14.3f %12.3f %14s %9s%n", id, score[0] / 1000, score[1] / 1000, base, change);
+	}
+
+	private static void write(Path file, Map<String, double[]> results) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+			out.println("case,mean_ns,stddev_ns");
+			for (Map.Entry<String, double[]> result : results.entrySet()) {
+				out.printf("%s,%.1f,%.1f%n", result.getKey(), result.getValue()[0], result.getValue()[1]);
+			}
+		}
+	}
+
+	private static Map<String, double[]> read(Path file) throws IOException {
+		Map<String, double[]> results = new HashMap<>();
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		for (String line : lines.subList(1, lines.size())) {
+			String[] fields = line.split(",");
+			results.put(fields[0], new double[] { Double.parseDouble(fields[1]), Double.parseDouble(fields[2]) });
+		}
+		return results;
+	}
+
+	private static String join(List<Double> times) {
+		StringBuilder joined = new StringBuilder();
+		for (double time : times) {
+			if (joined.length() > 0) {
+				joined.append(',');
+			}
+			joined.append(time);
+		}
+		return joined.toString();
+	}
+}
@@ -0,0 +1,27 @@
+package it.polimi.tiw.bench;
+
+/**
+ * @file Blackhole.java
+ * @brief This class consumes the results of the benchmarks.
+ * @class Blackhole
+ *
+ * The JIT cannot prove that a consumed result is unused, so it cannot remove the code
+ * computing it; consuming costs a hash and a compare.
+ */
+public class Blackhole {
+	private static volatile int sink1 = 1;
+	private static volatile int sink2 = 2;
+	private static Object escape;
+
+	/**
+	 * @brief Consumes a result.
+	 * @param result the result of the operation.
+	 */
+	public static void consume(Object result) {
+		int hash = System.identityHashCode(result);
+		// never true, but the JIT cannot know it
+		if (hash == sink1 && hash == sink2) {
+			escape = result;
+		}
+	}
+}
@@ -0,0 +1,638 @@
+package it.polimi.tiw.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @file DatasetGenerator.java
+ * @brief This class fills the utente, docu and docu_chiusura tables with synthetic users and documents.
+ * @class DatasetGenerator
+ *
+ * Every user gets the same number of documents, generated breadth-first from a seed derived
+ * from the user ID, so a run is reproducible whatever the number of connections: top-level
+ * folders hold a random number of children, fanOut on average, a share of them folders
+ * until the maximum depth is reached, the others files with an extension drawn from the
+ * given weights and, with the given probability, a description. Documents without a
+ * description have an empty one, as those created by CreateFile. A document is never older
+ * than its folder. IDs are assigned by the generator, parents before children, so the
+ * closure rows are written along with the documents, sorted by their primary key.
+ *
+ * The rows are either inserted in the database with multi-row INSERTs, one transaction per
+ * user and the foreign key and unique checks disabled in the session, or written with
+ * --out to tab-separated files for LOAD DATA, together with the load.sql script loading
+ * them, which is the fastest way for tens of millions of rows:
+ *
+ *     mysql --local-infile=1 -u root -p nas < dataset/load.sql
+ *
+ * The schema must exist, e.g. created by SchemaMigrationListener; run the generator while
+ * the application is stopped, since the trees it caches are not invalidated. New IDs start
+ * after the largest in the database, or from 1 when writing files. The options are:
+ * - --users n, --docs n: users and documents per user (100, 1000);
+ * - --depth n: maximum levels of folders (8);
+ * - --fanOut n: children of a folder on average (10);
+ * - --folders p: share of the children that are folders (0.2);
+ * - --extensions ext=weight,...: extensions of the files (pdf=30,txt=25,jpg=20,docx=15,zip=10);
+ * - --descriptions p, --descriptionLength n: share of files with a description and its maximum length (0.5, 120);
+ * - --from date: creation date of the oldest documents (2015-01-01);
+ * - --prefix s: prefix of the names and mails of the users (gen);
+ * - --seed n: seed of the random generator (42);
+ * - --out dir: writes the files for LOAD DATA in dir instead of inserting the rows;
+ * - --url, --dbUser, --dbPassword: the database, as in web.xml;
+ * - --batch n: rows per INSERT (1000);
+ * - --connections n: users inserted at the same time (4).
+ *
+ *     java it.polimi.tiw.bench.DatasetGenerator --users 1000 --docs 10000 --out dataset
+ */
+public class DatasetGenerator {
+	private static final String PASSWORD = "password";
+	private static final String[] NAMES = { "documento", "relazione", "fattura", "foto", "appunti", "progetto",
+			"contratto", "backup", "bozza", "verbale", "preventivo", "presentazione" };
+	private static final String[] FOLDERS = { "cartella", "archivio", "lavoro", "personale", "scuola", "viaggi",
+			"condivisi", "vecchi" };
+	private static final String[] WORDS = { "versione", "finale", "della", "relazione", "per", "il", "cliente",
+			"rivista", "dopo", "la", "riunione", "di", "marzo", "copia", "bozza", "da", "controllare", "con",
+			"allegati", "e", "note", "del", "progetto", "annuale" };
+
+	private int users = 100;
+	private int docs = 1000;
+	private int depth = 8;
+	private int fanOut = 10;
+	private double folders = 0.2;
+	private String[] extensions;
+	private int[] weights;
+	private double descriptions = 0.5;
+	private int descriptionLength = 120;
+	private LocalDate from = LocalDate.of(2015, 1, 1);
+	private String prefix = "gen";
+	private long seed = 42;
+	private Path out = null;
+	private String url = "jdbc:mysql://localhost:3306/nas?serverTimezone=UTC";
+	private String dbUser = "root";
+	private String dbPassword = "password";
+	private int batch = 1000;
+	private int connections = 4;
+
+	private long today;
+	private int firstUser;
+	private int firstDocu;
+	private final AtomicInteger usersDone = new AtomicInteger();
+	private final AtomicLong documentsDone = new AtomicLong();
+	private final AtomicLong closureDone = new AtomicLong();
+
+	/**
+	 * @brief Generates the dataset.
+	 * @param args the options, see the class description.
+	 * @throws Exception if the rows cannot be written.
+	 */
+	public static void main(String[] args) throws Exception {
+		DatasetGenerator generator = new DatasetGenerator();
+		generator.setExtensions("pdf=30,txt=25,jpg=20,docx=15,zip=10");
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--users":
+				generator.users = Integer.parseInt(args[++i]);
+				break;
+			case "--docs":
+				generator.docs = Integer.parseInt(args[++i]);
+				break;
+			case "--depth":
+				generator.depth = Integer.parseInt(args[++i]);
+				break;
+			case "--fanOut":
+				generator.fanOut = Integer.parseInt(args[++i]);
+				break;
+			case "--folders":
+				generator.folders = Double.parseDouble(args[++i]);
+				break;
+			case "--extensions":
+				generator.setExtensions(args[++i]);
+				break;
+			case "--descriptions":
+				generator.descriptions = Double.parseDouble(args[++i]);
+				break;
+			case "--descriptionLength":
+				generator.descriptionLength = Integer.parseInt(args[++i]);
+				break;
+			case "--from":
+				generator.from = LocalDate.parse(args[++i]);
+				break;
+			case "--prefix":
+				generator.prefix = args[++i];
+				break;
+			case "--seed":
+				generator.seed = Long.parseLong(args[++i]);
+				break;
+			case "--out":
+				generator.out = Path.of(args[++i]);
+				break;
+			case "--url":
+				generator.url = args[++i];
+				break;
+			case "--dbUser":
+				generator.dbUser = args[++i];
+				break;
+			case "--dbPassword":
+				generator.dbPassword = args[++i];
+				break;
+			case "--batch":
+				generator.batch = Integer.parseInt(args[++i]);
+				break;
+			case "--connections":
+				generator.connections = Integer.parseInt(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		generator.run();
+	}
+
+	private void setExtensions(String list) {
+		String[] pairs = list.split(",");
+		extensions = new String[pairs.length];
+		weights = new int[pairs.length];
+		int total = 0;
+		for (int i = 0; i < pairs.length; i++) {
+			String[] pair = pairs[i].split("=", 2);
+			extensions[i] = pair[0].trim();
+			total += pair.length == 1 ? 1 : Integer.parseInt(pair[1].trim());
+			// cumulative, as pick expects
+			weights[i] = total;
+		}
+	}
+
+	private void run() throws Exception {
+		if (users < 0 || docs < 0 || depth < 1 || fanOut < 1 || batch < 1 || connections < 1
+				|| descriptionLength < 1 || descriptionLength > 255) {
+			throw new IllegalArgumentException("Invalid options, see the class description");
+		}
+		if ((long) users * docs > Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("Too many documents for the INT IDs of docu");
+		}
+		today = LocalDate.now().toEpochDay();
+		long start = System.nanoTime();
+		if (out != null) {
+			writeFiles();
+		} else {
+			insert();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long rows = usersDone.get() + documentsDone.get() + closureDone.get();
+		System.out.printf("%d users, %d documents, %d closure rows in %.1f s (%.0f rows/s)%n", usersDone.get(),
+				documentsDone.get(), closureDone.get(), seconds, rows / seconds);
+	}
+
+	/**
+	 * @brief Writes the rows to tab-separated files and the script loading them.
+	 * @throws IOException if a file cannot be written.
+	 * @throws SQLException never, the rows being written to files.
+	 */
+	private void writeFiles() throws IOException, SQLException {
+		Files.createDirectories(out);
+		firstUser = 1;
+		firstDocu = 1;
+		try (TsvSink sink = new TsvSink(out)) {
+			for (int i = 0; i < users; i++) {
+				generate(i, sink);
+				progress();
+			}
+		}
+		try (Writer script = Files.newBufferedWriter(out.resolve("load.sql"), StandardCharsets.UTF_8)) {
+			script.write("-- Generated by DatasetGenerator: loads the files of this folder into empty tables.\n"
+					+ "-- The server must allow it: SET GLOBAL local_infile = 1;\n\n"
+					+ "SET SESSION foreign_key_checks = 0;\nSET SESSION unique_checks = 0;\n\n");
+			script.write(load("utente", "id_utente, nome, mail, psw"));
+			script.write(load("docu", "id_docu, nome, creazione, proprietario, tipo, id_dirPadre, descrizione"));
+			script.write(load("docu_chiusura", "antenato, discendente, profondita"));
+			script.write("\nSET SESSION unique_checks = 1;\nSET SESSION foreign_key_checks = 1;\n");
+		}
+		System.out.printf("Load the files with: mysql --local-infile=1 nas < %s%n", out.resolve("load.sql"));
+	}
+
+	private String load(String table, String columns) {
+		String file = out.resolve(table + ".tsv").toAbsolutePath().toString().replace('\\', '/').replace("'", "\\'");
+		return "LOAD DATA LOCAL INFILE '" + file + "' INTO TABLE " + table + " CHARACTER SET utf8mb4\n"
+				+ "\tFIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'\n\t(" + columns + ");\n";
+	}
+
+	/**
+	 * @brief Inserts the rows in the database, each connection inserting its share of the users.
+	 * @throws Exception if the rows cannot be inserted.
+	 */
+	private void insert() throws Exception {
+		try (Connection connection = DriverManager.getConnection(url, dbUser, dbPassword);
+				Statement statement = connection.createStatement()) {
+			firstUser = maxId(statement, "SELECT COALESCE(MAX(id_utente), 0) FROM utente") + 1;
+			firstDocu = maxId(statement, "SELECT COALESCE(MAX(id_docu), 0) FROM docu") + 1;
+		}
+		if ((long) firstDocu + (long) users * docs > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many documents for the INT IDs of docu");
+		}
+		List<Thread> threads = new ArrayList<>();
+		List<Exception> errors = new ArrayList<>();
+		for (int t = 0; t < connections; t++) {
+			int first = t;
+			Thread thread = new Thread(() -> {
+				try (Connection connection = DriverManager.getConnection(url, dbUser, dbPassword);
+						JdbcSink sink = new JdbcSink(connection, batch)) {
+					for (int i = first; i < users; i += connections) {
+						generate(i, sink);
+						sink.commit();
+						progress();
+					}
+				} catch (Exception e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			}, "DatasetGenerator-" + t);
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!errors.isEmpty()) {
+			Exception error = errors.get(0);
+			for (int i = 1; i < errors.size(); i++) {
+				error.addSuppressed(errors.get(i));
+			}
+			throw error;
+		}
+	}
+
+	private static int maxId(Statement statement, String query) throws SQLException {
+		try (ResultSet result = statement.executeQuery(query)) {
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private void progress() {
+		int done = usersDone.incrementAndGet();
+		if (users >= 10 && done % (users / 10) == 0) {
+			System.out.printf("%d/%d users, %d documents, %d closure rows%n", done, users, documentsDone.get(),
+					closureDone.get());
+		}
+	}
+
+	/**
+	 * @brief Generates a user and its documents.
+	 * @param index the position of the user, from 0.
+	 * @param sink where the rows are written.
+	 * @throws IOException if the rows cannot be written to a file.
+	 * @throws SQLException if the rows cannot be inserted.
+	 */
+	private void generate(int index, RowSink sink) throws IOException, SQLException {
+		int idUtente = firstUser + index;
+		int base = firstDocu + index * docs;
+		SplittableRandom random = new SplittableRandom(seed * 1_000_003L + idUtente);
+		sink.utente(idUtente, prefix + idUtente, prefix + idUtente + "@example.com", PASSWORD);
+
+		// breadth-first: a folder is in the queue until its children are generated
+		int[] padre = new int[docs];
+		int[] livello = new int[docs];
+		long[] giorno = new long[docs];
+		int[] queue = new int[docs];
+		int head = 0;
+		int tail = 0;
+		int count = 0;
+		while (count < docs) {
+			if (head == tail) {
+				// the previous folders are full, or hold only files
+				int i = count++;
+				padre[i] = -1;
+				livello[i] = 0;
+				giorno[i] = day(random, from.toEpochDay());
+				queue[tail++] = i;
+				sink.docu(base + i, folderName(random, i), giorno[i], idUtente, "dir", 0, "");
+				continue;
+			}
+			int cartella = queue[head++];
+			int children = 1 + random.nextInt(2 * fanOut - 1);
+			for (int c = 0; c < children && count < docs; c++) {
+				int i = count++;
+				padre[i] = cartella;
+				livello[i] = livello[cartella] + 1;
+				giorno[i] = day(random, giorno[cartella]);
+				if (livello[i] < depth - 1 && random.nextDouble() < folders) {
+					queue[tail++] = i;
+					sink.docu(base + i, folderName(random, i), giorno[i], idUtente, "dir", base + cartella, "");
+				} else {
+					String descrizione = random.nextDouble() < descriptions ? description(random) : "";
+					sink.docu(base + i, NAMES[random.nextInt(NAMES.length)] + "_" + i, giorno[i], idUtente,
+							pick(random), base + cartella, descrizione);
+				}
+			}
+		}
+		documentsDone.addAndGet(docs);
+
+		// closure rows by ancestor, then by descendant: each document is added to the
+		// lists of itself and its ancestors in ID order, so the lists are sorted
+		int[] fill = new int[docs];
+		for (int i = 0; i < docs; i++) {
+			for (int a = i; a >= 0; a = padre[a]) {
+				fill[a]++;
+			}
+		}
+		int[] start = new int[docs];
+		int total = 0;
+		for (int a = 0; a < docs; a++) {
+			start[a] = total;
+			total += fill[a];
+		}
+		int[] discendenti = new int[total];
+		for (int i = 0; i < docs; i++) {
+			for (int a = i; a >= 0; a = padre[a]) {
+				discendenti[start[a]++] = i;
+			}
+		}
+		int k = 0;
+		for (int a = 0; a < docs; a++) {
+			for (int end = k + fill[a]; k < end; k++) {
+				int d = discendenti[k];
+				sink.chiusura(base + a, base + d, livello[d] - livello[a]);
+			}
+		}
+		closureDone.addAndGet(discendenti.length);
+	}
+
+	private long day(SplittableRandom random, long after) {
+		return after >= today ? today : random.nextLong(after, today + 1);
+	}
+
+	private static String folderName(SplittableRandom random, int i) {
+		return FOLDERS[random.nextInt(FOLDERS.length)] + "_" + i;
+	}
+
+	private String pick(SplittableRandom random) {
+		int r = random.nextInt(weights[weights.length - 1]);
+		int i = 0;
+		while (weights[i] <= r) {
+			i++;
+		}
+		return extensions[i];
+	}
+
+	private String description(SplittableRandom random) {
+		int length = 1 + random.nextInt(descriptionLength);
+		StringBuilder descrizione = new StringBuilder(length + 16);
+		while (descrizione.length() < length) {
+			if (descrizione.length() > 0) {
+				descrizione.append(' ');
+			}
+			descrizione.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		descrizione.setLength(Math.min(descrizione.length(), descriptionLength));
+		descrizione.setCharAt(0, Character.toUpperCase(descrizione.charAt(0)));
+		return descrizione.toString().strip();
+	}
+
+	/**
+	 * @class RowSink
+	 * @brief Where the generated rows are written.
+	 */
+	private interface RowSink extends AutoCloseable {
+		void utente(int id, String nome, String mail, String psw) throws IOException, SQLException;
+
+		/// The creation date is a day from the epoch; idDirPadre is 0 for a top-level folder.
+		void docu(int id, String nome, long giorno, int proprietario, String tipo, int idDirPadre,
+				String descrizione) throws IOException, SQLException;
+
+		void chiusura(int antenato, int discendente, int profondita) throws IOException, SQLException;
+
+		@Override
+		void close() throws IOException, SQLException;
+	}
+
+	/**
+	 * @class TsvSink
+	 * @brief Writes the rows of every table to a tab-separated file, in the format of LOAD DATA.
+	 */
+	private static class TsvSink implements RowSink {
+		private final BufferedWriter utente;
+		private final BufferedWriter docu;
+		private final BufferedWriter chiusura;
+		private final StringBuilder row = new StringBuilder(512);
+
+		private TsvSink(Path out) throws IOException {
+			utente = writer(out, "utente.tsv");
+			docu = writer(out, "docu.tsv");
+			chiusura = writer(out, "docu_chiusura.tsv");
+		}
+
+		private static BufferedWriter writer(Path out, String name) throws IOException {
+			return new BufferedWriter(Files.newBufferedWriter(out.resolve(name), StandardCharsets.UTF_8), 1 << 16);
+		}
+
+		@Override
+		public void utente(int id, String nome, String mail, String psw) throws IOException {
+			row.setLength(0);
+			row.append(id).append('\t');
+			escape(nome).append('\t');
+			escape(mail).append('\t');
+			escape(psw).append('\n');
+			utente.append(row);
+		}
+
+		@Override
+		public void docu(int id, String nome, long giorno, int proprietario, String tipo, int idDirPadre,
+				String descrizione) throws IOException {
+			row.setLength(0);
+			row.append(id).append('\t');
+			escape(nome).append('\t');
+			row.append(LocalDate.ofEpochDay(giorno)).append('\t').append(proprietario).append('\t');
+			escape(tipo).append('\t');
+			if (idDirPadre == 0) {
+				row.append("\\N");
+			} else {
+				row.append(idDirPadre);
+			}
+			row.append('\t');
+			escape(descrizione).append('\n');
+			docu.append(row);
+		}
+
+		@Override
+		public void chiusura(int antenato, int discendente, int profondita) throws IOException {
+			row.setLength(0);
+			row.append(antenato).append('\t').append(discendente).append('\t').append(profondita).append('\n');
+			chiusura.append(row);
+		}
+
+		private StringBuilder escape(String value) {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '\\':
+					row.append("\\\\");
+					break;
+				case '\t':
+					row.append("\\t");
+					break;
+				case '\n':
+					row.append("\\n");
+					break;
+				default:
+					row.append(c);
+				}
+			}
+			return row;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try (utente; docu; chiusura) {
+				// closes all the files, even if one fails
+			}
+		}
+	}
+
+	/**
+	 * @class JdbcSink
+	 * @brief Inserts the rows with multi-row INSERTs, disabling the checks of the connection.
+	 */
+	private static class JdbcSink implements RowSink {
+		private final Connection connection;
+		private final Table utente;
+		private final Table docu;
+		private final Table chiusura;
+
+		private JdbcSink(Connection connection, int batch) throws SQLException {
+			this.connection = connection;
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SET SESSION foreign_key_checks = 0");
+				statement.execute("SET SESSION unique_checks = 0");
+			}
+			connection.setAutoCommit(false);
+			utente = new Table("utente", "id_utente, nome, mail, psw", batch);
+			docu = new Table("docu", "id_docu, nome, creazione, proprietario, tipo, id_dirPadre, descrizione", batch);
+			chiusura = new Table("docu_chiusura", "antenato, discendente, profondita", batch);
+		}
+
+		@Override
+		public void utente(int id, String nome, String mail, String psw) throws SQLException {
+			utente.add(connection, id, nome, mail, psw);
+		}
+
+		@Override
+		public void docu(int id, String nome, long giorno, int proprietario, String tipo, int idDirPadre,
+				String descrizione) throws SQLException {
+			docu.add(connection, id, nome, Date.valueOf(LocalDate.ofEpochDay(giorno)), proprietario, tipo,
+					idDirPadre == 0 ? null : idDirPadre, descrizione);
+		}
+
+		@Override
+		public void chiusura(int antenato, int discendente, int profondita) throws SQLException {
+			chiusura.add(connection, antenato, discendente, profondita);
+		}
+
+		/**
+		 * @brief Inserts the rows still buffered and commits them.
+		 * @throws SQLException if the rows cannot be inserted.
+		 */
+		private void commit() throws SQLException {
+			utente.flush(connection);
+			docu.flush(connection);
+			chiusura.flush(connection);
+			connection.commit();
+		}
+
+		@Override
+		public void close() throws SQLException {
+			utente.close();
+			docu.close();
+			chiusura.close();
+		}
+	}
+
+	/**
+	 * @class Table
+	 * @brief The rows of a table waiting to be inserted, batch by batch.
+	 */
+	private static class Table {
+		private final String insert;
+		private final String values;
+		private final int batch;
+		private final List<Object[]> rows = new ArrayList<>();
+		private PreparedStatement full = null;
+
+		private Table(String name, String columns, int batch) {
+			int count = columns.split(",").length;
+			this.insert = "INSERT INTO " + name + " (" + columns + ") VALUES ";
+			this.values = "(" + "?, ".repeat(count - 1) + "?)";
+			this.batch = batch;
+		}
+
+		private void add(Connection connection, Object... row) throws SQLException {
+			rows.add(row);
+			if (rows.size() == batch) {
+				flush(connection);
+			}
+		}
+
+		private void flush(Connection connection) throws SQLException {
+			if (rows.isEmpty()) {
+				return;
+			}
+			if (rows.size() == batch) {
+				if (full == null) {
+					full = connection.prepareStatement(statement(batch));
+				}
+				execute(full);
+			} else {
+				try (PreparedStatement partial = connection.prepareStatement(statement(rows.size()))) {
+					execute(partial);
+				}
+			}
+			rows.clear();
+		}
+
+		private String statement(int count) {
+			StringBuilder sql = new StringBuilder(insert.length() + count * (values.length() + 2));
+			sql.append(insert);
+			for (int i = 0; i < count; i++) {
+				sql.append(i == 0 ? "" : ", ").append(values);
+			}
+			return sql.toString();
+		}
+
+		private void execute(PreparedStatement statement) throws SQLException {
+			int index = 1;
+			for (Object[] row : rows) {
+				for (Object value : row) {
+					if (value == null) {
+						statement.setNull(index++, Types.INTEGER);
+					} else {
+						statement.setObject(index++, value);
+					}
+				}
+			}
+			statement.executeUpdate();
+		}
+
+		private void close() throws SQLException {
+			if (full != null) {
+				full.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,769 @@
+package it.polimi.tiw.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @file EmbeddedContainer.java
+ * @brief This class serves the web application from its web.xml on the HTTP server of the JDK.
+ * @class EmbeddedContainer
+ *
+ * It implements the part of the servlet API the application uses: context parameters
+ * (which can be overridden, e.g. to point dbUrl to another database), listeners, filters
+ * and servlets mapped to exact paths, form parameters, sessions tracked by the JSESSIONID
+ * cookie, redirects, errors and the static files of the web application directory. The
+ * servlet objects are dynamic proxies like those of FakeServlet. Requests are served by
+ * a fixed pool of threads, as by the connector of a container; the response of a request
+ * put in async mode is sent by the thread completing it.
+ */
+public class EmbeddedContainer {
+	private static final String SESSION_COOKIE = "JSESSIONID";
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Path webapp;
+	private final String contextPath;
+	private final Map<String, String> initParameters = new LinkedHashMap<>();
+	private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+	private final List<ServletContextListener> listeners = new ArrayList<>();
+	private final Map<String, Servlet> servlets = new HashMap<>();
+	private final Map<String, List<Filter>> filters = new HashMap<>();
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private final ServletContext context;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @brief Creates the container of a web application.
+	 * @param webapp the web application directory, holding WEB-INF/web.xml.
+	 * @param contextPath the context path, e.g. "/PureHtmlTallarico".
+	 * @param overrides context parameters replacing those of web.xml.
+	 */
+	public EmbeddedContainer(Path webapp, String contextPath, Map<String, String> overrides) {
+		this.webapp = webapp;
+		this.contextPath = contextPath;
+		this.context = proxy(ServletContext.class, this::invokeContext);
+		this.initParameters.putAll(overrides);
+	}
+
+	/**
+	 * @brief Starts the application and the HTTP server.
+	 * @param port the port to listen on, 0 for any free port.
+	 * @param threads the number of threads serving the requests.
+	 * @throws Exception if web.xml cannot be read or the application fails to start.
+	 */
+	public void start(int port, int threads) throws Exception {
+		Document webXml = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(webapp.resolve("WEB-INF/web.xml").toFile());
+		for (Element param : elements(webXml.getDocumentElement(), "context-param")) {
+			initParameters.putIfAbsent(text(param, "param-name"), text(param, "param-value"));
+		}
+		for (Element listener : elements(webXml.getDocumentElement(), "listener")) {
+			ServletContextListener instance = (ServletContextListener) instantiate(text(listener, "listener-class"));
+			instance.contextInitialized(new ServletContextEvent(context));
+			listeners.add(instance);
+		}
+
+		Map<String, Filter> filterNames = new HashMap<>();
+		for (Element filter : elements(webXml.getDocumentElement(), "filter")) {
+			Filter instance = (Filter) instantiate(text(filter, "filter-class"));
+			String name = text(filter, "filter-name");
+			Map<String, String> params = initParams(filter);
+			instance.init(proxy(FilterConfig.class, (proxy, method, args) -> config(method, args, name, params)));
+			filterNames.put(name, instance);
+		}
+		for (Element mapping : elements(webXml.getDocumentElement(), "filter-mapping")) {
+			Filter filter = filterNames.get(text(mapping, "filter-name"));
+			for (Element pattern : elements(mapping, "url-pattern")) {
+				filters.computeIfAbsent(pattern.getTextContent().trim(), k -> new ArrayList<>()).add(filter);
+			}
+		}
+
+		Map<String, Servlet> servletNames = new HashMap<>();
+		for (Element servlet : elements(webXml.getDocumentElement(), "servlet")) {
+			Servlet instance = (Servlet) instantiate(text(servlet, "servlet-class"));
+			String name = text(servlet, "servlet-name");
+			Map<String, String> params = initParams(servlet);
+			instance.init(proxy(ServletConfig.class, (proxy, method, args) -> config(method, args, name, params)));
+			servletNames.put(name, instance);
+		}
+		for (Element mapping : elements(webXml.getDocumentElement(), "servlet-mapping")) {
+			Servlet servlet = servletNames.get(text(mapping, "servlet-name"));
+			for (Element pattern : elements(mapping, "url-pattern")) {
+				servlets.put(pattern.getTextContent().trim(), servlet);
+			}
+		}
+
+		executor = Executors.newFixedThreadPool(threads);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		server.setExecutor(executor);
+		server.createContext(contextPath + "/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * @brief Stops the HTTP server and the application.
+	 */
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+		for (Servlet servlet : new HashSet<>(servlets.values())) {
+			servlet.destroy();
+		}
+		Set<Filter> mapped = new HashSet<>();
+		filters.values().forEach(mapped::addAll);
+		for (Filter filter : mapped) {
+			filter.destroy();
+		}
+		for (int i = listeners.size() - 1; i >= 0; i--) {
+			listeners.get(i).contextDestroyed(new ServletContextEvent(context));
+		}
+	}
+
+	/**
+	 * @brief Gets the address of the application.
+	 * @return the URL of the context path, without the trailing slash.
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + contextPath;
+	}
+
+	/**
+	 * @brief Gets the context of the application, e.g. to read the attributes set by its listeners.
+	 * @return the servlet context.
+	 */
+	public ServletContext getServletContext() {
+		return context;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getRawPath().substring(contextPath.length());
+		Servlet servlet = servlets.get(path);
+		if (servlet == null) {
+			try (exchange) {
+				serveFile(exchange, path);
+			}
+			return;
+		}
+		Response response = new Response();
+		Request request;
+		try {
+			request = new Request(exchange, path, response);
+		} catch (IOException e) {
+			exchange.close();
+			throw e;
+		}
+		try {
+			chain(filters.getOrDefault(path, List.of()), 0, servlet).doFilter(request.proxy, response.proxy);
+		} catch (Exception e) {
+			if (request.async == null) {
+				response.status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+				response.body.reset();
+			}
+		}
+		if (request.async == null) {
+			request.finish();
+		}
+		// otherwise the response is sent by AsyncContext.complete
+	}
+
+	private FilterChain chain(List<Filter> mapped, int next, Servlet servlet) {
+		if (next == mapped.size()) {
+			return servlet::service;
+		}
+		return (request, response) -> mapped.get(next).doFilter(request, response, chain(mapped, next + 1, servlet));
+	}
+
+	private void serveFile(HttpExchange exchange, String path) throws IOException {
+		Path file = webapp.resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+		String upper = path.toUpperCase(Locale.ROOT);
+		if (!file.startsWith(webapp) || upper.startsWith("/WEB-INF") || upper.startsWith("/META-INF")
+				|| !Files.isRegularFile(file)) {
+			exchange.sendResponseHeaders(HttpServletResponse.SC_NOT_FOUND, -1);
+			return;
+		}
+		String type = Files.probeContentType(file);
+		exchange.getResponseHeaders().add("Content-Type", type != null ? type : "application/octet-stream");
+		byte[] content = Files.readAllBytes(file);
+		exchange.sendResponseHeaders(HttpServletResponse.SC_OK, content.length);
+		exchange.getResponseBody().write(content);
+	}
+
+	/**
+	 * @class Request
+	 * @brief The request being served, with its parameters and its session.
+	 */
+	private class Request {
+		private final HttpExchange exchange;
+		private final String path;
+		private final Map<String, List<String>> parameters = new LinkedHashMap<>();
+		private final Map<String, Object> requestAttributes = new HashMap<>();
+		private final String requestedSession;
+		private Session session;
+		private final Response response;
+		private final HttpServletRequest proxy;
+		private volatile Async async;
+
+		private Request(HttpExchange exchange, String path, Response response) throws IOException {
+			this.exchange = exchange;
+			this.path = path;
+			this.response = response;
+			parse(exchange.getRequestURI().getRawQuery());
+			String type = exchange.getRequestHeaders().getFirst("Content-Type");
+			if (type != null && type.startsWith("application/x-www-form-urlencoded")) {
+				try (InputStream body = exchange.getRequestBody()) {
+					parse(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+				}
+			}
+			requestedSession = cookie(exchange.getRequestHeaders().getFirst("Cookie"));
+			Session existing = requestedSession != null ? sessions.get(requestedSession) : null;
+			if (existing != null) {
+				existing.created = false;
+				session = existing;
+			}
+			this.proxy = EmbeddedContainer.proxy(HttpServletRequest.class, this::invoke);
+		}
+
+		private void parse(String encoded) {
+			if (encoded == null || encoded.isEmpty()) {
+				return;
+			}
+			for (String pair : encoded.split("&")) {
+				int equals = pair.indexOf('=');
+				String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+				String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+				parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+			}
+		}
+
+		private String cookie(String header) {
+			if (header == null) {
+				return null;
+			}
+			for (String cookie : header.split(";")) {
+				String[] pair = cookie.trim().split("=", 2);
+				if (pair.length == 2 && pair[0].equals(SESSION_COOKIE)) {
+					return pair[1];
+				}
+			}
+			return null;
+		}
+
+		private HttpSession getSession(boolean create) {
+			if (session != null && session.valid) {
+				return session.proxy;
+			}
+			if (!create) {
+				return null;
+			}
+			session = new Session();
+			sessions.put(session.id, session);
+			return session.proxy;
+		}
+
+		private void finish() throws IOException {
+			try (exchange) {
+				if (session != null && session.created) {
+					exchange.getResponseHeaders().add("Set-Cookie",
+							SESSION_COOKIE + "=" + session.id + "; Path=" + contextPath + "; HttpOnly");
+				}
+				response.send(exchange);
+			}
+		}
+
+		private Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+			case "startAsync":
+				if (async != null) {
+					throw new IllegalStateException("Async already started");
+				}
+				async = new Async(this);
+				return async.proxy;
+			case "getAsyncContext":
+				if (async == null) {
+					throw new IllegalStateException("Async not started");
+				}
+				return async.proxy;
+			case "isAsyncStarted":
+				return async != null && !async.completed;
+			case "isAsyncSupported":
+				return true;
+			case "getMethod":
+				return exchange.getRequestMethod();
+			case "getServletPath":
+				return path;
+			case "getRequestURI":
+				return exchange.getRequestURI().getRawPath();
+			case "getQueryString":
+				return exchange.getRequestURI().getRawQuery();
+			case "getContextPath":
+				return contextPath;
+			case "getParameter":
+				List<String> values = parameters.get(args[0]);
+				return values == null ? null : values.get(0);
+			case "getParameterValues":
+				values = parameters.get(args[0]);
+				return values == null ? null : values.toArray(new String[0]);
+			case "getParameterNames":
+				return Collections.enumeration(parameters.keySet());
+			case "getParameterMap":
+				Map<String, String[]> map = new LinkedHashMap<>();
+				parameters.forEach((name, list) -> map.put(name, list.toArray(new String[0])));
+				return map;
+			case "getSession":
+				return getSession(args == null || (Boolean) args[0]);
+			case "getRequestedSessionId":
+				return requestedSession;
+			case "getAttribute":
+				return requestAttributes.get(args[0]);
+			case "setAttribute":
+				requestAttributes.put((String) args[0], args[1]);
+				return null;
+			case "removeAttribute":
+				requestAttributes.remove(args[0]);
+				return null;
+			case "getAttributeNames":
+				return Collections.enumeration(new ArrayList<>(requestAttributes.keySet()));
+			case "getHeader":
+				return exchange.getRequestHeaders().getFirst((String) args[0]);
+			case "getHeaders":
+				List<String> headers = exchange.getRequestHeaders().get(args[0]);
+				return Collections.enumeration(headers == null ? List.of() : headers);
+			case "getHeaderNames":
+				return Collections.enumeration(exchange.getRequestHeaders().keySet());
+			case "getRemoteAddr":
+				return exchange.getRemoteAddress().getAddress().getHostAddress();
+			case "getLocale":
+				return Locale.ITALY;
+			case "getLocales":
+				return Collections.enumeration(List.of(Locale.ITALY));
+			case "getCharacterEncoding":
+				return "UTF-8";
+			case "getProtocol":
+				return exchange.getProtocol();
+			case "getScheme":
+				return "http";
+			case "getServerName":
+				return exchange.getLocalAddress().getHostString();
+			case "getServerPort":
+				return exchange.getLocalAddress().getPort();
+			case "getServletContext":
+				return context;
+			case "getDispatcherType":
+				return DispatcherType.REQUEST;
+			default:
+				return defaultValue(method);
+			}
+		}
+	}
+
+	/**
+	 * @class Async
+	 * @brief The asynchronous processing of a request, whose response is sent when it completes.
+	 *
+	 * Timeouts are not enforced.
+	 */
+	private class Async {
+		private final Request request;
+		private final List<AsyncListener> asyncListeners = new ArrayList<>();
+		private final AsyncContext proxy;
+		private volatile boolean completed = false;
+		private long timeout = 30000;
+
+		private Async(Request request) {
+			this.request = request;
+			this.proxy = EmbeddedContainer.proxy(AsyncContext.class, this::invoke);
+		}
+
+		private synchronized void complete() throws IOException {
+			if (completed) {
+				throw new IllegalStateException("Async already completed");
+			}
+			completed = true;
+			try {
+				request.finish();
+			} finally {
+				for (AsyncListener listener : asyncListeners) {
+					listener.onComplete(new AsyncEvent(proxy));
+				}
+			}
+		}
+
+		private Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+			switch (method.getName()) {
+			case "complete":
+				complete();
+				return null;
+			case "getRequest":
+				return request.proxy;
+			case "getResponse":
+				return request.response.proxy;
+			case "hasOriginalRequestAndResponse":
+				return true;
+			case "addListener":
+				asyncListeners.add((AsyncListener) args[0]);
+				return null;
+			case "setTimeout":
+				timeout = (Long) args[0];
+				return null;
+			case "getTimeout":
+				return timeout;
+			case "start":
+				executor.execute((Runnable) args[0]);
+				return null;
+			default:
+				throw new UnsupportedOperationException("AsyncContext." + method.getName());
+			}
+		}
+	}
+
+	/**
+	 * @class Response
+	 * @brief The response being written, sent when the servlet returns or its async processing completes.
+	 */
+	private static class Response {
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final Map<String, List<String>> headers = new LinkedHashMap<>();
+		private final HttpServletResponse proxy;
+		private int status = HttpServletResponse.SC_OK;
+		private String contentType;
+		private PrintWriter writer;
+
+		private Response() {
+			this.proxy = EmbeddedContainer.proxy(HttpServletResponse.class, this::invoke);
+		}
+
+		private Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+			case "setStatus":
+				status = (Integer) args[0];
+				return null;
+			case "getStatus":
+				return status;
+			case "sendError":
+				status = (Integer) args[0];
+				body.reset();
+				String message = args.length > 1 ? (String) args[1] : "";
+				contentType = "text/html; charset=UTF-8";
+				body.writeBytes(("<html><body><h1>" + status + "</h1><p>" + message + "</p></body></html>")
+						.getBytes(StandardCharsets.UTF_8));
+				return null;
+			case "sendRedirect":
+				status = HttpServletResponse.SC_FOUND;
+				headers.put("Location", List.of((String) args[0]));
+				return null;
+			case "getWriter":
+				if (writer == null) {
+					writer = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+				}
+				return writer;
+			case "getOutputStream":
+				return new ServletOutputStream() {
+					@Override
+					public void write(int b) {
+						body.write(b);
+					}
+				};
+			case "setContentType":
+				contentType = (String) args[0];
+				return null;
+			case "getContentType":
+				return contentType;
+			case "getCharacterEncoding":
+				return "UTF-8";
+			case "setHeader":
+			case "setDateHeader":
+			case "setIntHeader":
+				headers.put((String) args[0], new ArrayList<>(List.of(String.valueOf(args[1]))));
+				return null;
+			case "addHeader":
+			case "addDateHeader":
+			case "addIntHeader":
+				headers.computeIfAbsent((String) args[0], k -> new ArrayList<>()).add(String.valueOf(args[1]));
+				return null;
+			case "containsHeader":
+				return headers.containsKey(args[0]);
+			case "encodeURL":
+			case "encodeRedirectURL":
+			case "encodeUrl":
+			case "encodeRedirectUrl":
+				return args[0];
+			case "resetBuffer":
+			case "reset":
+				body.reset();
+				return null;
+			case "getLocale":
+				return Locale.ITALY;
+			default:
+				return defaultValue(method);
+			}
+		}
+
+		private void send(HttpExchange exchange) throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (contentType != null) {
+				exchange.getResponseHeaders().add("Content-Type", contentType);
+			}
+			headers.forEach((name, values) -> exchange.getResponseHeaders().put(name, values));
+			exchange.sendResponseHeaders(status, body.size() == 0 ? -1 : body.size());
+			if (body.size() > 0) {
+				try (OutputStream out = exchange.getResponseBody()) {
+					body.writeTo(out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @class Session
+	 * @brief A session, kept until it is invalidated.
+	 */
+	private class Session {
+		private final String id;
+		private final long creationTime = System.currentTimeMillis();
+		private final Map<String, Object> sessionAttributes = new ConcurrentHashMap<>();
+		private final HttpSession proxy;
+		private volatile boolean created = true;
+		private volatile boolean valid = true;
+
+		private Session() {
+			byte[] bytes = new byte[18];
+			RANDOM.nextBytes(bytes);
+			this.id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+			this.proxy = EmbeddedContainer.proxy(HttpSession.class, this::invoke);
+		}
+
+		private Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+			case "getId":
+				return id;
+			case "isNew":
+				return created;
+			case "getCreationTime":
+			case "getLastAccessedTime":
+				return creationTime;
+			case "getAttribute":
+				return sessionAttributes.get(args[0]);
+			case "setAttribute":
+				if (args[1] == null) {
+					sessionAttributes.remove(args[0]);
+				} else {
+					sessionAttributes.put((String) args[0], args[1]);
+				}
+				return null;
+			case "removeAttribute":
+				sessionAttributes.remove(args[0]);
+				return null;
+			case "getAttributeNames":
+				return Collections.enumeration(new ArrayList<>(sessionAttributes.keySet()));
+			case "invalidate":
+				valid = false;
+				sessions.remove(id);
+				return null;
+			case "getServletContext":
+				return context;
+			default:
+				return defaultValue(method);
+			}
+		}
+	}
+
+	private Object invokeContext(Object proxy, Method method, Object[] args) throws IOException {
+		switch (method.getName()) {
+		case "getInitParameter":
+			return initParameters.get(args[0]);
+		case "getInitParameterNames":
+			return Collections.enumeration(initParameters.keySet());
+		case "getAttribute":
+			return attributes.get(args[0]);
+		case "setAttribute":
+			if (args[1] == null) {
+				attributes.remove(args[0]);
+			} else {
+				attributes.put((String) args[0], args[1]);
+			}
+			return null;
+		case "removeAttribute":
+			attributes.remove(args[0]);
+			return null;
+		case "getAttributeNames":
+			return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+		case "getContextPath":
+			return contextPath;
+		case "getResourceAsStream":
+			Path resource = resource((String) args[0]);
+			return Files.isRegularFile(resource) ? Files.newInputStream(resource) : null;
+		case "getResource":
+			resource = resource((String) args[0]);
+			return Files.exists(resource) ? resource.toUri().toURL() : null;
+		case "getResourcePaths":
+			resource = resource((String) args[0]);
+			if (!Files.isDirectory(resource)) {
+				return null;
+			}
+			Set<String> paths = new TreeSet<>();
+			try (var entries = Files.list(resource)) {
+				entries.forEach(entry -> paths.add("/" + webapp.relativize(entry).toString().replace('\\', '/')
+						+ (Files.isDirectory(entry) ? "/" : "")));
+			}
+			return paths;
+		case "getRealPath":
+			return resource((String) args[0]).toString();
+		case "getMimeType":
+			return Files.probeContentType(resource((String) args[0]));
+		case "getServletContextName":
+			return contextPath;
+		case "getMajorVersion":
+		case "getEffectiveMajorVersion":
+			return 3;
+		case "getMinorVersion":
+		case "getEffectiveMinorVersion":
+			return 0;
+		case "getServerInfo":
+			return "EmbeddedContainer";
+		case "log":
+			System.err.println(args[0]);
+			return null;
+		default:
+			return defaultValue(method);
+		}
+	}
+
+	private Path resource(String path) {
+		return webapp.resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+	}
+
+	private Object config(Method method, Object[] args, String name, Map<String, String> params) {
+		switch (method.getName()) {
+		case "getServletName":
+		case "getFilterName":
+			return name;
+		case "getServletContext":
+			return context;
+		case "getInitParameter":
+			return params.get(args[0]);
+		case "getInitParameterNames":
+			return Collections.enumeration(params.keySet());
+		default:
+			return defaultValue(method);
+		}
+	}
+
+	private static Map<String, String> initParams(Element element) {
+		Map<String, String> params = new HashMap<>();
+		for (Element param : elements(element, "init-param")) {
+			params.put(text(param, "param-name"), text(param, "param-value"));
+		}
+		return params;
+	}
+
+	private static List<Element> elements(Element parent, String tag) {
+		List<Element> elements = new ArrayList<>();
+		NodeList nodes = parent.getElementsByTagName(tag);
+		for (int i = 0; i < nodes.getLength(); i++) {
+			elements.add((Element) nodes.item(i));
+		}
+		return elements;
+	}
+
+	private static String text(Element parent, String tag) {
+		NodeList nodes = parent.getElementsByTagName(tag);
+		return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent().trim();
+	}
+
+	private static Object instantiate(String className) throws ReflectiveOperationException {
+		return Class.forName(className).getDeclaredConstructor().newInstance();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(EmbeddedContainer.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						switch (method.getName()) {
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+						}
+					}
+					try {
+						return handler.invoke(proxy, method, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
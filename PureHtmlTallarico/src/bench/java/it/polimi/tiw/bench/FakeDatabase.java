@@ -0,0 +1,198 @@
+package it.polimi.tiw.bench;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import it.polimi.tiw.beans.File;
+
+/**
+ * @file FakeDatabase.java
+ * @brief This class is a DataSource answering the DAO queries from documents held in memory.
+ * @class FakeDatabase
+ *
+ * It lets the benchmarks run the real DAO methods, statement handling and row mapping
+ * loops included, without a database. A query is recognized by its text: the name of a
+ * folder, a page of a directory listing, the folders of a user or all their documents.
+ * Connections, statements and result sets are dynamic proxies, whose cost is the same
+ * for every version of the DAO being compared.
+ */
+public class FakeDatabase implements DataSource {
+	private final List<File> documenti;
+	private final List<File> cartelle = new ArrayList<>();
+	private final Map<Integer, List<File>> contenuti = new HashMap<>();
+
+	/**
+	 * @brief Creates the database of a user.
+	 * @param documenti the documents of the user, in the order the queries return them.
+	 */
+	public FakeDatabase(List<File> documenti) {
+		this.documenti = documenti;
+		for (File file : documenti) {
+			if ("dir".equals(file.getTipo())) {
+				cartelle.add(file);
+			} else {
+				contenuti.computeIfAbsent(file.getIdDirPadre(), k -> new ArrayList<>()).add(file);
+			}
+		}
+	}
+
+	@Override
+	public Connection getConnection() {
+		return proxy(Connection.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "prepareStatement":
+				return statement((String) args[0]);
+			case "isClosed":
+			case "isReadOnly":
+				return false;
+			case "getAutoCommit":
+			case "isValid":
+				return true;
+			default:
+				return defaultValue(method);
+			}
+		});
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) {
+		return getConnection();
+	}
+
+	private PreparedStatement statement(String query) {
+		Map<Integer, Object> parametri = new HashMap<>();
+		return proxy(PreparedStatement.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "setInt":
+			case "setString":
+				parametri.put((Integer) args[0], args[1]);
+				return null;
+			case "executeQuery":
+				return resultSet(answer(query, parametri));
+			default:
+				return defaultValue(method);
+			}
+		});
+	}
+
+	private List<File> answer(String query, Map<Integer, Object> parametri) {
+		if (query.startsWith("SELECT nome FROM docu WHERE id_docu")) {
+			File cartella = new File();
+			cartella.setNome("cartella");
+			return List.of(cartella);
+		}
+		if (query.contains("LIMIT ?")) {
+			List<File> files = contenuti.getOrDefault((Integer) parametri.get(2), List.of());
+			int limite = (Integer) parametri.get(parametri.size());
+			return files.subList(0, Math.min(limite, files.size()));
+		}
+		if (query.contains("tipo = 'dir'")) {
+			return cartelle;
+		}
+		return documenti;
+	}
+
+	private static ResultSet resultSet(List<File> righe) {
+		int[] riga = { -1 };
+		return proxy(ResultSet.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "next":
+				return ++riga[0] < righe.size();
+			case "getInt":
+				File file = righe.get(riga[0]);
+				switch ((String) args[0]) {
+				case "id_docu":
+					return file.getIdDocu();
+				case "id_dirPadre":
+					return file.getIdDirPadre();
+				case "proprietario":
+					return file.getProprietario();
+				default:
+					throw new SQLException("Unknown column " + args[0]);
+				}
+			case "getString":
+				file = righe.get(riga[0]);
+				switch ((String) args[0]) {
+				case "nome":
+					return file.getNome();
+				case "tipo":
+					return file.getTipo();
+				case "descrizione":
+					return file.getDescrizione();
+				case "creazione":
+					return file.getCreazione();
+				default:
+					throw new SQLException("Unknown column " + args[0]);
+				}
+			default:
+				return defaultValue(method);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return null;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return 0;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		throw new SQLException("Not a wrapper");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return false;
+	}
+}
@@ -0,0 +1,159 @@
+package it.polimi.tiw.bench;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * @file FakeServlet.java
+ * @brief This class builds the servlet objects the templates are rendered with.
+ * @class FakeServlet
+ *
+ * The servlet context serves the resources of a web application directory, so the
+ * templates are resolved and cached by the same engine configuration as in the
+ * container; requests and sessions keep their attributes in maps.
+ */
+public class FakeServlet {
+
+	private FakeServlet() {
+	}
+
+	/**
+	 * @brief Creates a servlet context serving a web application directory.
+	 * @param webapp the directory, e.g. src/main/webapp.
+	 * @return the context; it has no init parameters and no attributes.
+	 */
+	public static ServletContext context(Path webapp) {
+		return proxy(ServletContext.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getResourceAsStream":
+				Path resource = resolve(webapp, (String) args[0]);
+				try {
+					return new FileInputStream(resource.toFile());
+				} catch (FileNotFoundException e) {
+					return null;
+				}
+			case "getResource":
+				resource = resolve(webapp, (String) args[0]);
+				try {
+					return Files.exists(resource) ? resource.toUri().toURL() : null;
+				} catch (MalformedURLException e) {
+					return null;
+				}
+			case "getRealPath":
+				return resolve(webapp, (String) args[0]).toString();
+			case "getContextPath":
+				return "/PureHtmlTallarico";
+			case "getInitParameterNames":
+			case "getAttributeNames":
+				return Collections.emptyEnumeration();
+			default:
+				return defaultValue(method);
+			}
+		});
+	}
+
+	/**
+	 * @brief Creates a request whose session holds some attributes.
+	 * @param context the context of the request.
+	 * @param sessionAttributes the attributes of the session, e.g. the user.
+	 * @return the request.
+	 */
+	public static HttpServletRequest request(ServletContext context, Map<String, Object> sessionAttributes) {
+		HttpSession session = proxy(HttpSession.class, attributes(sessionAttributes, context));
+		Map<String, Object> requestAttributes = new HashMap<>();
+		InvocationHandler attributes = attributes(requestAttributes, context);
+		return proxy(HttpServletRequest.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getSession":
+				return session;
+			case "getContextPath":
+				return "/PureHtmlTallarico";
+			case "getLocale":
+				return Locale.ITALY;
+			case "getParameterMap":
+				return Collections.emptyMap();
+			case "getParameterNames":
+				return Collections.emptyEnumeration();
+			default:
+				return attributes.invoke(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * @brief Creates a response.
+	 * @return the response; URLs are not rewritten.
+	 */
+	public static HttpServletResponse response() {
+		return proxy(HttpServletResponse.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "encodeURL":
+			case "encodeRedirectURL":
+				return args[0];
+			case "getCharacterEncoding":
+				return "UTF-8";
+			default:
+				return defaultValue(method);
+			}
+		});
+	}
+
+	private static InvocationHandler attributes(Map<String, Object> attributes, ServletContext context) {
+		return (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getAttribute":
+				return attributes.get(args[0]);
+			case "setAttribute":
+				attributes.put((String) args[0], args[1]);
+				return null;
+			case "removeAttribute":
+				attributes.remove(args[0]);
+				return null;
+			case "getAttributeNames":
+				return Collections.enumeration(attributes.keySet());
+			case "getServletContext":
+				return context;
+			default:
+				return defaultValue(method);
+			}
+		};
+	}
+
+	private static Path resolve(Path webapp, String path) {
+		return webapp.resolve(path.startsWith("/") ? path.substring(1) : path);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(FakeServlet.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
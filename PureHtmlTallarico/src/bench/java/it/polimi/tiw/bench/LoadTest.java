@@ -0,0 +1,402 @@
+package it.polimi.tiw.bench;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import it.polimi.tiw.beans.File;
+import it.polimi.tiw.beans.User;
+import it.polimi.tiw.dao.FileDAO;
+import it.polimi.tiw.dao.UserDAO;
+import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.QueryMetrics;
+import it.polimi.tiw.utils.RequestTimingFilter;
+
+/**
+ * @file LoadTest.java
+ * @brief This class drives user sessions against the application served by an EmbeddedContainer.
+ * @class LoadTest
+ *
+ * It boots the servlets of web.xml, seeds the database with synthetic users, each with a
+ * tree of folders and files, then runs one session loop per concurrent user: login, home,
+ * open a folder, describe a file, open the move form and move the file, create a file,
+ * logout. Requests of the warm-up are not counted; at the end it prints, for every step,
+ * the throughput and the latency percentiles seen by the clients, then the time the
+ * server spent per endpoint.
+ *
+ * There is no embedded database in the project, so the database is the one of dbUrl,
+ * e.g. a local MySQL; the schema is created by SchemaMigrationListener and the users are
+ * created only if they do not exist yet. The options are:
+ * - --users n, --folders n, --files n: seeded users, their folders and files per folder (20, 10, 20);
+ * - --concurrency n: users running sessions at the same time (20);
+ * - --warmup s, --duration s: seconds of warm-up and of measurement (10, 60);
+ * - --think ms: pause between the steps of a session (0);
+ * - --threads n: threads of the container (50);
+ * - --readOnly: skips the steps moving and creating files;
+ * - --param name=value: overrides a context parameter, e.g. --param dbUrl=jdbc:mysql://...
+ *
+ *     java it.polimi.tiw.bench.LoadTest --concurrency 50 --duration 120
+ */
+public class LoadTest {
+	private static final String CONTEXT_PATH = "/PureHtmlTallarico";
+	private static final String PASSWORD = "password";
+	private static final String[] STEPS = { "login", "home", "open", "describe", "moveForm", "move", "create",
+			"logout" };
+
+	private int users = 20;
+	private int folders = 10;
+	private int files = 20;
+	private int concurrency = 20;
+	private int warmup = 10;
+	private int duration = 60;
+	private int think = 0;
+	private int threads = 50;
+	private boolean readOnly = false;
+	private final Map<String, String> params = new LinkedHashMap<>();
+
+	private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER)
+			.executor(Executors.newCachedThreadPool()).build();
+	private volatile boolean measuring = false;
+	private volatile boolean running = true;
+
+	/**
+	 * @brief Runs the load test.
+	 * @param args the options, see the class description.
+	 * @throws Exception if the application cannot start or the database cannot be seeded.
+	 */
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--users":
+				test.users = Integer.parseInt(args[++i]);
+				break;
+			case "--folders":
+				test.folders = Integer.parseInt(args[++i]);
+				break;
+			case "--files":
+				test.files = Integer.parseInt(args[++i]);
+				break;
+			case "--concurrency":
+				test.concurrency = Integer.parseInt(args[++i]);
+				break;
+			case "--warmup":
+				test.warmup = Integer.parseInt(args[++i]);
+				break;
+			case "--duration":
+				test.duration = Integer.parseInt(args[++i]);
+				break;
+			case "--think":
+				test.think = Integer.parseInt(args[++i]);
+				break;
+			case "--threads":
+				test.threads = Integer.parseInt(args[++i]);
+				break;
+			case "--readOnly":
+				test.readOnly = true;
+				break;
+			case "--param":
+				String[] pair = args[++i].split("=", 2);
+				test.params.put(pair[0], pair[1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		test.run();
+	}
+
+	private void run() throws Exception {
+		EmbeddedContainer container = new EmbeddedContainer(
+				Path.of(System.getProperty("bench.webapp", "src/main/webapp")).toAbsolutePath(), CONTEXT_PATH, params);
+		container.start(0, threads);
+		try {
+			List<Account> accounts = seed(ConnectionHandler.getDataSource(container.getServletContext()));
+			System.out.printf("Seeded %d users, driving %d sessions at %s%n", accounts.size(), concurrency,
+					container.getUrl());
+
+			List<VirtualUser> virtualUsers = new ArrayList<>();
+			CountDownLatch done = new CountDownLatch(concurrency);
+			for (int i = 0; i < concurrency; i++) {
+				VirtualUser user = new VirtualUser(container.getUrl(), accounts.get(i % accounts.size()), i);
+				virtualUsers.add(user);
+				Thread thread = new Thread(() -> {
+					try {
+						user.loop();
+					} finally {
+						done.countDown();
+					}
+				}, "VirtualUser-" + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			Thread.sleep(warmup * 1000L);
+			measuring = true;
+			long start = System.nanoTime();
+			Thread.sleep(duration * 1000L);
+			measuring = false;
+			double seconds = (System.nanoTime() - start) / 1e9;
+			running = false;
+			done.await();
+			report(virtualUsers, seconds);
+		} finally {
+			container.stop();
+		}
+	}
+
+	/**
+	 * @brief Creates the users and their documents, unless they already exist.
+	 * @param dataSource the pool of the application.
+	 * @return the users, with the IDs of their folders and files.
+	 * @throws Exception if the database cannot be accessed.
+	 */
+	private List<Account> seed(DataSource dataSource) throws Exception {
+		UserDAO userDao = new UserDAO(dataSource);
+		FileDAO fileDao = new FileDAO(dataSource);
+		String oggi = LocalDate.now().toString();
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < users; i++) {
+			String mail = "load" + i + "@example.com";
+			if (userDao.addUser("load" + i, mail, PASSWORD) == 0) {
+				int id = userDao.getUser(mail, PASSWORD).getId();
+				for (int f = 0; f < folders; f++) {
+					fileDao.newDocu(id, "cartella" + f, 0, "dir", "", oggi);
+				}
+				for (File cartella : fileDao.getDir(id)) {
+					for (int k = 0; k < files; k++) {
+						fileDao.newDocu(id, "documento" + k + ".txt", cartella.getIdDocu(), "txt",
+								"Documento di prova " + k, oggi);
+					}
+				}
+			}
+			User user = userDao.getUser(mail, PASSWORD);
+			Account account = new Account(mail);
+			for (File file : fileDao.getAll(user.getId())) {
+				if ("dir".equals(file.getTipo())) {
+					account.cartelle.add(file.getIdDocu());
+				} else {
+					account.documenti.add(file);
+				}
+			}
+			if (account.cartelle.isEmpty() || account.documenti.isEmpty()) {
+				throw new IllegalStateException(mail + " has no folders or no files, use --folders and --files > 0");
+			}
+			accounts.add(account);
+		}
+		return accounts;
+	}
+
+	private void report(List<VirtualUser> virtualUsers, double seconds) {
+		long requests = 0;
+		System.out.printf("%n%-10s %8s %7s %9s %9s %9s %9s %9s%n", "Step", "count", "errors", "steps/s", "p50 ms",
+				"p95 ms", "p99 ms", "max ms");
+		for (String step : STEPS) {
+			Latencies merged = new Latencies();
+			for (VirtualUser user : virtualUsers) {
+				merged.addAll(user.latencies.get(step));
+			}
+			if (merged.size == 0 && merged.errors == 0) {
+				continue;
+			}
+			System.out.printf("%-10s %8d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", step, merged.size, merged.errors,
+					merged.size / seconds, merged.quantile(0.50), merged.quantile(0.95), merged.quantile(0.99),
+					merged.quantile(1));
+		}
+		for (VirtualUser user : virtualUsers) {
+			requests += user.requests;
+		}
+		System.out.printf("%nHTTP requests: %d in %.1f s, %.1f/s%n", requests, seconds, requests / seconds);
+
+		// the server side includes the warm-up and the seeding
+		System.out.printf("%n%-26s %8s %9s %9s %9s %9s%n", "Endpoint (server)", "count", "p50 ms", "p99 ms",
+				"dao %", "render %");
+		for (RequestTimingFilter.Endpoint endpoint : RequestTimingFilter.getAll().values()) {
+			QueryMetrics.Stats stats = endpoint.getStats();
+			double total = Math.max(1, stats.getTotalNanos());
+			System.out.printf("%-26s %8d %9.2f %9.2f %9.1f %9.1f%n", stats.getQuery(), stats.getCount(),
+					stats.getQuantileNanos(0.50) / 1e6, stats.getQuantileNanos(0.99) / 1e6,
+					endpoint.getDaoNanos() * 100 / total, endpoint.getRenderNanos() * 100 / total);
+		}
+	}
+
+	/**
+	 * @class Account
+	 * @brief A seeded user with the IDs of their documents.
+	 */
+	private static class Account {
+		private final String mail;
+		private final List<Integer> cartelle = new ArrayList<>();
+		private final List<File> documenti = new ArrayList<>();
+
+		private Account(String mail) {
+			this.mail = mail;
+		}
+	}
+
+	/**
+	 * @class VirtualUser
+	 * @brief A client running sessions of a user one after the other.
+	 */
+	private class VirtualUser {
+		private final String url;
+		private final Account account;
+		private final SplittableRandom random;
+		private final Map<String, Latencies> latencies = new LinkedHashMap<>();
+		private String cookie;
+		private long requests = 0;
+		private int created = 0;
+
+		private VirtualUser(String url, Account account, int seed) {
+			this.url = url;
+			this.account = account;
+			this.random = new SplittableRandom(seed);
+			for (String step : STEPS) {
+				latencies.put(step, new Latencies());
+			}
+		}
+
+		private void loop() {
+			while (running) {
+				cookie = null;
+				File documento = account.documenti.get(random.nextInt(account.documenti.size()));
+				int cartella = account.cartelle.get(random.nextInt(account.cartelle.size()));
+				step("login", "POST", "/checklogin", "mail", account.mail, "psw", PASSWORD);
+				step("home", "GET", "/createhome");
+				step("open", "GET", "/createcontenuti?idDir=" + cartella);
+				step("describe", "POST", "/createdescrizione", "idDocu", "" + documento.getIdDocu());
+				if (!readOnly) {
+					step("moveForm", "POST", "/createsposta", "idDocu", "" + documento.getIdDocu(), "idDirPadre",
+							"" + documento.getIdDirPadre());
+					step("move", "POST", "/sposta", "idDirDest", "" + cartella, "idPartenza",
+							"" + documento.getIdDocu());
+					step("create", "POST", "/createfile", "nome", "nuovo" + Thread.currentThread().getId() + "_"
+							+ created++ + ".txt", "dirPadre", "" + cartella, "tipo1", "file", "tipo2", "txt",
+							"description", "Creato dal test di carico");
+				}
+				step("logout", "POST", "/logout");
+			}
+		}
+
+		/**
+		 * @brief Sends a request and follows its redirects, timing them as one step.
+		 * @param step the name of the step.
+		 * @param method GET or POST.
+		 * @param path the path of the request, after the context path.
+		 * @param form the names and values of the form fields of a POST.
+		 */
+		private void step(String step, String method, String path, String... form) {
+			if (!running) {
+				return;
+			}
+			boolean counted = measuring;
+			long start = System.nanoTime();
+			boolean failed = false;
+			try {
+				HttpResponse<Void> response = send(method, URI.create(url + path), form);
+				for (int redirects = 0; redirects < 5 && response.statusCode() / 100 == 3; redirects++) {
+					String location = response.headers().firstValue("Location").orElseThrow();
+					response = send("GET", URI.create(url).resolve(location), new String[0]);
+				}
+				failed = response.statusCode() >= 400;
+			} catch (Exception e) {
+				failed = true;
+			}
+			if (counted && measuring) {
+				latencies.get(step).add(System.nanoTime() - start, failed);
+			}
+			if (think > 0) {
+				try {
+					Thread.sleep(think);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private HttpResponse<Void> send(String method, URI uri, String[] form) throws Exception {
+			HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30));
+			if (cookie != null) {
+				request.header("Cookie", cookie);
+			}
+			if (method.equals("POST")) {
+				StringBuilder body = new StringBuilder();
+				for (int i = 0; i < form.length; i += 2) {
+					if (body.length() > 0) {
+						body.append('&');
+					}
+					body.append(URLEncoder.encode(form[i], StandardCharsets.UTF_8)).append('=')
+							.append(URLEncoder.encode(form[i + 1], StandardCharsets.UTF_8));
+				}
+				request.header("Content-Type", "application/x-www-form-urlencoded")
+						.POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+			} else {
+				request.GET();
+			}
+			HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+			if (measuring) {
+				requests++;
+			}
+			response.headers().firstValue("Set-Cookie").ifPresent(value -> cookie = value.split(";", 2)[0]);
+			return response;
+		}
+	}
+
+	/**
+	 * @class Latencies
+	 * @brief The latencies of a step, kept whole to compute exact percentiles.
+	 */
+	private static class Latencies {
+		private long[] values = new long[1024];
+		private int size = 0;
+		private long errors = 0;
+
+		private void add(long nanos, boolean failed) {
+			if (failed) {
+				errors++;
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = nanos;
+		}
+
+		private void addAll(Latencies other) {
+			values = Arrays.copyOf(values, Math.max(values.length, size + other.size));
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+			errors += other.errors;
+		}
+
+		/**
+		 * @brief Gets a percentile of the latencies.
+		 * @param quantile the quantile, between 0 and 1.
+		 * @return the latency, in milliseconds; 0 if there are none.
+		 */
+		private double quantile(double quantile) {
+			if (size == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int rank = (int) Math.max(1, Math.ceil(quantile * size));
+			return sorted[rank - 1] / 1e6;
+		}
+	}
+}
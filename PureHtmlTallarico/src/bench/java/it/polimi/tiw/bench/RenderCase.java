@@ -0,0 +1,114 @@
+package it.polimi.tiw.bench;
+
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.WebContext;
+
+import it.polimi.tiw.beans.File;
+import it.polimi.tiw.beans.Pagina;
+import it.polimi.tiw.beans.User;
+import it.polimi.tiw.utils.TemplateHandler;
+import it.polimi.tiw.utils.TreeOrder;
+
+/**
+ * @file RenderCase.java
+ * @brief This benchmark renders the pages listing the documents of a user.
+ * @class RenderCase
+ *
+ * It renders the templates to a null writer with the engine built by TemplateHandler,
+ * resolving them from the bench.webapp directory (default src/main/webapp) and setting
+ * the variables their servlets set:
+ * - home/shape/size renders Home.html with the tree of a SyntheticTree;
+ * - sposta/shape/size renders Sposta.html with the folders of that tree;
+ * - contenuti/size renders Contenuti.html with a page of that many files.
+ * Templates are parsed and cached during the warm-up.
+ */
+public class RenderCase extends BenchCase {
+	private static final int[] PAGE_SIZES = { 50, 500, 5_000 };
+
+	private TemplateEngine templateEngine;
+	private WebContext ctx;
+	private String template;
+
+	@Override
+	public String getName() {
+		return "render";
+	}
+
+	@Override
+	public List<String> getParams() {
+		List<String> params = new ArrayList<>();
+		for (String page : new String[] { "home", "sposta" }) {
+			for (String shape : SyntheticTree.SHAPES) {
+				for (int size : SyntheticTree.SIZES) {
+					params.add(page + "/" + shape + "/" + size);
+				}
+			}
+		}
+		for (int size : PAGE_SIZES) {
+			params.add("contenuti/" + size);
+		}
+		return params;
+	}
+
+	@Override
+	public void setup(String param) throws Exception {
+		ServletContext servletContext = FakeServlet.context(Path.of(System.getProperty("bench.webapp", "src/main/webapp")));
+		templateEngine = TemplateHandler.createTemplateEngine(servletContext);
+		User user = new User();
+		user.setId(1);
+		user.setNome("Utente");
+		HttpServletRequest request = FakeServlet.request(servletContext, Map.of("user", user));
+		HttpServletResponse response = FakeServlet.response();
+		ctx = new WebContext(request, response, servletContext, request.getLocale());
+
+		String[] parts = param.split("/");
+		switch (parts[0]) {
+		case "home":
+			template = "/WEB-INF/Home.html";
+			ctx.setVariable("idRadice", 0);
+			ctx.setVariable("lista", TreeOrder.getOrder(SyntheticTree.generate(parts[1], Integer.parseInt(parts[2])))
+					.getFigli());
+			break;
+		case "sposta":
+			template = "/WEB-INF/Sposta.html";
+			ArrayList<File> cartelle = SyntheticTree.folders(SyntheticTree.generate(parts[1], Integer.parseInt(parts[2])));
+			ArrayList<Integer> idPartenza = new ArrayList<>();
+			idPartenza.add(cartelle.get(cartelle.size() - 1).getIdDocu());
+			ctx.setVariable("idPartenza", idPartenza);
+			ctx.setVariable("dirPadre", cartelle.get(cartelle.size() - 1).getIdDirPadre());
+			ctx.setVariable("lista", TreeOrder.getOrder(cartelle).getFigli());
+			break;
+		case "contenuti":
+			template = "/WEB-INF/Contenuti.html";
+			Pagina pagina = new Pagina();
+			pagina.setNomePadre("cartella");
+			pagina.setLista(SyntheticTree.listing(10, Integer.parseInt(parts[1])));
+			pagina.setSuccessiva(true);
+			ctx.setVariable("idDir", 10);
+			ctx.setVariable("ordine", "nome");
+			ctx.setVariable("senso", "asc");
+			ctx.setVariable("nomePadre", pagina.getNomePadre());
+			ctx.setVariable("lista", pagina.getLista());
+			ctx.setVariable("pagina", pagina);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown page: " + parts[0]);
+		}
+	}
+
+	@Override
+	public Object run() {
+		templateEngine.process(template, ctx, Writer.nullWriter());
+		return ctx;
+	}
+}
@@ -0,0 +1,63 @@
+package it.polimi.tiw.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.polimi.tiw.dao.FileDAO;
+
+/**
+ * @file RowMappingCase.java
+ * @brief This benchmark reads the documents of a user into File beans.
+ * @class RowMappingCase
+ *
+ * It runs the DAO methods on a FakeDatabase, timing their statement handling and row
+ * mapping loops:
+ * - getAll/shape/size reads every document of a SyntheticTree, as the trees do;
+ * - getFileFrom/size reads a page of a directory listing of that many files.
+ */
+public class RowMappingCase extends BenchCase {
+	private static final int[] PAGE_SIZES = { 50, 500, 5_000 };
+
+	private FileDAO fileDao;
+	private boolean pagina;
+	private int dimensione;
+
+	@Override
+	public String getName() {
+		return "rowMapping";
+	}
+
+	@Override
+	public List<String> getParams() {
+		List<String> params = new ArrayList<>();
+		for (String shape : SyntheticTree.SHAPES) {
+			for (int size : SyntheticTree.SIZES) {
+				params.add("getAll/" + shape + "/" + size);
+			}
+		}
+		for (int size : PAGE_SIZES) {
+			params.add("getFileFrom/" + size);
+		}
+		return params;
+	}
+
+	@Override
+	public void setup(String param) {
+		String[] parts = param.split("/");
+		pagina = parts[0].equals("getFileFrom");
+		if (pagina) {
+			dimensione = Integer.parseInt(parts[1]);
+			fileDao = new FileDAO(new FakeDatabase(SyntheticTree.listing(10, dimensione)));
+		} else {
+			fileDao = new FileDAO(new FakeDatabase(SyntheticTree.generate(parts[1], Integer.parseInt(parts[2]))));
+		}
+	}
+
+	@Override
+	public Object run() throws Exception {
+		if (pagina) {
+			return fileDao.getFileFrom(1, 10, FileDAO.ORDINA_NOME, false, null, 0, false, dimensione);
+		}
+		return fileDao.getAll(1);
+	}
+}
@@ -0,0 +1,154 @@
+package it.polimi.tiw.bench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import it.polimi.tiw.beans.File;
+
+/**
+ * @file SyntheticTree.java
+ * @brief This class generates the documents of a user with a given tree shape.
+ * @class SyntheticTree
+ *
+ * The documents are generated from a fixed seed, so every run of a benchmark works on
+ * the same data. The shapes are:
+ * - flat: a single top-level folder holds every other document;
+ * - deep: chains of DEPTH folders, each holding the next one and a file;
+ * - wide: every folder holds FAN_OUT documents, a third of them folders.
+ * Top-level documents are always folders, as CreateFile requires.
+ * Documents are listed by parent and then by ID, like the rows of FileDAO.getAll.
+ */
+public class SyntheticTree {
+	/// Folders in a chain of the deep shape.
+	public static final int DEPTH = 100;
+	/// Documents in a folder of the wide shape.
+	public static final int FAN_OUT = 50;
+
+	public static final String FLAT = "flat";
+	public static final String DEEP = "deep";
+	public static final String WIDE = "wide";
+
+	public static final String[] SHAPES = { FLAT, DEEP, WIDE };
+	public static final int[] SIZES = { 100, 1_000, 10_000, 100_000 };
+
+	private static final String[] EXTENSIONS = { "pdf", "txt", "jpg", "docx", "zip" };
+
+	private SyntheticTree() {
+	}
+
+	/**
+	 * @brief Generates the documents of a tree.
+	 * @param shape one of SHAPES.
+	 * @param size the number of documents.
+	 * @return the documents, IDs starting from 1.
+	 * @throws IllegalArgumentException if the shape is unknown.
+	 */
+	public static ArrayList<File> generate(String shape, int size) {
+		SplittableRandom random = new SplittableRandom(size * 31L + shape.hashCode());
+		ArrayList<File> lista = new ArrayList<>(size);
+		switch (shape) {
+		case FLAT:
+			for (int id = 1; id <= size; id++) {
+				lista.add(document(random, id, id == 1 ? 0 : 1, id == 1));
+			}
+			break;
+		case DEEP:
+			int parent = 0;
+			for (int id = 1; id <= size; id++) {
+				if (id % 2 == 1) {
+					// a new chain starts at the top level every DEPTH folders
+					parent = (id / 2) % DEPTH == 0 ? 0 : id - 2;
+					lista.add(document(random, id, parent, true));
+				} else {
+					lista.add(document(random, id, id - 1, false));
+				}
+			}
+			break;
+		case WIDE:
+			List<Integer> folders = new ArrayList<>();
+			int next = 0;
+			for (int id = 1; id <= size; id++) {
+				int padre = id <= FAN_OUT ? 0 : folders.get(next / FAN_OUT);
+				next += id <= FAN_OUT ? 0 : 1;
+				boolean dir = id <= FAN_OUT || id % 3 == 1;
+				if (dir) {
+					folders.add(id);
+				}
+				lista.add(document(random, id, padre, dir));
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+		lista.sort(Comparator.comparingInt(File::getIdDirPadre).thenComparingInt(File::getIdDocu));
+		return lista;
+	}
+
+	/**
+	 * @brief Generates the rows of a directory listing.
+	 * @param idDirPadre the folder holding the files.
+	 * @param size the number of files.
+	 * @return the files, sorted by name.
+	 */
+	public static ArrayList<File> listing(int idDirPadre, int size) {
+		SplittableRandom random = new SplittableRandom(size);
+		ArrayList<File> lista = new ArrayList<>(size);
+		for (int id = 1; id <= size; id++) {
+			File file = document(random, idDirPadre + id, idDirPadre, false);
+			file.setNomePadre("cartella");
+			lista.add(file);
+		}
+		lista.sort(Comparator.comparing(File::getNome).thenComparingInt(File::getIdDocu));
+		return lista;
+	}
+
+	/**
+	 * @brief Gets the folders of a tree.
+	 * @param lista the documents of the tree.
+	 * @return the folders, in the same order.
+	 */
+	public static ArrayList<File> folders(List<File> lista) {
+		ArrayList<File> folders = new ArrayList<>();
+		for (File file : lista) {
+			if ("dir".equals(file.getTipo())) {
+				folders.add(file);
+			}
+		}
+		return folders;
+	}
+
+	/**
+	 * @brief Copies the documents of a tree, without their children.
+	 * @param lista the documents to copy.
+	 * @return the copies, in the same order.
+	 */
+	public static ArrayList<File> copy(List<File> lista) {
+		ArrayList<File> copia = new ArrayList<>(lista.size());
+		for (File file : lista) {
+			File nuovo = new File();
+			nuovo.setIdDocu(file.getIdDocu());
+			nuovo.setIdDirPadre(file.getIdDirPadre());
+			nuovo.setNome(file.getNome());
+			nuovo.setTipo(file.getTipo());
+			nuovo.setCreazione(file.getCreazione());
+			nuovo.setDescrizione(file.getDescrizione());
+			copia.add(nuovo);
+		}
+		return copia;
+	}
+
+	private static File document(SplittableRandom random, int id, int idDirPadre, boolean dir) {
+		File file = new File();
+		file.setIdDocu(id);
+		file.setIdDirPadre(idDirPadre);
+		file.setProprietario(1);
+		file.setTipo(dir ? "dir" : EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+		file.setNome((dir ? "cartella_" : "documento_") + Integer.toString(random.nextInt(1 << 30), 36)
+				+ (dir ? "" : "." + file.getTipo()));
+		file.setCreazione(String.format("2023-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)));
+		file.setDescrizione(dir ? null : "Descrizione del documento " + id);
+		return file;
+	}
+}
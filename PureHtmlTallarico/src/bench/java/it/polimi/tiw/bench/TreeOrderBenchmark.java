@@ -0,0 +1,144 @@
+package it.polimi.tiw.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import it.polimi.tiw.beans.File;
+import it.polimi.tiw.utils.TreeOrder;
+
+/**
+ * @file TreeOrderBenchmark.java
+ * @brief Compares the indexed tree builder of TreeOrder with the former quadratic one.
+ * @class TreeOrderBenchmark
+ *
+ * Builds random folder trees of 1k, 10k and 100k nodes, shaped like the result of
+ * FileDAO.getDir (sorted by parent ID), and measures both algorithms on the same input.
+ * Run it with the webapp classes and the bench sources on the classpath:
+ *
+ *     java it.polimi.tiw.bench.TreeOrderBenchmark [sizes...]
+ */
+public class TreeOrderBenchmark {
+
+	public static void main(String[] args) {
+		int[] sizes = { 1_000, 10_000, 100_000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.printf("%10s %16s %16s %10s%n", "nodes", "indexed (ms)", "quadratic (ms)", "speedup");
+		for (int size : sizes) {
+			if (!sameTree(TreeOrder.getOrder(randomTree(size, 0)), quadraticOrder(randomTree(size, 0)))) {
+				throw new IllegalStateException("The two builders disagree on a tree of " + size + " nodes");
+			}
+			double indexed = measure(size, false);
+			double quadratic = measure(size, true);
+			System.out.printf("%10d %16.3f %16.3f %9.1fx%n", size, indexed, quadratic, quadratic / indexed);
+		}
+	}
+
+	/**
+	 * @brief Measures the average time of one tree build.
+	 * @param size the number of nodes of the tree.
+	 * @param quadratic true to measure the former algorithm.
+	 * @return the average milliseconds per build.
+	 */
+	private static double measure(int size, boolean quadratic) {
+		// the quadratic builder needs seconds for the biggest trees, keep its runs few
+		long cost = quadratic ? (long) size * size / 4 : (long) size * 20;
+		int runs = (int) Math.max(1, Math.min(200, 2_000_000_000L / cost));
+		int warmup = Math.max(1, runs / 4);
+
+		long checksum = 0;
+		for (int i = 0; i < warmup; i++) {
+			checksum += build(randomTree(size, i), quadratic).getFigli().size();
+		}
+		long elapsed = 0;
+		for (int i = 0; i < runs; i++) {
+			ArrayList<File> lista = randomTree(size, warmup + i);
+			long start = System.nanoTime();
+			File root = build(lista, quadratic);
+			elapsed += System.nanoTime() - start;
+			checksum += root.getFigli().size();
+		}
+		if (checksum < 0) {
+			System.out.println(checksum);
+		}
+		return elapsed / 1e6 / runs;
+	}
+
+	/**
+	 * @brief Checks that two trees have the same nodes with children in the same order.
+	 * @param a the root of the first tree.
+	 * @param b the root of the second tree.
+	 * @return true if the trees are equal.
+	 */
+	private static boolean sameTree(File a, File b) {
+		ArrayList<File> pending = new ArrayList<>();
+		pending.add(a);
+		pending.add(b);
+		while (!pending.isEmpty()) {
+			File y = pending.remove(pending.size() - 1);
+			File x = pending.remove(pending.size() - 1);
+			if (x.getIdDocu() != y.getIdDocu() || x.getFigli().size() != y.getFigli().size()) {
+				return false;
+			}
+			for (int i = 0; i < x.getFigli().size(); i++) {
+				pending.add(x.getFigli().get(i));
+				pending.add(y.getFigli().get(i));
+			}
+		}
+		return true;
+	}
+
+	private static File build(ArrayList<File> lista, boolean quadratic) {
+		return quadratic ? quadraticOrder(lista) : TreeOrder.getOrder(lista);
+	}
+
+	/**
+	 * @brief Creates a random folder tree with IDs 1..size sorted by parent ID.
+	 * @param size the number of folders.
+	 * @param seed the seed of the random generator.
+	 * @return the folders, as returned by FileDAO.getDir.
+	 */
+	static ArrayList<File> randomTree(int size, long seed) {
+		Random random = new Random(seed);
+		ArrayList<File> lista = new ArrayList<>(size);
+		for (int id = 1; id <= size; id++) {
+			File file = new File();
+			file.setIdDocu(id);
+			file.setIdDirPadre(id <= 10 ? 0 : 1 + random.nextInt(id - 1));
+			file.setNome("dir" + id);
+			file.setTipo("dir");
+			lista.add(file);
+		}
+		lista.sort((a, b) -> Integer.compare(a.getIdDirPadre(), b.getIdDirPadre()));
+		return lista;
+	}
+
+	/**
+	 * @brief The tree builder TreeOrder used before it indexed the nodes.
+	 * @param lista the files to organize.
+	 * @return the root of the tree.
+	 */
+	static File quadraticOrder(ArrayList<File> lista) {
+		File root = new File();
+		boolean find;
+		for (int i = 0; i < lista.size(); i++) {
+			find = false;
+			if (lista.get(i).getIdDirPadre() == 0) {
+				root.addFiglio(lista.get(i));
+				find = true;
+			}
+			for (int j = 0; j < lista.size() && !find; j++) {
+				if (lista.get(i).getIdDirPadre() == lista.get(j).getIdDocu()) {
+					lista.get(j).addFiglio(lista.get(i));
+					find = true;
+				}
+			}
+		}
+		return root;
+	}
+}
@@ -0,0 +1,59 @@
+package it.polimi.tiw.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.polimi.tiw.beans.File;
+import it.polimi.tiw.utils.TreeOrder;
+
+/**
+ * @file TreeOrderCase.java
+ * @brief This benchmark arranges the documents of a user into a tree.
+ * @class TreeOrderCase
+ *
+ * It times TreeOrder.getOrder on every shape and size of SyntheticTree. getOrder adds
+ * the documents to the children of their parents, so the children are cleared before
+ * every run.
+ */
+public class TreeOrderCase extends BenchCase {
+	private ArrayList<File> lista;
+
+	@Override
+	public String getName() {
+		return "treeOrder";
+	}
+
+	@Override
+	public List<String> getParams() {
+		List<String> params = new ArrayList<>();
+		for (String shape : SyntheticTree.SHAPES) {
+			for (int size : SyntheticTree.SIZES) {
+				params.add(shape + "/" + size);
+			}
+		}
+		return params;
+	}
+
+	@Override
+	public void setup(String param) {
+		String[] parts = param.split("/");
+		lista = SyntheticTree.generate(parts[0], Integer.parseInt(parts[1]));
+	}
+
+	@Override
+	public boolean hasPrepare() {
+		return true;
+	}
+
+	@Override
+	public void prepare() {
+		for (File file : lista) {
+			file.setFigli(new ArrayList<>());
+		}
+	}
+
+	@Override
+	public Object run() {
+		return TreeOrder.getOrder(lista);
+	}
+}
@@ -0,0 +1,159 @@
+package it.polimi.tiw.bench;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.FileTemplateResolver;
+
+import it.polimi.tiw.beans.File;
+import it.polimi.tiw.utils.TreeDialect;
+import it.polimi.tiw.utils.TreeOrder;
+
+/**
+ * @file TreeRenderBenchmark.java
+ * @brief Compares the TreeDialect renderer with the former recursive treeViewer fragment.
+ * @class TreeRenderBenchmark
+ *
+ * Renders the home tree of random folder trees of 1k, 10k and 100k nodes, and of a single
+ * chain of nested folders, with both approaches. The fragment template is a copy of the
+ * tree part of the former Home.html. Run it with the webapp classes, the bench sources
+ * and the libraries on the classpath:
+ *
+ *     java it.polimi.tiw.bench.TreeRenderBenchmark [sizes...]
+ */
+public class TreeRenderBenchmark {
+
+	/// The tree of the former Home.html, rendered by recursive fragment inclusion.
+	private static final String FRAGMENT_TEMPLATE = String.join("\n",
+			"<ul class=\"tree\">",
+			"    <li th:each=\"file : ${lista}\">",
+			"        <form action=\"createcontenuti\" method=\"post\">",
+			"            <input type=\"hidden\" name=\"idDir\" th:value=\"${file.idDocu}\" />",
+			"            <button type=\"submit\" th:if=\"${file.tipo == 'dir'}\"><span class=\"icon dir\"></span><span th:text=\"${file.nome}\"></span></button>",
+			"            <button type=\"submit\" th:if=\"${file.tipo != 'dir'}\"><span class=\"icon file\"></span><span th:text=\"${file.nome}\"></span></button>",
+			"        </form>",
+			"        <section th:if=\"${file.figli}\"><ul class=\"tree\">",
+			"            <section th:replace=\"fragment :: treeViewer(${file.figli})\" th:if=\"${file.tipo != null}\"></section>",
+			"        </ul></section>",
+			"    </li>",
+			"</ul>",
+			"<section th:fragment=\"treeViewer(children)\">",
+			"    <li th:each=\"file : ${children}\">",
+			"        <form action=\"createcontenuti\" method=\"post\">",
+			"            <input type=\"hidden\" name=\"idDir\" th:value=\"${file.idDocu}\" />",
+			"            <button type=\"submit\" th:if=\"${file.tipo == 'dir'}\"><span class=\"icon dir\"></span><span th:text=\"${file.nome}\"></span></button>",
+			"            <button type=\"submit\" th:if=\"${file.tipo != 'dir'}\"><span class=\"icon file\"></span><span th:text=\"${file.nome}\"></span></button>",
+			"        </form>",
+			"        <section th:if=\"${file.figli}\"><ul class=\"tree\">",
+			"            <section th:replace=\"fragment :: treeViewer(${file.figli})\" th:if=\"${file.tipo != null}\"></section>",
+			"        </ul></section>",
+			"    </li>",
+			"</section>");
+
+	/// The same tree rendered by the dialect.
+	private static final String DIALECT_TEMPLATE = "<ul class=\"tree\" tree:home=\"${lista}\"></ul>";
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = { 1_000, 10_000, 100_000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		Path dir = Files.createTempDirectory("treerender");
+		Files.writeString(dir.resolve("fragment.html"), FRAGMENT_TEMPLATE);
+		Files.writeString(dir.resolve("dialect.html"), DIALECT_TEMPLATE);
+		TemplateEngine engine = createEngine(dir);
+
+		System.out.printf("%16s %16s %16s %10s%n", "tree", "dialect (ms)", "fragment (ms)", "speedup");
+		for (int size : sizes) {
+			run(engine, "random " + size, TreeOrderBenchmark.randomTree(size, 0), size);
+		}
+		run(engine, "chain 1000", chain(1_000), 1_000);
+		run(engine, "chain 10000", chain(10_000), 10_000);
+	}
+
+	private static void run(TemplateEngine engine, String label, ArrayList<File> lista, int size) {
+		File root = TreeOrder.getOrder(lista);
+		double dialect = measure(engine, "dialect", root, size);
+		try {
+			double fragment = measure(engine, "fragment", root, size);
+			System.out.printf("%16s %16.3f %16.3f %9.1fx%n", label, dialect, fragment, fragment / dialect);
+		} catch (StackOverflowError e) {
+			System.out.printf("%16s %16.3f %16s%n", label, dialect, "stack overflow");
+		}
+	}
+
+	/**
+	 * @brief Measures the average time of one rendering of the tree.
+	 * @param engine the template engine.
+	 * @param template the name of the template to render.
+	 * @param root the root of the tree.
+	 * @param size the number of nodes of the tree.
+	 * @return the average milliseconds per rendering.
+	 */
+	private static double measure(TemplateEngine engine, String template, File root, int size) {
+		int runs = Math.max(1, Math.min(100, 2_000_000 / size));
+		int warmup = Math.max(1, runs / 4);
+
+		Context ctx = new Context();
+		ctx.setVariable("lista", root.getFigli());
+		long length = 0;
+		for (int i = 0; i < warmup; i++) {
+			length += render(engine, template, ctx);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			length += render(engine, template, ctx);
+		}
+		long elapsed = System.nanoTime() - start;
+		if (length < 0) {
+			System.out.println(length);
+		}
+		return elapsed / 1e6 / runs;
+	}
+
+	private static int render(TemplateEngine engine, String template, Context ctx) {
+		StringWriter writer = new StringWriter();
+		engine.process(template, ctx, writer);
+		return writer.getBuffer().length();
+	}
+
+	private static TemplateEngine createEngine(Path dir) {
+		FileTemplateResolver templateResolver = new FileTemplateResolver();
+		templateResolver.setTemplateMode(TemplateMode.HTML);
+		templateResolver.setPrefix(dir.toString() + "/");
+		templateResolver.setSuffix(".html");
+		templateResolver.setCacheable(true);
+		TemplateEngine engine = new TemplateEngine();
+		engine.setTemplateResolver(templateResolver);
+		engine.addDialect(new TreeDialect());
+		return engine;
+	}
+
+	/**
+	 * @brief Creates a chain of folders, each one inside the previous.
+	 * @param size the number of folders.
+	 * @return the folders, as returned by FileDAO.getDir.
+	 */
+	private static ArrayList<File> chain(int size) {
+		ArrayList<File> lista = new ArrayList<>(size);
+		for (int id = 1; id <= size; id++) {
+			File file = new File();
+			file.setIdDocu(id);
+			file.setIdDirPadre(id - 1);
+			file.setNome("dir" + id);
+			file.setTipo("dir");
+			lista.add(file);
+		}
+		return lista;
+	}
+}
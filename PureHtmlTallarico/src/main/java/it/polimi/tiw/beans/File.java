@@ -40,6 +40,9 @@ public class File {
 	
 	/// This attribute holds a list of child files or directories.
 	private ArrayList<File> figli= new ArrayList<>();
+
+	/// This attribute tells whether the directory has subdirectories that have not been loaded.
+	private boolean daEspandere;
 	
 	//GETTER
 	/**
@@ -212,5 +215,23 @@ public class File {
     public void setNomePadre(String nomePadre) {
         this.nomePadre = nomePadre;
     }
+
+    /**
+     * @brief Tells whether the directory has subdirectories that have not been loaded.
+     *
+     * @return True if the subdirectories can be loaded on request.
+     */
+    public boolean isDaEspandere() {
+        return daEspandere;
+    }
+
+    /**
+     * @brief Sets whether the directory has subdirectories that have not been loaded.
+     *
+     * @param daEspandere True if the subdirectories can be loaded on request.
+     */
+    public void setDaEspandere(boolean daEspandere) {
+        this.daEspandere = daEspandere;
+    }
 	
 }
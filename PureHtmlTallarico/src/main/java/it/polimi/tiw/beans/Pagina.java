@@ -0,0 +1,172 @@
+package it.polimi.tiw.beans;
+
+import java.util.ArrayList;
+
+/**
+ * @file Pagina.java
+ * @class Pagina
+ *
+ * @brief Represents a page of the contents of a directory.
+ *
+ * This class encapsulates the files of the page, together with the cursors
+ * (sort value and document ID of the first and last file) used to request
+ * the previous and the next page.
+ */
+public class Pagina {
+
+	/// This attribute represents the name of the directory, null if it does not exist.
+	private String nomePadre;
+
+	/// This attribute holds the files of the page, in display order.
+	private ArrayList<File> lista = new ArrayList<>();
+
+	/// This attribute tells whether there are files before the page.
+	private boolean precedente;
+
+	/// This attribute tells whether there are files after the page.
+	private boolean successiva;
+
+	/// This attribute represents the sort value of the first file of the page.
+	private String cursorePrecedente;
+
+	/// This attribute represents the document ID of the first file of the page.
+	private int idPrecedente;
+
+	/// This attribute represents the sort value of the last file of the page.
+	private String cursoreSuccessiva;
+
+	/// This attribute represents the document ID of the last file of the page.
+	private int idSuccessiva;
+
+	//GETTER
+	/**
+	 * @brief Gets the name of the directory.
+	 *
+	 * @return The name of the directory, or null if the user has no such directory.
+	 */
+	public String getNomePadre() {
+		return nomePadre;
+	}
+
+	/**
+	 * @brief Gets the files of the page.
+	 *
+	 * @return An ArrayList of File objects, in display order.
+	 */
+	public ArrayList<File> getLista() {
+		return lista;
+	}
+
+	/**
+	 * @brief Tells whether there are files before the page.
+	 *
+	 * @return True if a previous page exists.
+	 */
+	public boolean isPrecedente() {
+		return precedente;
+	}
+
+	/**
+	 * @brief Tells whether there are files after the page.
+	 *
+	 * @return True if a next page exists.
+	 */
+	public boolean isSuccessiva() {
+		return successiva;
+	}
+
+	/**
+	 * @brief Gets the sort value of the first file of the page.
+	 *
+	 * @return The cursor for the previous page.
+	 */
+	public String getCursorePrecedente() {
+		return cursorePrecedente;
+	}
+
+	/**
+	 * @brief Gets the document ID of the first file of the page.
+	 *
+	 * @return The document ID of the cursor for the previous page.
+	 */
+	public int getIdPrecedente() {
+		return idPrecedente;
+	}
+
+	/**
+	 * @brief Gets the sort value of the last file of the page.
+	 *
+	 * @return The cursor for the next page.
+	 */
+	public String getCursoreSuccessiva() {
+		return cursoreSuccessiva;
+	}
+
+	/**
+	 * @brief Gets the document ID of the last file of the page.
+	 *
+	 * @return The document ID of the cursor for the next page.
+	 */
+	public int getIdSuccessiva() {
+		return idSuccessiva;
+	}
+
+	//SETTER
+	/**
+	 * @brief Sets the name of the directory.
+	 *
+	 * @param nomePadre The name of the directory.
+	 */
+	public void setNomePadre(String nomePadre) {
+		this.nomePadre = nomePadre;
+	}
+
+	/**
+	 * @brief Sets the files of the page.
+	 *
+	 * @param lista The files, in display order.
+	 */
+	public void setLista(ArrayList<File> lista) {
+		this.lista = lista;
+	}
+
+	/**
+	 * @brief Sets whether there are files before the page.
+	 *
+	 * @param precedente True if a previous page exists.
+	 */
+	public void setPrecedente(boolean precedente) {
+		this.precedente = precedente;
+	}
+
+	/**
+	 * @brief Sets whether there are files after the page.
+	 *
+	 * @param successiva True if a next page exists.
+	 */
+	public void setSuccessiva(boolean successiva) {
+		this.successiva = successiva;
+	}
+
+	/**
+	 * @brief Sets the cursor for the previous page.
+	 *
+	 * @param cursorePrecedente The sort value of the first file of the page.
+	 * @param idPrecedente The document ID of the first file of the page.
+	 */
+	public void setCursorePrecedente(String cursorePrecedente, int idPrecedente) {
+		this.cursorePrecedente = cursorePrecedente;
+		this.idPrecedente = idPrecedente;
+	}
+
+	/**
+	 * @brief Sets the cursor for the next page.
+	 *
+	 * @param cursoreSuccessiva The sort value of the last file of the page.
+	 * @param idSuccessiva The document ID of the last file of the page.
+	 */
+	public void setCursoreSuccessiva(String cursoreSuccessiva, int idSuccessiva) {
+		this.cursoreSuccessiva = cursoreSuccessiva;
+		this.idSuccessiva = idSuccessiva;
+	}
+}
@@ -9,7 +9,6 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
 
 import javax.servlet.ServletContext;
@@ -18,15 +17,16 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.dao.UserDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.Log;
+import it.polimi.tiw.utils.TemplateHandler;
 
 /**
  * @class CheckLogin
@@ -38,8 +38,9 @@ import it.polimi.tiw.utils.ConnectionHandler;
  */
 public class CheckLogin extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private static final Log LOG = Log.getLog(CheckLogin.class);
+	private DataSource dataSource;
+	private ITemplateEngine templateEngine;
 
 	/**
      * @brief Constructor for CheckLogin servlet.
@@ -51,21 +52,16 @@ public class CheckLogin extends HttpServlet {
 	}
 
 	/**
-     * @brief Initializes the servlet and configures the template engine.
+     * @brief Initializes the servlet and gets the shared template engine.
      * 
-     * Establishes a database connection and configures Thymeleaf for HTML template rendering.
+     * Gets the shared database connection pool and the shared Thymeleaf template engine.
      * 
      * @throws ServletException if an error occurs during initialization
      */
 	@Override
 	public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
 	}
 
 	/**
@@ -121,7 +117,7 @@ public class CheckLogin extends HttpServlet {
 	    }
 
 	    
-	    UserDAO userDao = new UserDAO(connection);
+	    UserDAO userDao = new UserDAO(dataSource);
 	    User user = null;
 
 	    try {
@@ -153,22 +149,8 @@ public class CheckLogin extends HttpServlet {
 	        // Redirect to CreateHome page
 	        response.sendRedirect(getServletContext().getContextPath() + "/createhome");
 	    } catch (IOException e) {
-	        e.printStackTrace();
+	        LOG.error("Login redirect failed", e);
 	    }
 	}
 
-	/**
-     * @brief Closes the connection when the servlet is destroyed.
-     * 
-     * Ensures that the database connection is closed when the servlet is no longer in use.
-     */
-	@Override
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
-
 }
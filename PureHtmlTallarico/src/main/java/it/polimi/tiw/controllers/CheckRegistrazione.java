@@ -12,22 +12,20 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.SQLException;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
 import it.polimi.tiw.dao.UserDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.TemplateHandler;
 
 /**
  * @class CheckRegistrazione
@@ -35,27 +33,22 @@ import it.polimi.tiw.utils.ConnectionHandler;
  */
 public class CheckRegistrazione extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private DataSource dataSource;
+	private ITemplateEngine templateEngine;
 
     public CheckRegistrazione() {
         super();
     }
 
     /**
-     * @brief Initializes the servlet, setting up the database connection and configuring the Thymeleaf template engine.
+     * @brief Initializes the servlet, getting the shared database connection pool and the shared Thymeleaf template engine.
      * 
      * @throws ServletException if an error occurs during servlet initialization
      */
     @Override
 	public void init() throws ServletException {
-		this.connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		this.dataSource = ConnectionHandler.getDataSource(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
 	}
 
     /**
@@ -134,7 +127,7 @@ public class CheckRegistrazione extends HttpServlet {
 	        }
 	        
 	        // Add user to the database after validation
-	        UserDAO userDao = new UserDAO(connection);
+	        UserDAO userDao = new UserDAO(dataSource);
 	        int risDB=userDao.addUser(nome, mail, password);
 	        // Handle the result from the database
 	        if (risDB==0) {
@@ -175,21 +168,5 @@ public class CheckRegistrazione extends HttpServlet {
 	        return;
 	    }
 	}
-	
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 * 
-	 * This method closes the database connection to free up resources.
-	 * It handles any SQL exceptions that may occur during the closing process.
-	 * 
-	 * @throws SQLException if a database access error occurs while closing the connection
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 
 }
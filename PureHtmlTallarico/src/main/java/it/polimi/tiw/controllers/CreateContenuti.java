@@ -1,32 +1,41 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.ArrayList;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
 import it.polimi.tiw.beans.File;
+import it.polimi.tiw.beans.Pagina;
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.dao.FileDAO;
+import it.polimi.tiw.dao.FileStream;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.DaoExecutor;
+import it.polimi.tiw.utils.TemplateHandler;
 
 
 public class CreateContenuti extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private DataSource dataSource;
+	private ITemplateEngine templateEngine;
+	private DaoExecutor daoExecutor;
+	/// Maximum number of files shown per page.
+	private int pageSize;
+	/// Whether the files are streamed from the database while the page is written.
+	private boolean streaming;
+	/// Number of rows fetched from the database at a time when streaming.
+	private int fetchSize;
 
 	/**
 	 * @file CreateContenuti.java
@@ -35,28 +44,44 @@ public class CreateContenuti extends HttpServlet {
 	 * 
 	 * This class extends HttpServlet and provides functionality for handling both
 	 * GET and POST requests related to the contents in a specific directory.
-	 * It verifies user sessions and retrieves files from the database.
+	 * It verifies user sessions and retrieves files from the database off the
+	 * container thread (see DaoExecutor).
 	 */
 	public CreateContenuti() {
 		super();
 	}
 
 	/**
-	 * @brief Initializes the servlet and establishes a database connection.
+	 * @brief Initializes the servlet and gets the shared database connection pool.
 	 * 
-	 * This method sets up the template engine and prepares the connection to the
-	 * database when the servlet is initialized.
+	 * This method gets the shared template engine and the shared connection pool of the
+	 * database when the servlet is initialized. The optional contenutiPageSize context
+	 * parameter sets the number of files shown per page; contenutiStreaming, false unless
+	 * set to true, streams them from the database while the page is written, fetching
+	 * contenutiFetchSize rows at a time. Streaming saves only a page of beans, since pages
+	 * are small, but holds a pooled connection with an open cursor for as long as the
+	 * client takes to receive the page, and a database error in the middle of the page
+	 * leaves it truncated; it is meant for large contenutiPageSize values.
 	 * 
 	 * @throws ServletException if a servlet error occurs during initialization
 	 */
 	public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		try {
+			pageSize = ConnectionHandler.getIntParameter(getServletContext(), "contenutiPageSize", 50);
+			fetchSize = ConnectionHandler.getIntParameter(getServletContext(), "contenutiFetchSize", 100);
+		} catch (IllegalArgumentException e) {
+			throw new UnavailableException(e.getMessage());
+		}
+		if (pageSize <= 0) {
+			throw new UnavailableException("contenutiPageSize must be positive");
+		}
+		if (fetchSize <= 0) {
+			throw new UnavailableException("contenutiFetchSize must be positive");
+		}
+		streaming = "true".equalsIgnoreCase(getServletContext().getInitParameter("contenutiStreaming"));
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
+		daoExecutor = DaoExecutor.getInstance(getServletContext());
 	}
 
 	/**
@@ -92,27 +117,7 @@ public class CreateContenuti extends HttpServlet {
 	        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing Value");
 	        return;
 	    }
-		ArrayList<File> lista = new ArrayList<File>();
-		FileDAO fileDao = new FileDAO(connection);
-		try {
-			lista = fileDao.getFileFrom(user.getId(), idDirPadre);
-		} catch (SQLException e) {
-			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
-			return;
-		}
-
-		ServletContext servletContext = getServletContext();
-		final WebContext ctx = new WebContext(request, response, servletContext, request.getLocale());
-		if (lista.isEmpty()) {
-			ctx.setVariable("contenutiError", "Cartella vuota o non esistente!");
-			templateEngine.process("/WEB-INF/Contenuti.html", ctx, response.getWriter());
-			return; // Return after displaying success message
-		} else {
-			ctx.setVariable("lista", lista);
-			ctx.setVariable("nomePadre", lista.get(0).getNomePadre());
-			templateEngine.process("/WEB-INF/Contenuti.html", ctx, response.getWriter());
-		}
-
+		daoExecutor.execute(request, response, () -> showContenuti(request, response, user, idDirPadre));
 	}
 
 	/**
@@ -149,41 +154,108 @@ public class CreateContenuti extends HttpServlet {
 	        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing Value");
 	        return;
 	    }
-		ArrayList<File> lista = new ArrayList<File>();
-		FileDAO fileDao = new FileDAO(connection);
+		daoExecutor.execute(request, response, () -> showContenuti(request, response, user, idDirPadre));
+	}
+
+	/**
+	 * @brief Displays a page of the contents of a directory, on a thread of the DaoExecutor.
+	 *
+	 * The optional parameters ordine (nome or creazione) and senso (asc or desc) choose
+	 * the sort order; cursore, idCursore and pagina (precedente or successiva) select
+	 * the page before or after the given file. After a move, nonSpostati is the number
+	 * of selected files that could not be moved.
+	 *
+	 * @param request the HttpServletRequest object
+	 * @param response the HttpServletResponse object
+	 * @param user the logged user
+	 * @param idDirPadre the ID of the directory
+	 * @throws IOException if an I/O error occurs during the process
+	 */
+	private void showContenuti(HttpServletRequest request, HttpServletResponse response, User user, int idDirPadre)
+			throws IOException {
+		String ordine = request.getParameter("ordine");
+		if (ordine == null || ordine.isEmpty()) {
+			ordine = FileDAO.ORDINA_NOME;
+		}
+		boolean discendente = "desc".equals(request.getParameter("senso"));
+		boolean indietro = "precedente".equals(request.getParameter("pagina"));
+		String cursore = request.getParameter("cursore");
+		int idCursore = 0;
+		if (cursore != null) {
+			try {
+				idCursore = Integer.parseInt(request.getParameter("idCursore"));
+			} catch (NumberFormatException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid Value");
+				return;
+			}
+		}
+
+		FileDAO fileDao = new FileDAO(dataSource);
+		if (streaming) {
+			FileStream stream;
+			try {
+				stream = fileDao.streamFileFrom(user.getId(), idDirPadre, ordine, discendente, cursore, idCursore,
+						indietro, pageSize, fetchSize);
+			} catch (IllegalArgumentException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid Value");
+				return;
+			} catch (SQLException e) {
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
+				return;
+			}
+			// the files are read from the database while the template writes them
+			try (stream) {
+				render(request, response, idDirPadre, ordine, discendente, stream.getPagina(), stream, stream.isEmpty());
+			}
+			return;
+		}
+
+		Pagina pagina;
 		try {
-			lista = fileDao.getFileFrom(user.getId(), idDirPadre);
+			pagina = fileDao.getFileFrom(user.getId(), idDirPadre, ordine, discendente, cursore, idCursore, indietro,
+					pageSize);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid Value");
+			return;
 		} catch (SQLException e) {
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
 			return;
 		}
+		render(request, response, idDirPadre, ordine, discendente, pagina, pagina.getLista(), pagina.getLista().isEmpty());
+	}
 
+	/**
+	 * @brief Writes the contents page.
+	 * @param request the HttpServletRequest object
+	 * @param response the HttpServletResponse object
+	 * @param idDirPadre the ID of the directory
+	 * @param ordine the sort key
+	 * @param discendente true if the files are sorted in descending order
+	 * @param pagina the page, whose cursors are read after the files
+	 * @param lista the files of the page
+	 * @param vuota true if the page has no files
+	 * @throws IOException if an I/O error occurs during the process
+	 */
+	private void render(HttpServletRequest request, HttpServletResponse response, int idDirPadre, String ordine,
+			boolean discendente, Pagina pagina, Iterable<File> lista, boolean vuota) throws IOException {
 		ServletContext servletContext = getServletContext();
 		final WebContext ctx = new WebContext(request, response, servletContext, request.getLocale());
-		if (lista.isEmpty()) {
-			ctx.setVariable("contenutiError", "Cartella vuota o non esistente!");
-			templateEngine.process("/WEB-INF/Contenuti.html", ctx, response.getWriter());
-			return; // Return after displaying success message
+		ctx.setVariable("idDir", idDirPadre);
+		ctx.setVariable("ordine", ordine);
+		ctx.setVariable("senso", discendente ? "desc" : "asc");
+		String nonSpostati = request.getParameter("nonSpostati");
+		if (nonSpostati != null && nonSpostati.matches("\\d+")) {
+			ctx.setVariable("spostaError", nonSpostati + " documenti non spostati: non esistono o non possono essere spostati in questa cartella.");
+		}
+		ctx.setVariable("nomePadre", pagina.getNomePadre());
+		if (pagina.getNomePadre() == null) {
+			ctx.setVariable("contenutiError", "Cartella non esistente!");
+		} else if (vuota) {
+			ctx.setVariable("contenutiError", "Cartella vuota!");
 		} else {
 			ctx.setVariable("lista", lista);
-			ctx.setVariable("nomePadre", lista.get(0).getNomePadre());
-			templateEngine.process("/WEB-INF/Contenuti.html", ctx, response.getWriter());
-		}
-	}
-	
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 * 
-	 * This method closes the database connection to free up resources.
-	 * It handles any SQL exceptions that may occur during the closing process.
-	 * 
-	 * @throws SQLException if a database access error occurs while closing the connection
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
+			ctx.setVariable("pagina", pagina);
 		}
+		templateEngine.process("/WEB-INF/Contenuti.html", ctx, response.getWriter());
 	}
 }
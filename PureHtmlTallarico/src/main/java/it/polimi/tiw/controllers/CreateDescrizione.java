@@ -8,15 +8,15 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
+import org.thymeleaf.ITemplateEngine;
 
 import it.polimi.tiw.utils.ConnectionHandler;
-import java.sql.Connection;
+import it.polimi.tiw.utils.DaoExecutor;
+import it.polimi.tiw.utils.TemplateHandler;
 import java.sql.SQLException;
 
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
 import org.thymeleaf.context.WebContext;
 
@@ -32,29 +32,26 @@ import it.polimi.tiw.dao.FileDAO;
  * This class extends HttpServlet and processes GET and POST requests
  * to retrieve and display information about a specific file based on
  * the user's session. It ensures the user is logged in and retrieves
- * the file data from the database.
+ * the file data from the database off the container thread (see DaoExecutor).
  */
 public class CreateDescrizione extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private DataSource dataSource;
+	private ITemplateEngine templateEngine;
+	private DaoExecutor daoExecutor;
        
     public CreateDescrizione() {
         super();
     }
     
 	/**
-	 * @brief Initializes the servlet and establishes a database connection.
+	 * @brief Initializes the servlet and gets the shared database connection pool.
 	 * @throws ServletException if a servlet-related error occurs.
 	 */
     public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
+		daoExecutor = DaoExecutor.getInstance(getServletContext());
 	}
     
     /**
@@ -92,8 +89,21 @@ public class CreateDescrizione extends HttpServlet {
 	        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing value");
 	        return;
 	    }
+		daoExecutor.execute(request, response, () -> showDescrizione(request, response, user, idDocu));
+	}
+
+	/**
+	 * @brief Reads a file and writes its information, on a thread of the DaoExecutor.
+	 * @param request the HttpServletRequest object.
+	 * @param response the HttpServletResponse object.
+	 * @param user the logged user.
+	 * @param idDocu the ID of the file.
+	 * @throws IOException if an I/O error occurs during the processing of the request.
+	 */
+	private void showDescrizione(HttpServletRequest request, HttpServletResponse response, User user, int idDocu)
+			throws IOException {
 		File file;
-		FileDAO fileDao = new FileDAO(connection);
+		FileDAO fileDao = new FileDAO(dataSource);
 		try {
 			file = fileDao.getFile(user.getId(), idDocu);
 		} catch (SQLException e) {
@@ -111,15 +121,4 @@ public class CreateDescrizione extends HttpServlet {
 			templateEngine.process("/WEB-INF/Descrizione.html", ctx, response.getWriter());
 		}
 	}
-	
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 }
@@ -1,26 +1,26 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
-import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
+import org.thymeleaf.ITemplateEngine;
 
 
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.dao.FileDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.Log;
+import it.polimi.tiw.utils.TemplateHandler;
+import it.polimi.tiw.utils.TreeCache;
 
 /**
  * @file CreateFile.java
@@ -32,25 +32,23 @@ import it.polimi.tiw.utils.ConnectionHandler;
  */
 public class CreateFile extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private static final Log LOG = Log.getLog(CreateFile.class);
+	private DataSource dataSource;
+	private TreeCache treeCache;
+	private ITemplateEngine templateEngine;
        
     public CreateFile() {
         super();
     }
 
     /**
-	 * @brief Initializes the servlet and establishes a database connection.
+	 * @brief Initializes the servlet and gets the shared database connection pool.
 	 * @throws ServletException if a servlet-related error occurs.
 	 */
     public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		treeCache = TreeCache.getInstance(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
 	}
     
     /**
@@ -131,9 +129,9 @@ public class CreateFile extends HttpServlet {
         	Date data = new Date();
             SimpleDateFormat formatoData = new SimpleDateFormat("yyyy-MM-dd");
             String dataS = formatoData.format(data);
-        	FileDAO fileDao = new FileDAO(connection);
+        	FileDAO fileDao = new FileDAO(dataSource, treeCache);
         	try {
-				if(fileDao.newDocu(user.getId(), nome, dirPadre, tipo1, descrizione, dataS)) {
+				if(fileDao.newDocu(user.getId(), nome, dirPadre, tipo1, descrizione, dataS) == FileDAO.ESITO_OK) {
 					response.sendRedirect(getServletContext().getContextPath() + "/createhome");
 				}
 				else {
@@ -141,25 +139,13 @@ public class CreateFile extends HttpServlet {
 					response.sendRedirect(getServletContext().getContextPath() + "/creategestionecontenuti");
 				}
 			} catch (SQLException e) {
-				e.printStackTrace();
+				LOG.error("Document not created", e);
 			} catch (IOException e) {
-				e.printStackTrace();
+				LOG.error("Document created, redirect failed", e);
 			}
         }
         
 		
 	}
-	
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 */
-	@Override
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 
 }
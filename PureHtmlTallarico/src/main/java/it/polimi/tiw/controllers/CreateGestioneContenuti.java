@@ -1,7 +1,6 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
@@ -11,16 +10,16 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
 import it.polimi.tiw.beans.File;
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.dao.FileDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.TemplateHandler;
 
 /**
  * @file CreateGestioneContenuti.java
@@ -32,8 +31,8 @@ import it.polimi.tiw.utils.ConnectionHandler;
  */
 public class CreateGestioneContenuti extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private DataSource dataSource;
+	private ITemplateEngine templateEngine;
        
 
     public CreateGestioneContenuti() {
@@ -41,17 +40,12 @@ public class CreateGestioneContenuti extends HttpServlet {
     }
 
     /**
-	 * @brief Initializes the servlet and establishes a database connection.
+	 * @brief Initializes the servlet and gets the shared database connection pool.
 	 * @throws ServletException if a servlet-related error occurs.
 	 */
     public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
 	}
     
     /**
@@ -71,7 +65,7 @@ public class CreateGestioneContenuti extends HttpServlet {
 		User user = (User) session.getAttribute("user");
 		
 		ArrayList<File> lista = new ArrayList<File>();
-		FileDAO fileDao = new FileDAO(connection);
+		FileDAO fileDao = new FileDAO(dataSource);
 		try {
 			lista = fileDao.getDir(user.getId());
 		} catch (SQLException e) {
@@ -100,15 +94,4 @@ public class CreateGestioneContenuti extends HttpServlet {
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		doGet(request, response);
 	}
-	
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 }
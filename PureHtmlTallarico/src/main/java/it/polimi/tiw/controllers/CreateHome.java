@@ -1,26 +1,28 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.beans.File;
 import it.polimi.tiw.dao.FileDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.DaoExecutor;
+import it.polimi.tiw.utils.TemplateHandler;
+import it.polimi.tiw.utils.TreeCache;
 import it.polimi.tiw.utils.TreeOrder;
 
 /**
@@ -30,11 +32,16 @@ import it.polimi.tiw.utils.TreeOrder;
  *
  * This class extends HttpServlet and processes GET and POST requests to display 
  * the user's home page with their directories, handling session management and errors.
+ * The database is read off the container thread (see DaoExecutor).
  */
 public class CreateHome extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private DataSource dataSource;
+	private TreeCache treeCache;
+	private ITemplateEngine templateEngine;
+	private DaoExecutor daoExecutor;
+	/// Number of levels of the tree loaded per page, 0 to load the whole tree.
+	private int homeTreeDepth;
 
 
 	public CreateHome() {
@@ -42,21 +49,31 @@ public class CreateHome extends HttpServlet {
 	}
 
 	/**
-	 * @brief Initializes the servlet and establishes a database connection.
+	 * @brief Initializes the servlet and gets the shared database connection pool.
+	 *
+	 * The optional homeTreeDepth context parameter sets how many levels of the tree are
+	 * loaded per page; deeper directories are then loaded on request.
+	 *
 	 * @throws ServletException if a servlet-related error occurs.
 	 */
 	public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		treeCache = TreeCache.getInstance(getServletContext());
+		try {
+			homeTreeDepth = ConnectionHandler.getIntParameter(getServletContext(), "homeTreeDepth", 0);
+		} catch (IllegalArgumentException e) {
+			throw new UnavailableException(e.getMessage());
+		}
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
+		daoExecutor = DaoExecutor.getInstance(getServletContext());
 	}
 
 	/**
 	 * @brief Handles GET requests to display the user's home page.
+	 *
+	 * When homeTreeDepth is set, only its first levels are loaded; the optional idDir
+	 * parameter shows the subtree of that directory instead of the top-level ones. The tree
+	 * is loaded and the page written asynchronously, by the DaoExecutor.
 	 * @param request the HttpServletRequest object.
 	 * @param response the HttpServletResponse object.
 	 * @throws ServletException if a servlet-related error occurs.
@@ -73,10 +90,42 @@ public class CreateHome extends HttpServlet {
 		}
 		User user = (User) session.getAttribute("user");
 
-		ArrayList<File> lista = new ArrayList<File>();
-		FileDAO fileDao = new FileDAO(connection);
+		int idDir = 0;
+		String idDirS = request.getParameter("idDir");
+		if (homeTreeDepth > 0 && idDirS != null && !idDirS.isEmpty()) {
+			try {
+				idDir = Integer.parseInt(idDirS);
+			} catch (NumberFormatException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing Value");
+				return;
+			}
+		}
+
+		int idCartella = idDir;
+		daoExecutor.execute(request, response, () -> showHome(request, response, user, idCartella));
+	}
+
+	/**
+	 * @brief Loads the tree of the user and writes the home page, on a thread of the DaoExecutor.
+	 * @param request the HttpServletRequest object.
+	 * @param response the HttpServletResponse object.
+	 * @param user the logged user.
+	 * @param idDir the ID of the directory whose subtree is shown, 0 for the top-level ones.
+	 * @throws IOException if an I/O error occurs during the processing of the request.
+	 */
+	private void showHome(HttpServletRequest request, HttpServletResponse response, User user, int idDir)
+			throws IOException {
+		File root;
+		FileDAO fileDao = new FileDAO(dataSource, treeCache);
 		try {
-			lista = fileDao.getDir(user.getId());
+			if (homeTreeDepth > 0) {
+				ArrayList<File> lista = fileDao.getDirSubtree(user.getId(), idDir, homeTreeDepth);
+				// the starting directory comes first, its parent is the top of the tree
+				int idRadice = idDir == 0 || lista.isEmpty() ? 0 : lista.get(0).getIdDirPadre();
+				root = TreeOrder.getOrder(lista, idRadice);
+			} else {
+				root = fileDao.getDirTree(user.getId());
+			}
 		} catch (SQLException e) {
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore !");
 			return;
@@ -84,16 +133,15 @@ public class CreateHome extends HttpServlet {
 
 		ServletContext servletContext = getServletContext();
 		final WebContext ctx = new WebContext(request, response, servletContext, request.getLocale());
-		if (lista.isEmpty()) {
+		ctx.setVariable("idRadice", idDir);
+		if (root.getFigli().isEmpty()) {
 			ctx.setVariable("homeError", "Nessuna Cartella Trovata!");
 			templateEngine.process("/WEB-INF/Home.html", ctx, response.getWriter());
 			return; // Return after displaying success message
 		} else {
-			File root = TreeOrder.getOrder(lista);
 			ctx.setVariable("lista", root.getFigli());
 			templateEngine.process("/WEB-INF/Home.html", ctx, response.getWriter());
 		}
-
 	}
 
 	/**
@@ -107,15 +155,4 @@ public class CreateHome extends HttpServlet {
 			throws ServletException, IOException {
 		doGet(request, response);
 	}
-
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 }
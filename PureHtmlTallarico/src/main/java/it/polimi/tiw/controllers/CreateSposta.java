@@ -1,7 +1,6 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
@@ -11,17 +10,19 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.beans.File;
 import it.polimi.tiw.dao.FileDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
-import it.polimi.tiw.utils.TreeOrder;
+import it.polimi.tiw.utils.DaoExecutor;
+import it.polimi.tiw.utils.Log;
+import it.polimi.tiw.utils.TemplateHandler;
+import it.polimi.tiw.utils.TreeCache;
 
 /**
  * @file CreateSposta.java
@@ -29,12 +30,16 @@ import it.polimi.tiw.utils.TreeOrder;
  * @class CreateSposta
  *
  * This class extends HttpServlet and processes GET and POST requests to manage file movement,
- * handling session management and error responses.
+ * handling session management and error responses. The tree of the user is read off the
+ * container thread (see DaoExecutor).
  */
 public class CreateSposta extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private static final Log LOG = Log.getLog(CreateSposta.class);
+	private DataSource dataSource;
+	private TreeCache treeCache;
+	private ITemplateEngine templateEngine;
+	private DaoExecutor daoExecutor;
        
 	
     public CreateSposta() {
@@ -42,17 +47,14 @@ public class CreateSposta extends HttpServlet {
     }
     
     /**
-	 * @brief Initializes the servlet and establishes a database connection.
+	 * @brief Initializes the servlet and gets the shared database connection pool.
 	 * @throws ServletException if a servlet-related error occurs.
 	 */
     public void init() throws ServletException {
-		connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		dataSource = ConnectionHandler.getDataSource(getServletContext());
+		treeCache = TreeCache.getInstance(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
+		daoExecutor = DaoExecutor.getInstance(getServletContext());
 	}
 
     /**
@@ -67,7 +69,9 @@ public class CreateSposta extends HttpServlet {
 	}
 
 	/**
-	 * @brief Handles POST requests to move a file to a specified directory.
+	 * @brief Handles POST requests to move one or more files to a specified directory.
+	 *
+	 * The idDocu parameter is repeated for every selected file.
 	 * @param request the HttpServletRequest object.
 	 * @param response the HttpServletResponse object.
 	 * @throws ServletException if a servlet-related error occurs.
@@ -75,7 +79,7 @@ public class CreateSposta extends HttpServlet {
 	 */
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		HttpSession session = request.getSession();
-		int idFile;
+		ArrayList<Integer> idFiles = new ArrayList<>();
 		int idDirPadre;
 		if (session.isNew() || session.getAttribute("user") == null) {
 			response.sendRedirect(getServletContext().getContextPath() + "/Index.html");
@@ -85,7 +89,9 @@ public class CreateSposta extends HttpServlet {
 		
 		try {
 	        // Get idDirPadre by POST
-	        idFile = Integer.parseInt(request.getParameter("idDocu"));
+	        for (String idDocu : request.getParameterValues("idDocu")) {
+	        	idFiles.add(Integer.parseInt(idDocu));
+	        }
 	        idDirPadre = Integer.parseInt(request.getParameter("idDirPadre"));
 
 	    } catch (Exception e) {
@@ -94,10 +100,24 @@ public class CreateSposta extends HttpServlet {
 	        return;
 	    }
 
-		ArrayList<File> lista = new ArrayList<File>();
-		FileDAO fileDao = new FileDAO(connection);
+		daoExecutor.execute(request, response, () -> showSposta(request, response, user, idFiles, idDirPadre));
+	}
+
+	/**
+	 * @brief Loads the tree of the user and writes the move form, on a thread of the DaoExecutor.
+	 * @param request the HttpServletRequest object.
+	 * @param response the HttpServletResponse object.
+	 * @param user the logged user.
+	 * @param idFiles the IDs of the files to move.
+	 * @param idDirPadre the ID of the directory the files are moved from.
+	 * @throws IOException if an I/O error occurs during the processing of the request.
+	 */
+	private void showSposta(HttpServletRequest request, HttpServletResponse response, User user,
+			ArrayList<Integer> idFiles, int idDirPadre) throws IOException {
+		File root;
+		FileDAO fileDao = new FileDAO(dataSource, treeCache);
 		try {
-			lista = fileDao.getAll(user.getId());
+			root = fileDao.getAllTree(user.getId());
 		} catch (SQLException e) {
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore !");
 			return;
@@ -105,30 +125,17 @@ public class CreateSposta extends HttpServlet {
 
 		ServletContext servletContext = getServletContext();
 		final WebContext ctx = new WebContext(request, response, servletContext, request.getLocale());
-		if (lista.isEmpty()) {
+		if (root.getFigli().isEmpty()) {
 			ctx.setVariable("SpostaError", "Nessuna Cartella Trovata!");
 			templateEngine.process("/WEB-INF/Sposta.html", ctx, response.getWriter());
 			return; // Return after displaying success message
 		} else {
-			File root = TreeOrder.getOrder(lista);
-			System.out.println(idFile);
-			System.out.println(idDirPadre);
+			LOG.debug("Moving {} from {}", idFiles, idDirPadre);
 			ctx.setVariable("lista", root.getFigli());
-			ctx.setVariable("idPartenza", idFile);
+			ctx.setVariable("idPartenza", idFiles);
 			ctx.setVariable("dirPadre", idDirPadre);
 			templateEngine.process("/WEB-INF/Sposta.html", ctx, response.getWriter());
 		}
 	}
-	
-	/**
-	 * @brief Cleans up resources when the servlet is destroyed.
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 
 }
@@ -0,0 +1,95 @@
+package it.polimi.tiw.controllers;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
+
+import it.polimi.tiw.beans.User;
+import it.polimi.tiw.dao.FileDAO;
+import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.TreeCache;
+
+/**
+ * @file Elimina.java
+ * @brief This servlet handles the deletion of files and directories.
+ * @class Elimina
+ *
+ * This class extends HttpServlet and processes POST requests to delete a file, or a
+ * directory with all its contents. The documents disappear at once; their rows are
+ * removed later by the PurgeWorker.
+ */
+public class Elimina extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private DataSource dataSource;
+	private TreeCache treeCache;
+
+	public Elimina() {
+		super();
+	}
+
+	/**
+	 * @brief Initializes the servlet by getting the shared database connection pool.
+	 * @throws ServletException if a servlet-related error occurs.
+	 */
+	public void init() throws ServletException {
+		this.dataSource = ConnectionHandler.getDataSource(getServletContext());
+		this.treeCache = TreeCache.getInstance(getServletContext());
+	}
+
+	/**
+	 * @brief Handles POST requests to delete a document.
+	 *
+	 * The idDocu parameter is the document to delete; the optional idDirPadre parameter is
+	 * the directory whose contents are shown afterwards, the home page if missing.
+	 * @param request the HttpServletRequest object.
+	 * @param response the HttpServletResponse object.
+	 * @throws ServletException if a servlet-related error occurs.
+	 * @throws IOException if an I/O error occurs during the processing of the request.
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		HttpSession session = request.getSession();
+		int idDocu;
+		int idDirPadre = 0;
+
+		if (session.isNew() || session.getAttribute("user") == null) {
+			response.sendRedirect(getServletContext().getContextPath() + "/Index.html");
+			return;
+		}
+
+		User user = (User) session.getAttribute("user");
+
+		try {
+			idDocu = Integer.parseInt(request.getParameter("idDocu"));
+			String idDirPadreS = request.getParameter("idDirPadre");
+			if (idDirPadreS != null && !idDirPadreS.isEmpty()) {
+				idDirPadre = Integer.parseInt(idDirPadreS);
+			}
+		} catch (Exception e) {
+			// if it's empty send a bad_request message
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing value");
+			return;
+		}
+
+		FileDAO fileDao = new FileDAO(dataSource, treeCache);
+		try {
+			if (fileDao.deleteDocu(user.getId(), idDocu) != FileDAO.ESITO_OK) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Documento non valido!");
+				return;
+			}
+		} catch (SQLException e) {
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
+			return;
+		}
+		if (idDirPadre == 0 || idDirPadre == idDocu) {
+			response.sendRedirect(getServletContext().getContextPath() + "/createhome");
+		} else {
+			response.sendRedirect(getServletContext().getContextPath() + "/createcontenuti?idDir=" + idDirPadre);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package it.polimi.tiw.controllers;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.StandardCache;
+
+import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.ConnectionPool;
+import it.polimi.tiw.utils.DaoExecutor;
+import it.polimi.tiw.utils.Log;
+import it.polimi.tiw.utils.PurgeWorker;
+import it.polimi.tiw.utils.QueryMetrics;
+import it.polimi.tiw.utils.RequestTimingFilter;
+import it.polimi.tiw.utils.TemplateHandler;
+import it.polimi.tiw.utils.TreeCache;
+
+/**
+ * @file Metrics.java
+ * @brief This servlet exports the statistics of the application in the Prometheus text format.
+ * @class Metrics
+ *
+ * It serves the latency percentiles, row and error counts of every DAO operation, the
+ * latency of every endpoint with the time it spent in the DAO and rendering, the state
+ * of the connection pool and of its statement cache, and the statistics of the tree and
+ * template caches, of the purge worker, of the DAO executor and of the logger. The optional
+ * metricsAllowedAddresses context parameter lists the remote addresses allowed to read
+ * them, comma separated; every address is allowed when it is empty.
+ */
+public class Metrics extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	/// Quantiles exported for every DAO operation and endpoint.
+	private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+	private Set<String> allowedAddresses = new HashSet<>();
+
+	public Metrics() {
+		super();
+	}
+
+	/**
+	 * @brief Initializes the servlet, reading the addresses allowed to read the metrics.
+	 * @throws ServletException if a servlet-related error occurs.
+	 */
+	public void init() throws ServletException {
+		String addresses = getServletContext().getInitParameter("metricsAllowedAddresses");
+		if (addresses != null) {
+			for (String address : addresses.split(",")) {
+				if (!address.isBlank()) {
+					allowedAddresses.add(address.trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @brief Handles GET requests, writing all the metrics.
+	 * @param request the HttpServletRequest object.
+	 * @param response the HttpServletResponse object.
+	 * @throws ServletException if a servlet-related error occurs.
+	 * @throws IOException if an I/O error occurs during the processing of the request.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!allowedAddresses.isEmpty() && !allowedAddresses.contains(request.getRemoteAddr())) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		response.setContentType("text/plain; version=0.0.4");
+		response.setCharacterEncoding("UTF-8");
+		PrintWriter out = response.getWriter();
+		ServletContext context = getServletContext();
+		writeQueries(out);
+		writeEndpoints(out);
+		Object pool = context.getAttribute(ConnectionHandler.POOL_ATTRIBUTE);
+		if (pool instanceof ConnectionPool) {
+			writePool(out, (ConnectionPool) pool);
+		}
+		Object treeCache = context.getAttribute(TreeCache.ATTRIBUTE);
+		if (treeCache instanceof TreeCache) {
+			writeTreeCache(out, (TreeCache) treeCache);
+		}
+		Object templateEngine = context.getAttribute(TemplateHandler.ENGINE_ATTRIBUTE);
+		if (templateEngine instanceof TemplateEngine) {
+			writeTemplateCache(out, (TemplateEngine) templateEngine);
+		}
+		Object purgeWorker = context.getAttribute(PurgeWorker.ATTRIBUTE);
+		if (purgeWorker instanceof PurgeWorker) {
+			PurgeWorker worker = (PurgeWorker) purgeWorker;
+			metric(out, "nas_purge_documents_total", "counter", "Deleted documents removed from the database.",
+					worker.getPurgedCount());
+			metric(out, "nas_purge_failures_total", "counter", "Runs of the purge worker that failed.",
+					worker.getFailureCount());
+		}
+		Object daoExecutor = context.getAttribute(DaoExecutor.ATTRIBUTE);
+		if (daoExecutor instanceof DaoExecutor) {
+			DaoExecutor executor = (DaoExecutor) daoExecutor;
+			metric(out, "nas_dao_executor_active", "gauge", "Asynchronous requests being served.", executor.getActive());
+			metric(out, "nas_dao_executor_waiting", "gauge", "Asynchronous requests waiting for a thread.",
+					executor.getWaiting());
+			metric(out, "nas_dao_executor_rejected_total", "counter",
+					"Asynchronous requests rejected because the executor was saturated.", executor.getRejectedCount());
+		}
+		metric(out, "nas_log_dropped_total", "counter", "Log messages dropped because the buffer was full.",
+				Log.getDroppedCount());
+	}
+
+	private static void writeQueries(PrintWriter out) {
+		Map<String, QueryMetrics.Stats> all = QueryMetrics.getAll();
+		header(out, "nas_query_duration_seconds", "summary", "Time of the DAO operations.");
+		for (QueryMetrics.Stats stats : all.values()) {
+			String query = "query=\"" + stats.getQuery() + "\"";
+			for (double quantile : QUANTILES) {
+				sample(out, "nas_query_duration_seconds", query + ",quantile=\"" + quantile + "\"",
+						seconds(stats.getQuantileNanos(quantile)));
+			}
+			sample(out, "nas_query_duration_seconds_sum", query, seconds(stats.getTotalNanos()));
+			sample(out, "nas_query_duration_seconds_count", query, stats.getCount());
+		}
+		header(out, "nas_query_duration_seconds_max", "gauge", "Longest time of the DAO operations.");
+		for (QueryMetrics.Stats stats : all.values()) {
+			sample(out, "nas_query_duration_seconds_max", "query=\"" + stats.getQuery() + "\"",
+					seconds(stats.getMaxNanos()));
+		}
+		header(out, "nas_query_rows_total", "counter", "Rows read or written by the DAO operations.");
+		for (QueryMetrics.Stats stats : all.values()) {
+			sample(out, "nas_query_rows_total", "query=\"" + stats.getQuery() + "\"", stats.getRows());
+		}
+		header(out, "nas_query_errors_total", "counter", "DAO operations that failed.");
+		for (QueryMetrics.Stats stats : all.values()) {
+			sample(out, "nas_query_errors_total", "query=\"" + stats.getQuery() + "\"", stats.getErrors());
+		}
+	}
+
+	private static void writeEndpoints(PrintWriter out) {
+		Map<String, RequestTimingFilter.Endpoint> all = RequestTimingFilter.getAll();
+		header(out, "nas_request_duration_seconds", "summary", "Time of the requests, by endpoint.");
+		for (RequestTimingFilter.Endpoint endpoint : all.values()) {
+			QueryMetrics.Stats stats = endpoint.getStats();
+			String path = "endpoint=\"" + stats.getQuery() + "\"";
+			for (double quantile : QUANTILES) {
+				sample(out, "nas_request_duration_seconds", path + ",quantile=\"" + quantile + "\"",
+						seconds(stats.getQuantileNanos(quantile)));
+			}
+			sample(out, "nas_request_duration_seconds_sum", path, seconds(stats.getTotalNanos()));
+			sample(out, "nas_request_duration_seconds_count", path, stats.getCount());
+		}
+		header(out, "nas_request_duration_seconds_max", "gauge", "Longest time of the requests, by endpoint.");
+		for (RequestTimingFilter.Endpoint endpoint : all.values()) {
+			sample(out, "nas_request_duration_seconds_max", "endpoint=\"" + endpoint.getStats().getQuery() + "\"",
+					seconds(endpoint.getStats().getMaxNanos()));
+		}
+		header(out, "nas_request_errors_total", "counter", "Requests answered with a 5xx status or an exception.");
+		for (RequestTimingFilter.Endpoint endpoint : all.values()) {
+			sample(out, "nas_request_errors_total", "endpoint=\"" + endpoint.getStats().getQuery() + "\"",
+					endpoint.getStats().getErrors());
+		}
+		header(out, "nas_request_dao_seconds_total", "counter", "Time the requests spent in DAO operations.");
+		for (RequestTimingFilter.Endpoint endpoint : all.values()) {
+			sample(out, "nas_request_dao_seconds_total", "endpoint=\"" + endpoint.getStats().getQuery() + "\"",
+					seconds(endpoint.getDaoNanos()));
+		}
+		header(out, "nas_request_dao_operations_total", "counter", "DAO operations run by the requests.");
+		for (RequestTimingFilter.Endpoint endpoint : all.values()) {
+			sample(out, "nas_request_dao_operations_total", "endpoint=\"" + endpoint.getStats().getQuery() + "\"",
+					endpoint.getQueries());
+		}
+		header(out, "nas_request_render_seconds_total", "counter", "Time the requests spent rendering templates.");
+		for (RequestTimingFilter.Endpoint endpoint : all.values()) {
+			sample(out, "nas_request_render_seconds_total", "endpoint=\"" + endpoint.getStats().getQuery() + "\"",
+					seconds(endpoint.getRenderNanos()));
+		}
+	}
+
+	private static void writePool(PrintWriter out, ConnectionPool pool) {
+		header(out, "nas_pool_connections", "gauge", "Connections of the pool, by state.");
+		sample(out, "nas_pool_connections", "state=\"open\"", pool.getOpenCount());
+		sample(out, "nas_pool_connections", "state=\"idle\"", pool.getIdleCount());
+		sample(out, "nas_pool_connections", "state=\"active\"", pool.getActiveCount());
+		metric(out, "nas_pool_max_connections", "gauge", "Maximum number of connections of the pool.",
+				pool.getMaxSize());
+		metric(out, "nas_pool_broken_total", "counter", "Connections found dead or invalidated.",
+				pool.getBrokenCount());
+		metric(out, "nas_pool_reconnects_total", "counter", "Borrows that replaced a dead connection.",
+				pool.getReconnectCount());
+		metric(out, "nas_pool_retries_total", "counter", "Reads repeated on a fresh connection.",
+				pool.getRetryCount());
+		header(out, "nas_statement_cache_requests_total", "counter", "Prepared statements requested, by cache result.");
+		sample(out, "nas_statement_cache_requests_total", "result=\"hit\"", pool.getStatementHitCount());
+		sample(out, "nas_statement_cache_requests_total", "result=\"miss\"", pool.getStatementMissCount());
+	}
+
+	private static void writeTreeCache(PrintWriter out, TreeCache treeCache) {
+		header(out, "nas_tree_cache_requests_total", "counter", "Tree cache lookups, by result.");
+		sample(out, "nas_tree_cache_requests_total", "result=\"hit\"", treeCache.getHits());
+		sample(out, "nas_tree_cache_requests_total", "result=\"miss\"", treeCache.getMisses());
+		metric(out, "nas_tree_cache_evictions_total", "counter", "Trees evicted to stay within the node limit.",
+				treeCache.getEvictions());
+		metric(out, "nas_tree_cache_invalidations_total", "counter", "Trees invalidated by a write.",
+				treeCache.getInvalidations());
+		metric(out, "nas_tree_cache_nodes", "gauge", "Nodes of the cached trees.", treeCache.getNodeCount());
+		metric(out, "nas_tree_cache_trees", "gauge", "Cached trees.", treeCache.getTreeCount());
+	}
+
+	private static void writeTemplateCache(PrintWriter out, TemplateEngine templateEngine) {
+		if (templateEngine.getCacheManager() == null) {
+			return;
+		}
+		ICache<?, ?> cache = templateEngine.getCacheManager().getTemplateCache();
+		if (!(cache instanceof StandardCache)) {
+			return;
+		}
+		StandardCache<?, ?> templateCache = (StandardCache<?, ?>) cache;
+		header(out, "nas_template_cache_requests_total", "counter", "Template cache lookups, by result.");
+		sample(out, "nas_template_cache_requests_total", "result=\"hit\"", templateCache.getHitCount());
+		sample(out, "nas_template_cache_requests_total", "result=\"miss\"", templateCache.getMissCount());
+		metric(out, "nas_template_cache_size", "gauge", "Parsed templates in the cache.", templateCache.size());
+	}
+
+	private static void metric(PrintWriter out, String name, String type, String help, double value) {
+		header(out, name, type, help);
+		sample(out, name, null, value);
+	}
+
+	private static void header(PrintWriter out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(PrintWriter out, String name, String labels, double value) {
+		out.append(name);
+		if (labels != null) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append(Long.toString((long) value));
+		} else {
+			out.append(Double.toString(value));
+		}
+		out.append('\n');
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+}
@@ -1,8 +1,8 @@
 package it.polimi.tiw.controllers;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -10,14 +10,15 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
 
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
+import org.thymeleaf.ITemplateEngine;
 
 import it.polimi.tiw.beans.User;
 import it.polimi.tiw.dao.FileDAO;
 import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.TemplateHandler;
+import it.polimi.tiw.utils.TreeCache;
 
 /**
  * @file Sposta.java
@@ -29,26 +30,23 @@ import it.polimi.tiw.utils.ConnectionHandler;
  */
 public class Sposta extends HttpServlet {
 	private static final long serialVersionUID = 1L;
-	private Connection connection = null;
-	private TemplateEngine templateEngine;
+	private DataSource dataSource;
+	private TreeCache treeCache;
+	private ITemplateEngine templateEngine;
        
     public Sposta() {
         super();
     }
     
     /**
-	 * @brief Initializes the servlet by establishing a database connection and setting up the template engine.
+	 * @brief Initializes the servlet by getting the shared database connection pool and the shared template engine.
 	 * @param servletContext the ServletContext for the application.
 	 * @throws ServletException if a servlet-related error occurs.
 	 */
     public void init() throws ServletException {
-		this.connection = ConnectionHandler.getConnection(getServletContext());
-		ServletContext servletContext = getServletContext();
-		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(servletContext);
-		templateResolver.setTemplateMode(TemplateMode.HTML);
-		this.templateEngine = new TemplateEngine();
-		this.templateEngine.setTemplateResolver(templateResolver);
-		templateResolver.setSuffix(".html");
+		this.dataSource = ConnectionHandler.getDataSource(getServletContext());
+		this.treeCache = TreeCache.getInstance(getServletContext());
+		this.templateEngine = TemplateHandler.getTemplateEngine(getServletContext());
 	}
     
     /**
@@ -63,7 +61,14 @@ public class Sposta extends HttpServlet {
 	}
 
 	/**
-	 * @brief Handles POST requests to move a file from one directory to another.
+	 * @brief Handles POST requests to move files and directories from one directory to another.
+	 *
+	 * The form of Sposta.html submits one idPartenza parameter for every document to move,
+	 * carrying the repeated idDocu values that Contenuti.html submitted to CreateSposta, and
+	 * the idDirDest of the directory clicked in the tree. All the documents are moved in a
+	 * single transaction; an idDirDest of 0 moves directories to the top level. When only
+	 * some of them can be moved, the contents of the destination report how many were left
+	 * in place.
 	 * @param request the HttpServletRequest object.
 	 * @param response the HttpServletResponse object.
 	 * @throws ServletException if a servlet-related error occurs.
@@ -72,8 +77,8 @@ public class Sposta extends HttpServlet {
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		HttpSession session = request.getSession();
 		int idDirDest;
-		int idPartenza;
-		boolean ris;
+		int[] idPartenza;
+		LinkedHashMap<Integer, Integer> esiti;
 		
 		if (session.isNew() || session.getAttribute("user") == null) {
 			response.sendRedirect(getServletContext().getContextPath() + "/Index.html");
@@ -85,7 +90,11 @@ public class Sposta extends HttpServlet {
 		try {
 	        // Get idDirPadre by POST
 	        idDirDest = Integer.parseInt(request.getParameter("idDirDest"));
-	        idPartenza = Integer.parseInt(request.getParameter("idPartenza"));
+	        String[] idPartenzaS = request.getParameterValues("idPartenza");
+	        idPartenza = new int[idPartenzaS.length];
+	        for (int i = 0; i < idPartenzaS.length; i++) {
+	        	idPartenza[i] = Integer.parseInt(idPartenzaS[i]);
+	        }
 
 	    } catch (Exception e) {
 	        // if it's empty send a bad_request message
@@ -93,31 +102,40 @@ public class Sposta extends HttpServlet {
 	        return;
 	    }
 		
-		FileDAO fileDao = new FileDAO(connection);
+		FileDAO fileDao = new FileDAO(dataSource, treeCache);
 		try {
-			ris = fileDao.moveFile(user.getId(), idPartenza, idDirDest);
+			esiti = fileDao.moveFiles(user.getId(), idPartenza, idDirDest);
 		} catch (SQLException e) {
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
 			return;
 		}
-		if(ris) {
-			response.sendRedirect(getServletContext().getContextPath() + "/createcontenuti?idDir=" + idDirDest);
+		int nonSpostati = 0;
+		int errore = FileDAO.ESITO_OK;
+		for (int esito : esiti.values()) {
+			if (esito != FileDAO.ESITO_OK) {
+				nonSpostati++;
+				errore = esito;
+			}
 		}
-		else {
-			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
+		if(nonSpostati == esiti.size()) {
+			if (errore == FileDAO.ESITO_DESTINAZIONE_NON_VALIDA) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Cartella di destinazione non valida!");
+			} else if (errore == FileDAO.ESITO_CICLO) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Una cartella non può essere spostata al suo interno!");
+			} else {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "File non valido!");
+			}
 			return;
 		}
-		
-	}
-	
-	/**
-	 * @brief Cleans up resources before the servlet is destroyed.
-	 */
-	public void destroy() {
-		try {
-			ConnectionHandler.closeConnection(connection);
-		} catch (SQLException e) {
-			e.printStackTrace();
+		if(idDirDest == 0) {
+			response.sendRedirect(getServletContext().getContextPath() + "/createhome");
+			return;
 		}
+		String url = getServletContext().getContextPath() + "/createcontenuti?idDir=" + idDirDest;
+		if(nonSpostati > 0) {
+			url += "&nonSpostati=" + nonSpostati;
+		}
+		response.sendRedirect(url);
+		
 	}
 }
@@ -1,13 +1,27 @@
 package it.polimi.tiw.dao;
 
 import it.polimi.tiw.beans.File;
+import it.polimi.tiw.beans.Pagina;
+import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.Log;
+import it.polimi.tiw.utils.QueryMetrics;
+import it.polimi.tiw.utils.TreeCache;
+import it.polimi.tiw.utils.TreeOrder;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * @file FileDAO.java
@@ -18,15 +32,92 @@ import java.util.ArrayList;
  * such as retrieving, inserting, and moving files, as well as checking directory status.
  */
 public class FileDAO {
+	private static final Log LOG = Log.getLog(FileDAO.class);
+
+	/// Sorts the contents of a directory by name.
+	public static final String ORDINA_NOME = "nome";
+
+	/// Sorts the contents of a directory by creation date.
+	public static final String ORDINA_CREAZIONE = "creazione";
+
+	/// Outcome of a write: the document has been written.
+	public static final int ESITO_OK = 0;
+
+	/// Outcome of a write: the destination is not a directory of the user.
+	public static final int ESITO_DESTINAZIONE_NON_VALIDA = 1;
+
+	/// Outcome of a write: the document does not exist, is not the user's or cannot be moved.
+	public static final int ESITO_DOCUMENTO_NON_VALIDO = 2;
+
+	/// Outcome of a move: the directory would end up inside its own subtree.
+	public static final int ESITO_CICLO = 3;
+
+	/// Maximum number of IDs bound to a single statement of a batch operation.
+	public static final int MAX_IDS_PER_STATEMENT = 1000;
+
+	private DataSource dataSource;
+	private TreeCache treeCache;
+
+	/**
+	 * @brief Constructs a FileDAO with the specified database connection pool.
+	 * @param dataSource the connection pool from which this DAO borrows a connection for each operation.
+	 */
+	public FileDAO(DataSource dataSource) {
+		this(dataSource, null);
+	}
+
+	/**
+	 * @brief Constructs a FileDAO that reads and maintains the cache of directory trees.
+	 * @param dataSource the connection pool from which this DAO borrows a connection for each operation.
+	 * @param treeCache the cache of the users' trees, or null to always read the database.
+	 */
+	public FileDAO(DataSource dataSource, TreeCache treeCache) {
+		this.dataSource = dataSource;
+		this.treeCache = treeCache;
+	}
+
+	/**
+	 * @brief Retrieves the tree of the directories owned by a user.
+	 * @param id the ID of the user whose directories are to be retrieved.
+	 * @return the root of the tree; its children are the user's top-level directories.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * The tree is built from getDir and served from the tree cache while the user
+	 * does not create or move documents. The returned tree must not be modified.
+	 */
+	public File getDirTree(int id) throws SQLException {
+		return getTree(id, TreeCache.DIRECTORIES);
+	}
 
-	private Connection connection;
+	/**
+	 * @brief Retrieves the tree of all files and directories owned by a user.
+	 * @param id the ID of the user whose documents are to be retrieved.
+	 * @return the root of the tree; its children are the user's top-level documents.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * The tree is built from getAll and served from the tree cache while the user
+	 * does not create or move documents. The returned tree must not be modified.
+	 */
+	public File getAllTree(int id) throws SQLException {
+		return getTree(id, TreeCache.ALL);
+	}
 
 	/**
-	 * @brief Constructs a FileDAO with the specified database connection.
-	 * @param connection the database connection to be used by this DAO.
+	 * @brief Looks a tree up in the cache, loading and caching it on a miss.
+	 * @see #getDirTree(int)
+	 * @see #getAllTree(int)
 	 */
-	public FileDAO(Connection connection) {
-		this.connection = connection;
+	private File getTree(int id, int kind) throws SQLException {
+		File root = treeCache != null ? treeCache.get(id, kind) : null;
+		if (root == null) {
+			long version = treeCache != null ? treeCache.version(id) : 0;
+			ArrayList<File> lista = kind == TreeCache.DIRECTORIES ? getDir(id) : getAll(id);
+			root = TreeOrder.getOrder(lista);
+			if (treeCache != null) {
+				treeCache.put(id, kind, root, lista.size(), version);
+			}
+		}
+		return root;
 	}
 
 	/**
@@ -39,10 +130,19 @@ public class FileDAO {
 	 * returns them in an ArrayList. The directories are sorted by their parent ID.
 	 */
 	public ArrayList<File> getDir(int id) throws SQLException {
+		return QueryMetrics.record("getDir",
+				() -> ConnectionHandler.executeRead(dataSource, connection -> getDir(connection, id)), List::size);
+	}
+
+	/**
+	 * @brief Runs getDir on a borrowed connection.
+	 * @see #getDir(int)
+	 */
+	private ArrayList<File> getDir(Connection connection, int id) throws SQLException {
 		ArrayList<File> lista = new ArrayList<>();
 		File file = null;
 		String performedAction = " finds all folders of a user, by their id";
-		String query = "SELECT * FROM docu WHERE proprietario = ? AND tipo = 'dir' ORDER BY id_dirPadre;";
+		String query = "SELECT * FROM docu WHERE proprietario = ? AND tipo = 'dir' AND eliminato = FALSE ORDER BY id_dirPadre;";
 		PreparedStatement preparedStatement = null;
 		ResultSet resultSet = null;
 
@@ -66,9 +166,9 @@ public class FileDAO {
 				lista.add(file);
 			}
 			if (lista.isEmpty()) {
-				System.out.println("No folder found!");
+				LOG.debug("No folder found!");
 			} else {
-				System.out.println("Folders found!");
+				LOG.debug("Folders found!");
 			}
 		} catch (SQLException e) {
 			throw new SQLException("Error accessing the DB when" + performedAction, e);
@@ -101,10 +201,19 @@ public class FileDAO {
 	 * and returns them in an ArrayList, sorted by their parent ID.
 	 */
 	public ArrayList<File> getAll(int id) throws SQLException {
+		return QueryMetrics.record("getAll",
+				() -> ConnectionHandler.executeRead(dataSource, connection -> getAll(connection, id)), List::size);
+	}
+
+	/**
+	 * @brief Runs getAll on a borrowed connection.
+	 * @see #getAll(int)
+	 */
+	private ArrayList<File> getAll(Connection connection, int id) throws SQLException {
 		ArrayList<File> lista = new ArrayList<>();
 		File file = null;
 		String performedAction = " finds all folders of a user, by their id";
-		String query = "SELECT * FROM docu WHERE proprietario = ? ORDER BY id_dirPadre;";
+		String query = "SELECT * FROM docu WHERE proprietario = ? AND eliminato = FALSE ORDER BY id_dirPadre;";
 		PreparedStatement preparedStatement = null;
 		ResultSet resultSet = null;
 
@@ -128,9 +237,9 @@ public class FileDAO {
 				lista.add(file);
 			}
 			if (lista.isEmpty()) {
-				System.out.println("No folder found!");
+				LOG.debug("No folder found!");
 			} else {
-				System.out.println("Folders found!");
+				LOG.debug("Folders found!");
 			}
 		} catch (SQLException e) {
 			throw new SQLException("Error accessing the DB when" + performedAction, e);
@@ -154,44 +263,70 @@ public class FileDAO {
 	}
 
 	/**
-	 * @brief Retrieves all files in a specific directory owned by a user.
-	 * @param id the ID of the user whose files are to be retrieved.
-	 * @param idDirPadre the ID of the parent directory.
-	 * @return a list of File objects representing the files in the specified directory.
+	 * @brief Retrieves the first levels of a user's directory hierarchy.
+	 * @param id the ID of the user whose directories are to be retrieved.
+	 * @param idDir the ID of the directory to start from, or 0 to start from the top-level directories.
+	 * @param livelli the number of levels to retrieve, at least 1.
+	 * @return a list of File objects: the starting directories first, then their subdirectories level by level.
 	 * @throws SQLException if there is an error accessing the database.
 	 *
-	 * This method queries the database for all files that belong to the specified user 
-	 * and are located in the specified directory.
+	 * This method walks the hierarchy with a recursive query bounded to the requested
+	 * depth, so its cost depends on the directories shown rather than on all the
+	 * directories the user owns. When idDir is not 0 the starting directory itself is
+	 * the first level. Directories of the last level that have subdirectories are
+	 * flagged with daEspandere, so they can be loaded later on request.
 	 */
-	public ArrayList<File> getFileFrom(int id, int idDirPadre) throws SQLException {
+	public ArrayList<File> getDirSubtree(int id, int idDir, int livelli) throws SQLException {
+		return QueryMetrics.record("getDirSubtree",
+				() -> ConnectionHandler.executeRead(dataSource, connection -> getDirSubtree(connection, id, idDir, livelli)),
+				List::size);
+	}
+
+	/**
+	 * @brief Runs getDirSubtree on a borrowed connection.
+	 * @see #getDirSubtree(int, int, int)
+	 */
+	private ArrayList<File> getDirSubtree(Connection connection, int id, int idDir, int livelli) throws SQLException {
 		ArrayList<File> lista = new ArrayList<>();
 		File file = null;
-		String performedAction = "finds all files of a user, by their id and idDirPadre";
-		String query = "SELECT D1.id_docu as id_docu, D1.nome as nome, D1.id_dirPadre as id_dirPadre, D1.nome as nome, D1.tipo as tipo, D1.descrizione as descrizione, D1.creazione as creazione, D2.nome as nomePadre FROM docu as D1, docu as D2 WHERE D1.id_dirPadre=D2.id_docu and D1.proprietario = ? AND D1.tipo <> 'dir' AND D1.id_dirPadre = ? && D2.tipo = 'dir';";
+		String performedAction = " finds the first levels of the folders of a user, by their id";
+		String start = idDir == 0 ? "id_dirPadre IS NULL" : "id_docu = ?";
+		String query = "WITH RECURSIVE livelli (id_docu, nome, id_dirPadre, tipo, livello) AS ("
+				+ "SELECT id_docu, nome, id_dirPadre, tipo, 1 FROM docu WHERE proprietario = ? AND tipo = 'dir' AND eliminato = FALSE AND " + start
+				+ " UNION ALL "
+				+ "SELECT D.id_docu, D.nome, D.id_dirPadre, D.tipo, L.livello + 1 FROM docu D JOIN livelli L ON D.id_dirPadre = L.id_docu "
+				+ "WHERE D.proprietario = ? AND D.tipo = 'dir' AND D.eliminato = FALSE AND L.livello < ?) "
+				+ "SELECT L.id_docu, L.nome, L.id_dirPadre, L.tipo, L.livello = ? AND EXISTS "
+				+ "(SELECT 1 FROM docu C WHERE C.id_dirPadre = L.id_docu AND C.tipo = 'dir' AND C.eliminato = FALSE) AS daEspandere "
+				+ "FROM livelli L ORDER BY L.livello, L.id_dirPadre, L.id_docu;";
 		PreparedStatement preparedStatement = null;
 		ResultSet resultSet = null;
 
 		try {
 			preparedStatement = connection.prepareStatement(query);
-			preparedStatement.setInt(1, id);
-			preparedStatement.setInt(2, idDirPadre);
+			int i = 1;
+			preparedStatement.setInt(i++, id);
+			if (idDir != 0) {
+				preparedStatement.setInt(i++, idDir);
+			}
+			preparedStatement.setInt(i++, id);
+			preparedStatement.setInt(i++, livelli);
+			preparedStatement.setInt(i++, livelli);
 			resultSet = preparedStatement.executeQuery();
 
 			while (resultSet.next()) {
 				file = new File();
-				file.setNomePadre(resultSet.getString("nomePadre"));
-				file.setIdDirPadre(resultSet.getInt("id_dirPadre"));
 				file.setIdDocu(resultSet.getInt("id_docu"));
 				file.setNome(resultSet.getString("nome"));
+				file.setIdDirPadre(resultSet.getInt("id_dirPadre"));
 				file.setTipo(resultSet.getString("tipo"));
-				file.setDescrizione(resultSet.getString("descrizione"));
-				file.setCreazione(resultSet.getString("creazione"));
+				file.setDaEspandere(resultSet.getBoolean("daEspandere"));
 				lista.add(file);
 			}
 			if (lista.isEmpty()) {
-				System.out.println("No folder or file found!");
+				LOG.debug("No folder found!");
 			} else {
-				System.out.println("Folders or files found!");
+				LOG.debug("Folders found!");
 			}
 		} catch (SQLException e) {
 			throw new SQLException("Error accessing the DB when" + performedAction, e);
@@ -200,14 +335,14 @@ public class FileDAO {
 				try {
 					resultSet.close();
 				} catch (SQLException e) {
-					
+
 				}
 			}
 			if (preparedStatement != null) {
 				try {
 					preparedStatement.close();
 				} catch (SQLException e) {
-					
+
 				}
 			}
 		}
@@ -215,42 +350,73 @@ public class FileDAO {
 	}
 
 	/**
-	 * @brief Retrieves the details of a specific file.
-	 * @param id the ID of the user who owns the file.
-	 * @param idDocu the ID of the file to be retrieved.
-	 * @return a File object representing the specified file, or null if not found.
+	 * @brief Retrieves a document and everything it contains.
+	 * @param id the ID of the user who owns the document.
+	 * @param idDocu the ID of the document.
+	 * @return the document and its descendants, sorted by depth and then by parent, or an
+	 *         empty list if the document is not the user's.
 	 * @throws SQLException if there is an error accessing the database.
 	 *
-	 * This method queries the database for a specific file's details based on the user ID 
-	 * and file ID.
+	 * This method reads the subtree with a single query on the closure table, whatever its
+	 * depth. The result can be arranged with TreeOrder.getOrder(lista, parent of idDocu).
 	 */
-	public File getFile(int id, int idDocu) throws SQLException {
+	public ArrayList<File> getSubtree(int id, int idDocu) throws SQLException {
+		return QueryMetrics.record("getSubtree", () -> {
+			return ConnectionHandler.executeRead(dataSource, connection -> getHierarchy(connection, idDocu, id,
+					"SELECT D.* FROM docu_chiusura C JOIN docu D ON D.id_docu = C.discendente "
+							+ "WHERE C.antenato = ? AND D.proprietario = ? AND D.eliminato = FALSE ORDER BY C.profondita, D.id_dirPadre, D.id_docu;",
+					" finds the subtree of a document"));
+		}, List::size);
+	}
+
+	/**
+	 * @brief Retrieves the directories containing a document, e.g. for a breadcrumb.
+	 * @param id the ID of the user who owns the document.
+	 * @param idDocu the ID of the document.
+	 * @return the path from the top-level directory down to the document itself, or an
+	 *         empty list if the document is not the user's.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * This method reads the path with a single query on the closure table, whatever its
+	 * length.
+	 */
+	public ArrayList<File> getAncestors(int id, int idDocu) throws SQLException {
+		return QueryMetrics.record("getAncestors", () -> {
+			return ConnectionHandler.executeRead(dataSource, connection -> getHierarchy(connection, idDocu, id,
+					"SELECT D.* FROM docu_chiusura C JOIN docu D ON D.id_docu = C.antenato "
+							+ "WHERE C.discendente = ? AND D.proprietario = ? AND D.eliminato = FALSE ORDER BY C.profondita DESC;",
+					" finds the ancestors of a document"));
+		}, List::size);
+	}
+
+	/**
+	 * @brief Runs a query on the closure table returning documents.
+	 * @see #getSubtree(int, int)
+	 * @see #getAncestors(int, int)
+	 */
+	private ArrayList<File> getHierarchy(Connection connection, int idDocu, int id, String query,
+			String performedAction) throws SQLException {
+		ArrayList<File> lista = new ArrayList<>();
 		File file = null;
-		String performedAction = "finds file description, by their id and idUser";
-		String query = "SELECT D1.id_docu as id_docu, D1.nome as nome, D1.id_dirPadre as id_dirPadre, D1.nome as nome, D1.tipo as tipo, D1.descrizione as descrizione, D1.creazione as creazione, D2.nome as nomePadre FROM docu as D1, docu as D2 WHERE D1.id_dirPadre=D2.id_docu and D1.proprietario = ? AND D1.tipo <> 'dir' AND D1.id_docu = ?;";
 		PreparedStatement preparedStatement = null;
 		ResultSet resultSet = null;
 
 		try {
 			preparedStatement = connection.prepareStatement(query);
-			preparedStatement.setInt(1, id);
-			preparedStatement.setInt(2, idDocu);
+			preparedStatement.setInt(1, idDocu);
+			preparedStatement.setInt(2, id);
 			resultSet = preparedStatement.executeQuery();
 
 			while (resultSet.next()) {
 				file = new File();
-				file.setIdDocu(resultSet.getInt("id_docu"));
 				file.setIdDirPadre(resultSet.getInt("id_dirPadre"));
+				file.setIdDocu(resultSet.getInt("id_docu"));
+				file.setProprietario(resultSet.getInt("proprietario"));
 				file.setNome(resultSet.getString("nome"));
 				file.setTipo(resultSet.getString("tipo"));
 				file.setDescrizione(resultSet.getString("descrizione"));
 				file.setCreazione(resultSet.getString("creazione"));
-				file.setNomePadre(resultSet.getString("nomePadre"));
-			}
-			if (file == null) {
-				System.out.println("No file found!");
-			} else {
-				System.out.println("file found!");
+				lista.add(file);
 			}
 		} catch (SQLException e) {
 			throw new SQLException("Error accessing the DB when" + performedAction, e);
@@ -259,85 +425,345 @@ public class FileDAO {
 				try {
 					resultSet.close();
 				} catch (SQLException e) {
+
 				}
 			}
 			if (preparedStatement != null) {
 				try {
 					preparedStatement.close();
 				} catch (SQLException e) {
-			
+
 				}
 			}
 		}
-		return file;
+		return lista;
 	}
-	
+
 	/**
-	 * @brief Checks if a specific ID corresponds to a directory owned by a user.
-	 * @param id the ID of the user.
-	 * @param idDirDest the ID of the directory to check.
-	 * @return true if the ID corresponds to a directory, false otherwise.
+	 * @brief Counts the documents contained in a directory, at any depth.
+	 * @param id the ID of the user who owns the directory.
+	 * @param idDocu the ID of the directory.
+	 * @return the number of descendants, 0 also if the directory is not the user's.
 	 * @throws SQLException if there is an error accessing the database.
 	 *
-	 * This method queries the database to determine if the specified ID corresponds 
-	 * to a directory owned by the user.
+	 * This method counts the rows of the closure table below the directory, with a
+	 * range scan of its primary key, skipping the descendants marked as deleted and not
+	 * purged yet.
 	 */
-	public boolean isDir(int id, int idDirDest) throws SQLException {
-		String performedAction = "Is dir?";
-		String query = "SELECT * FROM docu WHERE proprietario = ? AND id_docu = ? AND tipo = 'dir';";
-		boolean ris = false;
-		ResultSet resultSet = null;
-		
+	public int countDescendants(int id, int idDocu) throws SQLException {
+		return QueryMetrics.record("countDescendants",
+				() -> ConnectionHandler.executeRead(dataSource, connection -> countDescendants(connection, id, idDocu)),
+				n -> 1);
+	}
+
+	/**
+	 * @brief Runs countDescendants on a borrowed connection.
+	 * @see #countDescendants(int, int)
+	 */
+	private int countDescendants(Connection connection, int id, int idDocu) throws SQLException {
+		String performedAction = " counts the descendants of a document";
+		String query = "SELECT COUNT(*) FROM docu R JOIN docu_chiusura C ON C.antenato = R.id_docu "
+				+ "JOIN docu D ON D.id_docu = C.discendente "
+				+ "WHERE R.id_docu = ? AND R.proprietario = ? AND R.eliminato = FALSE "
+				+ "AND C.profondita > 0 AND D.eliminato = FALSE;";
 		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-			preparedStatement.setInt(1, id);
-			preparedStatement.setInt(2, idDirDest);
+			preparedStatement.setInt(1, idDocu);
+			preparedStatement.setInt(2, id);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next() ? resultSet.getInt(1) : 0;
+			}
+		} catch (SQLException e) {
+			throw new SQLException("Error accessing the DB when" + performedAction, e);
+		}
+	}
 
+	/**
+	 * @brief Retrieves a page of the files in a specific directory owned by a user.
+	 * @param id the ID of the user whose files are to be retrieved.
+	 * @param idDirPadre the ID of the parent directory.
+	 * @param ordine the sort key, ORDINA_NOME or ORDINA_CREAZIONE.
+	 * @param discendente true to sort in descending order.
+	 * @param cursore the sort value of the cursor file, or null for the first page.
+	 * @param idCursore the document ID of the cursor file.
+	 * @param indietro true to read the page before the cursor, false for the page after it.
+	 * @param dimensione the maximum number of files of the page.
+	 * @return the page, with the cursors of the previous and next pages.
+	 * @throws SQLException if there is an error accessing the database.
+	 * @throws IllegalArgumentException if the sort key is unknown.
+	 *
+	 * This method queries the database for the files that belong to the specified user
+	 * and are located in the specified directory. Pages are read with keyset pagination:
+	 * the files are sorted by the sort key and then by ID, and each page starts right
+	 * after (or ends right before) the cursor, so the cost of a page does not depend on
+	 * its position or on the size of the directory. One more file than requested is read
+	 * to know whether the listing goes on.
+	 */
+	public Pagina getFileFrom(int id, int idDirPadre, String ordine, boolean discendente, String cursore,
+			int idCursore, boolean indietro, int dimensione) throws SQLException {
+		return QueryMetrics.record("getFileFrom", () -> {
+			if (!ORDINA_NOME.equals(ordine) && !ORDINA_CREAZIONE.equals(ordine)) {
+				throw new IllegalArgumentException("Unknown sort key: " + ordine);
+			}
+			return ConnectionHandler.executeRead(dataSource, connection -> getFileFrom(connection, id, idDirPadre, ordine,
+					discendente, cursore, idCursore, indietro, dimensione));
+		}, pagina -> pagina.getLista().size());
+	}
+
+	/**
+	 * @brief Runs getFileFrom on a borrowed connection.
+	 * @see #getFileFrom(int, int, String, boolean, String, int, boolean, int)
+	 */
+	private Pagina getFileFrom(Connection connection, int id, int idDirPadre, String ordine, boolean discendente,
+			String cursore, int idCursore, boolean indietro, int dimensione) throws SQLException {
+		Pagina pagina = new Pagina();
+		ArrayList<File> lista = pagina.getLista();
+		File file = null;
+		String performedAction = "finds a page of the files of a user, by their id and idDirPadre";
+		// the folder is read once, instead of being joined with every file of the page
+		String nomePadre = getNomeDir(connection, id, idDirPadre);
+		if (nomePadre == null) {
+			LOG.debug("No folder found!");
+			return pagina;
+		}
+		pagina.setNomePadre(nomePadre);
+		// reading backwards walks the same index in the opposite direction
+		boolean decrescente = discendente != indietro;
+		String query = listingQuery(ordine, decrescente, cursore != null);
+		PreparedStatement preparedStatement = null;
+		ResultSet resultSet = null;
+
+		try {
+			preparedStatement = connection.prepareStatement(query);
+			bindListing(preparedStatement, id, idDirPadre, cursore, idCursore, dimensione + 1);
 			resultSet = preparedStatement.executeQuery();
-			while(resultSet.next()) {
-				ris= true;
+
+			while (resultSet.next()) {
+				file = readListingRow(resultSet, nomePadre);
+				lista.add(file);
 			}
 		} catch (SQLException e) {
-			
-			e.printStackTrace();
+			throw new SQLException("Error accessing the DB when" + performedAction, e);
+		} finally {
+			if (resultSet != null) {
+				try {
+					resultSet.close();
+				} catch (SQLException e) {
+					
+				}
+			}
+			if (preparedStatement != null) {
+				try {
+					preparedStatement.close();
+				} catch (SQLException e) {
+					
+				}
+			}
+		}
+
+		boolean altri = lista.size() > dimensione;
+		if (altri) {
+			lista.remove(lista.size() - 1);
+		}
+		if (indietro) {
+			Collections.reverse(lista);
+			pagina.setPrecedente(altri);
+			pagina.setSuccessiva(cursore != null);
+		} else {
+			pagina.setPrecedente(cursore != null);
+			pagina.setSuccessiva(altri);
+		}
+		if (!lista.isEmpty()) {
+			File primo = lista.get(0);
+			File ultimo = lista.get(lista.size() - 1);
+			pagina.setCursorePrecedente(ORDINA_NOME.equals(ordine) ? primo.getNome() : primo.getCreazione(), primo.getIdDocu());
+			pagina.setCursoreSuccessiva(ORDINA_NOME.equals(ordine) ? ultimo.getNome() : ultimo.getCreazione(), ultimo.getIdDocu());
+			LOG.debug("Folders or files found!");
+		} else {
+			LOG.debug("No folder or file found!");
+		}
+		return pagina;
+	}
+
+	/**
+	 * @brief Opens a page of the files in a specific directory, streaming its rows to the caller.
+	 * @param id the ID of the user whose files are to be retrieved.
+	 * @param idDirPadre the ID of the parent directory.
+	 * @param ordine the sort key, ORDINA_NOME or ORDINA_CREAZIONE.
+	 * @param discendente true to sort in descending order.
+	 * @param cursore the sort value of the cursor file, or null for the first page.
+	 * @param idCursore the document ID of the cursor file.
+	 * @param indietro true to read the page before the cursor, false for the page after it.
+	 * @param dimensione the maximum number of files of the page.
+	 * @param fetchSize the number of rows fetched from the database at a time.
+	 * @return the open page: it must be closed, and it releases its connection as soon as
+	 *         its files have all been read.
+	 * @throws SQLException if there is an error accessing the database.
+	 * @throws IllegalArgumentException if the sort key is unknown.
+	 *
+	 * Same page as getFileFrom, but the files are not collected in a list: each one is read
+	 * from the result set while the caller iterates, so the memory used does not depend on
+	 * the size of the page and rendering can start with the first row. The cursors and the
+	 * next/previous flags of the page are known once the iteration is over. The connection
+	 * stays borrowed from the pool until then, and an error while reading surfaces as an
+	 * IllegalStateException from the iteration.
+	 */
+	public FileStream streamFileFrom(int id, int idDirPadre, String ordine, boolean discendente, String cursore,
+			int idCursore, boolean indietro, int dimensione, int fetchSize) throws SQLException {
+		return QueryMetrics.record("streamFileFrom", () -> {
+			if (!ORDINA_NOME.equals(ordine) && !ORDINA_CREAZIONE.equals(ordine)) {
+				throw new IllegalArgumentException("Unknown sort key: " + ordine);
+			}
+			return ConnectionHandler.openRead(dataSource, connection -> streamFileFrom(connection, id, idDirPadre, ordine,
+					discendente, cursore, idCursore, indietro, dimensione, fetchSize));
+		}, stream -> 0);
+	}
+
+	/**
+	 * @brief Runs streamFileFrom on a borrowed connection, which the returned stream takes over.
+	 * @see #streamFileFrom(int, int, String, boolean, String, int, boolean, int, int)
+	 */
+	private FileStream streamFileFrom(Connection connection, int id, int idDirPadre, String ordine,
+			boolean discendente, String cursore, int idCursore, boolean indietro, int dimensione, int fetchSize)
+			throws SQLException {
+		String performedAction = "streams a page of the files of a user, by their id and idDirPadre";
+		Pagina pagina = new Pagina();
+		String nomePadre = getNomeDir(connection, id, idDirPadre);
+		if (nomePadre == null) {
+			return new FileStream(connection, null, null, pagina, ordine, dimensione, false);
+		}
+		pagina.setNomePadre(nomePadre);
+		boolean decrescente = discendente != indietro;
+		String query = listingQuery(ordine, decrescente, cursore != null);
+		if (indietro) {
+			// the page is read backwards: put it back in display order, counting its rows to
+			// know whether the first one is the extra row telling that a previous page exists
+			query = "SELECT pagina.*, COUNT(*) OVER () AS righe FROM (" + query + ") AS pagina ORDER BY " + ordine
+					+ (discendente ? " DESC" : " ASC") + ", id_docu" + (discendente ? " DESC" : " ASC");
+		}
+		PreparedStatement preparedStatement = null;
+		try {
+			preparedStatement = connection.prepareStatement(query);
+			preparedStatement.setFetchSize(fetchSize);
+			bindListing(preparedStatement, id, idDirPadre, cursore, idCursore, dimensione + 1);
+			ResultSet resultSet = preparedStatement.executeQuery();
+			if (indietro) {
+				pagina.setSuccessiva(cursore != null);
+			} else {
+				pagina.setPrecedente(cursore != null);
+			}
+			return new FileStream(connection, preparedStatement, resultSet, pagina, ordine, dimensione, indietro);
+		} catch (SQLException e) {
+			if (preparedStatement != null) {
+				try {
+					preparedStatement.close();
+				} catch (SQLException e1) {
+				}
+			}
 			throw new SQLException("Error accessing the DB when " + performedAction, e);
 		}
+	}
 
-		return ris;
+	/**
+	 * @brief Builds the query of a page of the files of a directory.
+	 * @param ordine the sort column, already checked.
+	 * @param decrescente true to read the rows in descending order.
+	 * @param conCursore true if the page starts after a cursor.
+	 * @return the query, with the parameters bound by bindListing.
+	 */
+	private static String listingQuery(String ordine, boolean decrescente, boolean conCursore) {
+		return "SELECT id_docu, nome, id_dirPadre, tipo, descrizione, creazione FROM docu WHERE proprietario = ? AND id_dirPadre = ? AND tipo <> 'dir' AND eliminato = FALSE"
+				// expanded, since MySQL does not turn a row comparison into a range on the index
+				+ (conCursore ? " AND (" + ordine + (decrescente ? " < ?" : " > ?") + " OR (" + ordine + " = ? AND id_docu"
+						+ (decrescente ? " < ?" : " > ?") + "))" : "")
+				+ " ORDER BY " + ordine + (decrescente ? " DESC" : " ASC") + ", id_docu" + (decrescente ? " DESC" : " ASC")
+				+ " LIMIT ?";
 	}
-	
+
+	private static void bindListing(PreparedStatement preparedStatement, int id, int idDirPadre, String cursore,
+			int idCursore, int limite) throws SQLException {
+		int i = 1;
+		preparedStatement.setInt(i++, id);
+		preparedStatement.setInt(i++, idDirPadre);
+		if (cursore != null) {
+			preparedStatement.setString(i++, cursore);
+			preparedStatement.setString(i++, cursore);
+			preparedStatement.setInt(i++, idCursore);
+		}
+		preparedStatement.setInt(i++, limite);
+	}
+
+	/**
+	 * @brief Reads a file of a directory listing from the current row of a result set.
+	 * @param resultSet the result set of a listingQuery.
+	 * @param nomePadre the name of the directory.
+	 * @return the file.
+	 * @throws SQLException if there is an error accessing the database.
+	 */
+	static File readListingRow(ResultSet resultSet, String nomePadre) throws SQLException {
+		File file = new File();
+		file.setNomePadre(nomePadre);
+		file.setIdDirPadre(resultSet.getInt("id_dirPadre"));
+		file.setIdDocu(resultSet.getInt("id_docu"));
+		file.setNome(resultSet.getString("nome"));
+		file.setTipo(resultSet.getString("tipo"));
+		file.setDescrizione(resultSet.getString("descrizione"));
+		file.setCreazione(resultSet.getString("creazione"));
+		return file;
+	}
+
 	/**
-	 * @brief Moves a file to a new directory.
+	 * @brief Retrieves the details of a specific file.
 	 * @param id the ID of the user who owns the file.
-	 * @param idPartenza the ID of the file to be moved.
-	 * @param idDirDest the ID of the destination directory.
-	 * @return true if the file was successfully moved, false otherwise.
+	 * @param idDocu the ID of the file to be retrieved.
+	 * @return a File object representing the specified file, or null if not found.
 	 * @throws SQLException if there is an error accessing the database.
 	 *
-	 * This method updates the database to move the specified file to the specified 
-	 * destination directory, ensuring that the destination is a valid directory.
+	 * This method queries the database for a specific file's details based on the user ID 
+	 * and file ID.
 	 */
-	public boolean moveFile(int id, int idPartenza, int idDirDest) throws SQLException {
-		if(!isDir(id, idDirDest)) {
-			return false;
-		}
-		String performedAction = "move File in the database";
-		String query = "UPDATE docu SET id_dirPadre = ? WHERE id_docu = ? AND proprietario = ? AND tipo <> 'dir';";
+	public File getFile(int id, int idDocu) throws SQLException {
+		return QueryMetrics.record("getFile",
+				() -> ConnectionHandler.executeRead(dataSource, connection -> getFile(connection, id, idDocu)),
+				file -> file == null ? 0 : 1);
+	}
+
+	/**
+	 * @brief Runs getFile on a borrowed connection.
+	 * @see #getFile(int, int)
+	 */
+	private File getFile(Connection connection, int id, int idDocu) throws SQLException {
+		File file = null;
+		String performedAction = "finds file description, by their id and idUser";
+		String query = "SELECT id_docu, nome, id_dirPadre, tipo, descrizione, creazione FROM docu WHERE proprietario = ? AND tipo <> 'dir' AND id_docu = ? AND eliminato = FALSE;";
 		PreparedStatement preparedStatement = null;
 		ResultSet resultSet = null;
-		boolean ris = false;
 
 		try {
 			preparedStatement = connection.prepareStatement(query);
-			preparedStatement.setInt(1, idDirDest);
-			preparedStatement.setInt(2, idPartenza);
-			preparedStatement.setInt(3, id);
-			int rowsAffected = preparedStatement.executeUpdate();
-			if (rowsAffected > 0) {
-				System.out.println("Dir cambiata");
-				ris = true;
+			preparedStatement.setInt(1, id);
+			preparedStatement.setInt(2, idDocu);
+			resultSet = preparedStatement.executeQuery();
+
+			while (resultSet.next()) {
+				file = new File();
+				file.setIdDocu(resultSet.getInt("id_docu"));
+				file.setIdDirPadre(resultSet.getInt("id_dirPadre"));
+				file.setNome(resultSet.getString("nome"));
+				file.setTipo(resultSet.getString("tipo"));
+				file.setDescrizione(resultSet.getString("descrizione"));
+				file.setCreazione(resultSet.getString("creazione"));
+			}
+			if (file != null) {
+				file.setNomePadre(getNomeDir(connection, id, file.getIdDirPadre()));
+				if (file.getNomePadre() == null) {
+					// files always live in a folder
+					file = null;
+				}
+			}
+			if (file == null) {
+				LOG.debug("No file found!");
 			} else {
-				System.out.println("ERRORE! Dir non Cambiata");
-				ris = false;
+				LOG.debug("file found!");
 			}
 		} catch (SQLException e) {
 			throw new SQLException("Error accessing the DB when" + performedAction, e);
@@ -346,18 +772,272 @@ public class FileDAO {
 				try {
 					resultSet.close();
 				} catch (SQLException e) {
-				
 				}
 			}
 			if (preparedStatement != null) {
 				try {
 					preparedStatement.close();
 				} catch (SQLException e) {
-				
+			
 				}
 			}
 		}
-		return ris;
+		return file;
+	}
+	
+	/**
+	 * @brief Reads the name of a directory of a user, on a borrowed connection.
+	 * @param connection the connection to use.
+	 * @param id the ID of the user who owns the directory.
+	 * @param idDir the ID of the directory.
+	 * @return the name of the directory, or null if the user has no such directory.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * Listings and file details use this single primary key lookup to show the name of
+	 * the folder, instead of joining the folder with each of their rows.
+	 */
+	private String getNomeDir(Connection connection, int id, int idDir) throws SQLException {
+		String performedAction = "finds the name of a folder, by its id and idUser";
+		String query = "SELECT nome FROM docu WHERE id_docu = ? AND proprietario = ? AND tipo = 'dir' AND eliminato = FALSE;";
+		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			preparedStatement.setInt(1, idDir);
+			preparedStatement.setInt(2, id);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next() ? resultSet.getString("nome") : null;
+			}
+		} catch (SQLException e) {
+			throw new SQLException("Error accessing the DB when " + performedAction, e);
+		}
+	}
+
+	/**
+	 * @brief Moves several files and directories to the same directory.
+	 * @param id the ID of the user who owns the documents.
+	 * @param idFiles the IDs of the documents to be moved.
+	 * @param idDirDest the ID of the destination directory, or 0 to move directories to the top level.
+	 * @return the outcome of each document, by ID in request order: ESITO_OK if the document
+	 *         was moved, ESITO_DESTINAZIONE_NON_VALIDA if the destination is not a directory of
+	 *         the user (the top level is valid only for directories), ESITO_DOCUMENTO_NON_VALIDO
+	 *         if the document is not the user's, ESITO_CICLO if a directory would be moved into
+	 *         its own subtree.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * All the documents are moved in one transaction. The destination is checked once and
+	 * locked until the end of the transaction, then the documents to be moved are selected
+	 * and updated with set-based statements, MAX_IDS_PER_STATEMENT documents at a time: the
+	 * number of statements does not grow with the number of documents, up to that limit.
+	 *
+	 * When directories are moved, the ancestors of the destination are read from the
+	 * closure table and the directories among them are rejected. Moves of the same user
+	 * are serialized by locking the user's row, so two concurrent moves cannot build a
+	 * cycle together. The closure table is updated in the same transaction.
+	 */
+	public LinkedHashMap<Integer, Integer> moveFiles(int id, int[] idFiles, int idDirDest) throws SQLException {
+		return QueryMetrics.record("moveFiles", () -> {
+			String performedAction = "move Files in the database";
+			LinkedHashMap<Integer, Integer> esiti = new LinkedHashMap<>();
+			for (int idFile : idFiles) {
+				esiti.put(idFile, ESITO_DOCUMENTO_NON_VALIDO);
+			}
+			if (esiti.isEmpty()) {
+				return esiti;
+			}
+			Integer[] ids = esiti.keySet().toArray(new Integer[0]);
+			int moved = 0;
+
+			try (Connection connection = dataSource.getConnection()) {
+				connection.setAutoCommit(false);
+				try {
+					lockUser(connection, id, true);
+					if (idDirDest != 0 && !lockDir(connection, id, idDirDest)) {
+						connection.rollback();
+						esiti.replaceAll((idFile, esito) -> ESITO_DESTINAZIONE_NON_VALIDA);
+						LOG.debug("ERRORE! Dir non Cambiata");
+						return esiti;
+					}
+
+					ArrayList<Integer> files = new ArrayList<>();
+					ArrayList<Integer> dirs = new ArrayList<>();
+					for (int from = 0; from < ids.length; from += MAX_IDS_PER_STATEMENT) {
+						int to = Math.min(ids.length, from + MAX_IDS_PER_STATEMENT);
+						try (PreparedStatement preparedStatement = connection.prepareStatement(
+								"SELECT id_docu, tipo FROM docu WHERE proprietario = ? AND eliminato = FALSE AND id_docu IN (" + placeholders(to - from) + ") FOR UPDATE;")) {
+							preparedStatement.setInt(1, id);
+							for (int i = from; i < to; i++) {
+								preparedStatement.setInt(2 + i - from, ids[i]);
+							}
+							try (ResultSet resultSet = preparedStatement.executeQuery()) {
+								while (resultSet.next()) {
+									if ("dir".equals(resultSet.getString("tipo"))) {
+										dirs.add(resultSet.getInt("id_docu"));
+									} else {
+										files.add(resultSet.getInt("id_docu"));
+									}
+								}
+							}
+						}
+					}
+
+					if (idDirDest == 0) {
+						for (Integer idFile : files) {
+							esiti.put(idFile, ESITO_DESTINAZIONE_NON_VALIDA);
+						}
+						files.clear();
+					}
+					if (!dirs.isEmpty() && idDirDest != 0) {
+						HashSet<Integer> antenati = getAncestorIds(connection, idDirDest);
+						for (Iterator<Integer> it = dirs.iterator(); it.hasNext();) {
+							Integer idDir = it.next();
+							if (antenati.contains(idDir)) {
+								esiti.put(idDir, ESITO_CICLO);
+								it.remove();
+							}
+						}
+					}
+
+					ArrayList<Integer> validi = new ArrayList<>(files);
+					validi.addAll(dirs);
+					for (int from = 0; from < validi.size(); from += MAX_IDS_PER_STATEMENT) {
+						int to = Math.min(validi.size(), from + MAX_IDS_PER_STATEMENT);
+						try (PreparedStatement preparedStatement = connection.prepareStatement(
+								"UPDATE docu SET id_dirPadre = ? WHERE proprietario = ? AND id_docu IN (" + placeholders(to - from) + ");")) {
+							if (idDirDest == 0) {
+								preparedStatement.setNull(1, java.sql.Types.INTEGER);
+							} else {
+								preparedStatement.setInt(1, idDirDest);
+							}
+							preparedStatement.setInt(2, id);
+							for (int i = from; i < to; i++) {
+								preparedStatement.setInt(3 + i - from, validi.get(i));
+								esiti.put(validi.get(i), ESITO_OK);
+							}
+							moved += preparedStatement.executeUpdate();
+						}
+					}
+					moveClosure(connection, validi, idDirDest);
+					connection.commit();
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
+			} catch (SQLException e) {
+				throw new SQLException("Error accessing the DB when " + performedAction, e);
+			}
+
+			LOG.debug("{} documenti spostati", moved);
+			if (moved > 0 && treeCache != null) {
+				treeCache.invalidate(id);
+			}
+			return esiti;
+		}, esiti -> (int) esiti.values().stream().filter(esito -> esito == ESITO_OK).count());
+	}
+
+	/**
+	 * @brief Reads the IDs of a directory and of all the directories containing it.
+	 * @param connection the connection of the transaction.
+	 * @param idDir the ID of the directory.
+	 * @return the IDs of the directory and of its ancestors.
+	 * @throws SQLException if there is an error accessing the database.
+	 */
+	private HashSet<Integer> getAncestorIds(Connection connection, int idDir) throws SQLException {
+		String query = "SELECT antenato FROM docu_chiusura WHERE discendente = ?;";
+		HashSet<Integer> antenati = new HashSet<>();
+		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			preparedStatement.setInt(1, idDir);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					antenati.add(resultSet.getInt("antenato"));
+				}
+			}
+		}
+		return antenati;
+	}
+
+	/**
+	 * @brief Updates the closure table after some documents have been moved.
+	 * @param connection the connection of the transaction moving the documents.
+	 * @param ids the IDs of the moved documents.
+	 * @param idDirDest the ID of the new parent directory, or 0 for the top level.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * For each moved document the paths from its former ancestors to its subtree are
+	 * deleted, then the paths from the ancestors of the destination are added. All the
+	 * deletions run before the insertions, so documents moved together with a directory
+	 * containing them are linked once, to their new parent only.
+	 */
+	private void moveClosure(Connection connection, List<Integer> ids, int idDirDest) throws SQLException {
+		String delete = "DELETE C FROM docu_chiusura AS C JOIN docu_chiusura AS S ON C.discendente = S.discendente "
+				+ "LEFT JOIN docu_chiusura AS X ON X.antenato = S.antenato AND X.discendente = C.antenato "
+				+ "WHERE S.antenato = ? AND X.antenato IS NULL;";
+		String insert = "INSERT INTO docu_chiusura (antenato, discendente, profondita) "
+				+ "SELECT A.antenato, S.discendente, A.profondita + S.profondita + 1 FROM docu_chiusura AS A JOIN docu_chiusura AS S "
+				+ "WHERE A.discendente = ? AND S.antenato = ?;";
+		try (PreparedStatement preparedStatement = connection.prepareStatement(delete)) {
+			for (Integer idDocu : ids) {
+				preparedStatement.setInt(1, idDocu);
+				preparedStatement.addBatch();
+			}
+			preparedStatement.executeBatch();
+		}
+		if (idDirDest == 0) {
+			return;
+		}
+		try (PreparedStatement preparedStatement = connection.prepareStatement(insert)) {
+			for (Integer idDocu : ids) {
+				preparedStatement.setInt(1, idDirDest);
+				preparedStatement.setInt(2, idDocu);
+				preparedStatement.addBatch();
+			}
+			preparedStatement.executeBatch();
+		}
+	}
+
+	/**
+	 * @brief Locks the row of a user until the end of the transaction.
+	 * @param connection the connection of the transaction.
+	 * @param id the ID of the user.
+	 * @param esclusivo true for an exclusive lock, false for a shared one.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * Every write maintaining the closure table locks the user first: moves and deletions
+	 * exclusively, since they may affect whole subtrees, insertions in shared mode. A
+	 * directory is thus never moved while its closure rows are being read or written by
+	 * another transaction, and the common lock order rules out deadlocks between these
+	 * writes.
+	 */
+	private void lockUser(Connection connection, int id, boolean esclusivo) throws SQLException {
+		String query = "SELECT id_utente FROM utente WHERE id_utente = ? " + (esclusivo ? "FOR UPDATE;" : "FOR SHARE;");
+		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			preparedStatement.setInt(1, id);
+			preparedStatement.executeQuery().close();
+		}
+	}
+
+	/**
+	 * @brief Checks that a directory belongs to a user and locks it until the end of the transaction.
+	 * @param connection the connection of the transaction.
+	 * @param id the ID of the user.
+	 * @param idDir the ID of the directory.
+	 * @return true if the directory exists and belongs to the user.
+	 * @throws SQLException if there is an error accessing the database.
+	 */
+	private boolean lockDir(Connection connection, int id, int idDir) throws SQLException {
+		String query = "SELECT id_docu FROM docu WHERE id_docu = ? AND proprietario = ? AND tipo = 'dir' AND eliminato = FALSE FOR SHARE;";
+		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			preparedStatement.setInt(1, idDir);
+			preparedStatement.setInt(2, id);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next();
+			}
+		}
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder in = new StringBuilder(count * 2);
+		for (int i = 0; i < count; i++) {
+			in.append(i == 0 ? "?" : ", ?");
+		}
+		return in.toString();
 	}
 
 	/**
@@ -368,43 +1048,172 @@ public class FileDAO {
 	 * @param tipo the type of the file or directory.
 	 * @param descrizione a description of the file or directory.
 	 * @param data the creation date of the file or directory.
-	 * @return true if the file or directory was successfully created, false otherwise.
+	 * @return ESITO_OK if the file or directory was created, ESITO_DESTINAZIONE_NON_VALIDA if
+	 *         the parent directory is not a directory of the user.
 	 * @throws SQLException if there is an error accessing the database.
 	 *
-	 * This method inserts a new file or directory into the database with the specified attributes,
-	 * checking if the parent directory exists if it is not a root element.
+	 * This method inserts a new file or directory into the database with the specified attributes.
+	 * Inside a directory the row is inserted by an INSERT ... SELECT reading the parent, so the
+	 * parent is checked and used in the same statement. The paths from the ancestors of the
+	 * new document are added to the closure table in the same transaction.
 	 */
-	public boolean newDocu(int id, String nome, int idDirPadre, String tipo, String descrizione, String data)
+	public int newDocu(int id, String nome, int idDirPadre, String tipo, String descrizione, String data)
 			throws SQLException {
-		if(idDirPadre!=0 && !isDir(id, idDirPadre)){
-			return false;
-		}
-		String performedAction = "Insert new file or dir";
-		String query = "INSERT INTO docu (nome, creazione, proprietario, tipo, id_dirPadre, descrizione) VALUES (?, ?, ?, ?, ?, ?);";
-		boolean ris = false;
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-			preparedStatement.setString(1, nome);
-			preparedStatement.setString(2, data);
-			preparedStatement.setInt(3, id);
-			preparedStatement.setString(4, tipo);
-			if(idDirPadre==0)
-				preparedStatement.setNull(5, java.sql.Types.INTEGER);
-			else
-				preparedStatement.setInt(5, idDirPadre);
-			preparedStatement.setString(6, descrizione);
-
-			int rowsAffected = preparedStatement.executeUpdate();
-			if (rowsAffected > 0) {
-				System.out.println("Docu creato");
-				ris = true;
+		return QueryMetrics.record("newDocu", () -> {
+			String performedAction = "Insert new file or dir";
+			String query;
+			if (idDirPadre == 0) {
+				query = "INSERT INTO docu (nome, creazione, proprietario, tipo, id_dirPadre, descrizione) VALUES (?, ?, ?, ?, NULL, ?);";
 			} else {
-				System.out.println("ERRORE! Docu non creato");
+				query = "INSERT INTO docu (nome, creazione, proprietario, tipo, id_dirPadre, descrizione) "
+						+ "SELECT ?, ?, ?, ?, D.id_docu, ? FROM docu AS D WHERE D.id_docu = ? AND D.proprietario = ? AND D.tipo = 'dir' AND D.eliminato = FALSE;";
 			}
-		} catch (SQLException e) {
-			e.printStackTrace();
-			throw new SQLException("Error accessing the DB when " + performedAction, e);
+			int ris;
+			try (Connection connection = dataSource.getConnection()) {
+				connection.setAutoCommit(false);
+				try (PreparedStatement preparedStatement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+					lockUser(connection, id, false);
+					preparedStatement.setString(1, nome);
+					preparedStatement.setString(2, data);
+					preparedStatement.setInt(3, id);
+					preparedStatement.setString(4, tipo);
+					preparedStatement.setString(5, descrizione);
+					if (idDirPadre != 0) {
+						preparedStatement.setInt(6, idDirPadre);
+						preparedStatement.setInt(7, id);
+					}
+					ris = preparedStatement.executeUpdate() > 0 ? ESITO_OK : ESITO_DESTINAZIONE_NON_VALIDA;
+					if (ris == ESITO_OK) {
+						try (ResultSet keys = preparedStatement.getGeneratedKeys()) {
+							keys.next();
+							insertClosure(connection, keys.getInt(1), idDirPadre);
+						}
+					}
+					connection.commit();
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
+			} catch (SQLException e) {
+				throw new SQLException("Error accessing the DB when " + performedAction, e);
+			}
+
+			if (ris == ESITO_OK) {
+				LOG.debug("Docu creato");
+				if (treeCache != null) {
+					treeCache.invalidate(id);
+				}
+			} else {
+				LOG.debug("ERRORE! Docu non creato");
+			}
+			return ris;
+		}, esito -> esito == ESITO_OK ? 1 : 0);
+	}
+
+	/**
+	 * @brief Adds a new document to the closure table.
+	 * @param connection the connection of the transaction inserting the document.
+	 * @param idDocu the ID of the new document.
+	 * @param idDirPadre the ID of its parent directory, or 0 for the top level.
+	 * @throws SQLException if there is an error accessing the database.
+	 */
+	private void insertClosure(Connection connection, int idDocu, int idDirPadre) throws SQLException {
+		String query = "INSERT INTO docu_chiusura (antenato, discendente, profondita) "
+				+ "SELECT antenato, ?, profondita + 1 FROM docu_chiusura WHERE discendente = ? "
+				+ "UNION ALL SELECT ?, ?, 0;";
+		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+			preparedStatement.setInt(1, idDocu);
+			preparedStatement.setInt(2, idDirPadre);
+			preparedStatement.setInt(3, idDocu);
+			preparedStatement.setInt(4, idDocu);
+			preparedStatement.executeUpdate();
 		}
+	}
+
+	/**
+	 * @brief Deletes a file, or a directory with everything it contains.
+	 * @param id the ID of the user who owns the document.
+	 * @param idDocu the ID of the document to be deleted.
+	 * @return ESITO_OK if the document was deleted, ESITO_DOCUMENTO_NON_VALIDO if it is not
+	 *         a document of the user.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * The whole subtree is marked as deleted by a single UPDATE joining the closure table,
+	 * so it disappears at once from every read of this DAO however big it is. The rows are
+	 * removed later, a bounded batch at a time, by purgeDeleted.
+	 */
+	public int deleteDocu(int id, int idDocu) throws SQLException {
+		return QueryMetrics.record("deleteDocu", () -> {
+			String performedAction = "delete a document";
+			String query = "UPDATE docu AS D JOIN docu_chiusura AS C ON C.discendente = D.id_docu SET D.eliminato = TRUE "
+					+ "WHERE C.antenato = ? AND D.proprietario = ? AND D.eliminato = FALSE;";
+			int ris;
+			try (Connection connection = dataSource.getConnection()) {
+				connection.setAutoCommit(false);
+				try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+					lockUser(connection, id, true);
+					preparedStatement.setInt(1, idDocu);
+					preparedStatement.setInt(2, id);
+					ris = preparedStatement.executeUpdate() > 0 ? ESITO_OK : ESITO_DOCUMENTO_NON_VALIDO;
+					connection.commit();
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
+			} catch (SQLException e) {
+				throw new SQLException("Error accessing the DB when " + performedAction, e);
+			}
+
+			if (ris == ESITO_OK) {
+				LOG.debug("Docu eliminato");
+				if (treeCache != null) {
+					treeCache.invalidate(id);
+				}
+			}
+			return ris;
+		}, esito -> esito == ESITO_OK ? 1 : 0);
+	}
 
-		return ris;
+	/**
+	 * @brief Removes a batch of the documents marked as deleted.
+	 * @param limite the maximum number of documents removed.
+	 * @return the number of documents removed.
+	 * @throws SQLException if there is an error accessing the database.
+	 *
+	 * Only deleted documents without children are removed, so a deleted directory goes
+	 * after its contents, from the deepest level up, and no foreign key cascade ever
+	 * removes more than the batch. Each batch is a short transaction of its own.
+	 */
+	public int purgeDeleted(int limite) throws SQLException {
+		return QueryMetrics.record("purgeDeleted", () -> {
+			String performedAction = "purge deleted documents";
+			String select = "SELECT D.id_docu FROM docu D WHERE D.eliminato = TRUE "
+					+ "AND NOT EXISTS (SELECT 1 FROM docu C WHERE C.id_dirPadre = D.id_docu) LIMIT ?;";
+			ArrayList<Integer> ids = new ArrayList<>();
+			int deleted = 0;
+			try (Connection connection = dataSource.getConnection()) {
+				try (PreparedStatement preparedStatement = connection.prepareStatement(select)) {
+					preparedStatement.setInt(1, limite);
+					try (ResultSet resultSet = preparedStatement.executeQuery()) {
+						while (resultSet.next()) {
+							ids.add(resultSet.getInt(1));
+						}
+					}
+				}
+				for (int from = 0; from < ids.size(); from += MAX_IDS_PER_STATEMENT) {
+					int to = Math.min(ids.size(), from + MAX_IDS_PER_STATEMENT);
+					try (PreparedStatement preparedStatement = connection.prepareStatement(
+							"DELETE FROM docu WHERE eliminato = TRUE AND id_docu IN (" + placeholders(to - from) + ");")) {
+						for (int i = from; i < to; i++) {
+							preparedStatement.setInt(1 + i - from, ids.get(i));
+						}
+						deleted += preparedStatement.executeUpdate();
+					}
+				}
+			} catch (SQLException e) {
+				throw new SQLException("Error accessing the DB when " + performedAction, e);
+			}
+			return deleted;
+		}, deleted -> deleted);
 	}
 }
@@ -0,0 +1,185 @@
+package it.polimi.tiw.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import it.polimi.tiw.beans.File;
+import it.polimi.tiw.beans.Pagina;
+import it.polimi.tiw.utils.QueryMetrics;
+
+/**
+ * @file FileStream.java
+ * @brief This class streams a page of the files of a directory from an open result set.
+ * @class FileStream
+ *
+ * Returned by FileDAO.streamFileFrom, it can be iterated once, e.g. by th:each while the
+ * template is being written: each file is read from the database when it is reached, so
+ * only one of them is in memory at a time. The stream holds a borrowed connection and
+ * gives it back as soon as the last file has been read; close() gives it back in any case
+ * and must be called when the iteration may not have reached the end.
+ *
+ * The page returned by getPagina is completed when the iteration is over: the template
+ * must read its cursors after the files.
+ */
+public class FileStream implements Iterable<File>, AutoCloseable {
+	private final Connection connection;
+	private final PreparedStatement preparedStatement;
+	private final ResultSet resultSet;
+	private final Pagina pagina;
+	private final String ordine;
+	private final int dimensione;
+	private final boolean indietro;
+
+	/// The next file to return, read ahead to know whether the page is empty.
+	private File prossimo;
+	private int letti = 0;
+	private boolean iterato = false;
+	private boolean chiuso = false;
+
+	/**
+	 * @brief Wraps the result set of a page, reading its first file.
+	 * @param connection the connection the stream takes over.
+	 * @param preparedStatement the statement of the page, or null if the directory does not exist.
+	 * @param resultSet the rows of the page, up to dimensione + 1, or null if the directory does not exist.
+	 * @param pagina the page to complete with the cursors.
+	 * @param ordine the sort key of the page.
+	 * @param dimensione the maximum number of files of the page.
+	 * @param indietro true if the rows carry the righe column and an extra first row may precede the page.
+	 * @throws SQLException if the first row cannot be read; the connection is then closed.
+	 */
+	FileStream(Connection connection, PreparedStatement preparedStatement, ResultSet resultSet, Pagina pagina,
+			String ordine, int dimensione, boolean indietro) throws SQLException {
+		this.connection = connection;
+		this.preparedStatement = preparedStatement;
+		this.resultSet = resultSet;
+		this.pagina = pagina;
+		this.ordine = ordine;
+		this.dimensione = dimensione;
+		this.indietro = indietro;
+		try {
+			if (resultSet != null && indietro && resultSet.next()) {
+				if (resultSet.getInt("righe") > dimensione) {
+					// the extra row: the page itself starts with the next one
+					pagina.setPrecedente(true);
+				} else {
+					prossimo = read();
+				}
+			}
+			if (prossimo == null) {
+				prossimo = nextFile();
+			}
+		} catch (SQLException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Gets the page of the files.
+	 * @return the page, whose cursors and next/previous flags are set once the files have been read.
+	 */
+	public Pagina getPagina() {
+		return pagina;
+	}
+
+	/**
+	 * @brief Tells whether the page has no files.
+	 * @return true if there are no files to iterate.
+	 */
+	public boolean isEmpty() {
+		return letti == 0;
+	}
+
+	/**
+	 * @brief Gets the iterator over the files of the page.
+	 * @return the iterator; it throws IllegalStateException if the database cannot be read.
+	 * @throws IllegalStateException if the stream has already been iterated.
+	 */
+	@Override
+	public Iterator<File> iterator() {
+		if (iterato) {
+			throw new IllegalStateException("The files of the page can be read only once");
+		}
+		iterato = true;
+		return new Iterator<File>() {
+			@Override
+			public boolean hasNext() {
+				return prossimo != null;
+			}
+
+			@Override
+			public File next() {
+				if (prossimo == null) {
+					throw new NoSuchElementException();
+				}
+				File file = prossimo;
+				try {
+					prossimo = nextFile();
+				} catch (SQLException e) {
+					close();
+					throw new IllegalStateException("Error accessing the DB when streaming the files of a directory", e);
+				}
+				return file;
+			}
+		};
+	}
+
+	/**
+	 * @brief Reads the next file of the page, completing the page and closing the stream at its end.
+	 * @return the next file, or null if the page is over.
+	 * @throws SQLException if there is an error accessing the database.
+	 */
+	private File nextFile() throws SQLException {
+		if (!chiuso && letti < dimensione && resultSet != null && resultSet.next()) {
+			return read();
+		}
+		if (!chiuso && resultSet != null && !indietro && letti == dimensione) {
+			pagina.setSuccessiva(resultSet.next());
+		}
+		close();
+		return null;
+	}
+
+	private File read() throws SQLException {
+		File file = FileDAO.readListingRow(resultSet, pagina.getNomePadre());
+		String valore = FileDAO.ORDINA_NOME.equals(ordine) ? file.getNome() : file.getCreazione();
+		if (letti == 0) {
+			pagina.setCursorePrecedente(valore, file.getIdDocu());
+		}
+		pagina.setCursoreSuccessiva(valore, file.getIdDocu());
+		letti++;
+		return file;
+	}
+
+	/**
+	 * @brief Closes the result set and gives the connection back; further calls do nothing.
+	 */
+	@Override
+	public void close() {
+		if (chiuso) {
+			return;
+		}
+		chiuso = true;
+		QueryMetrics.get("streamFileFrom").addRows(letti);
+		if (resultSet != null) {
+			try {
+				resultSet.close();
+			} catch (SQLException e) {
+			}
+		}
+		if (preparedStatement != null) {
+			try {
+				preparedStatement.close();
+			} catch (SQLException e) {
+			}
+		}
+		try {
+			connection.close();
+		} catch (SQLException e) {
+		}
+	}
+}
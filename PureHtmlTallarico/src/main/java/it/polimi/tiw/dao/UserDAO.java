@@ -1,12 +1,17 @@
 package it.polimi.tiw.dao;
 
 import it.polimi.tiw.beans.User;
+import it.polimi.tiw.utils.ConnectionHandler;
+import it.polimi.tiw.utils.Log;
+import it.polimi.tiw.utils.QueryMetrics;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import javax.sql.DataSource;
+
 /**
  * @file UserDAO.java
  * @class UserDAO
@@ -19,16 +24,17 @@ import java.sql.SQLException;
  * a new user.
  */
 public class UserDAO {
+	private static final Log LOG = Log.getLog(UserDAO.class);
 
-	private Connection connection;
+	private DataSource dataSource;
 
 	/**
-     * @brief Constructs a UserDAO with the given database connection.
+     * @brief Constructs a UserDAO with the given database connection pool.
      * 
-     * @param connection The database connection to be used by the DAO.
+     * @param dataSource The connection pool from which the DAO borrows a connection for each operation.
      */
-	public UserDAO(Connection connection) {
-		this.connection = connection;
+	public UserDAO(DataSource dataSource) {
+		this.dataSource = dataSource;
 	}
 
 	/**
@@ -42,6 +48,16 @@ public class UserDAO {
      * @throws SQLException If an error occurs while accessing the database.
      */
 	public User getUser(String mail, String psw) throws SQLException {
+		return QueryMetrics.record("getUser",
+				() -> ConnectionHandler.executeRead(dataSource, connection -> getUser(connection, mail, psw)),
+				user -> user == null ? 0 : 1);
+	}
+
+	/**
+	 * @brief Runs getUser on a borrowed connection.
+	 * @see #getUser(String, String)
+	 */
+	private User getUser(Connection connection, String mail, String psw) throws SQLException {
 		User user = null;
 		String performedAction = " finding a user by email and password";
 		String query = "SELECT * FROM utente WHERE mail = ? AND psw = ?;";
@@ -62,9 +78,9 @@ public class UserDAO {
 				user.setMail(resultSet.getString("mail"));
 			}
 			if (user != null) {
-				System.out.println("User found: " + user.getId());
+				LOG.debug("User found: {}", user.getId());
 			} else {
-				System.out.println("User not found");
+				LOG.debug("User not found");
 			}
 		} catch (SQLException e) {
 			throw new SQLException("Error accessing the DB when" + performedAction, e);
@@ -98,45 +114,55 @@ public class UserDAO {
      * @throws SQLException If an error occurs while accessing the database.
      */
 	public boolean isExistingMail(String mail) throws SQLException {
-		boolean result = false;
-		String performedAction = " finding email";
-		String query = "SELECT * FROM utente WHERE mail = ?;";
-		PreparedStatement preparedStatement = null;
-		ResultSet resultSet = null;
+		return QueryMetrics.record("isExistingMail", () -> {
+			boolean result = false;
+			String performedAction = " finding email";
+			String query = "SELECT * FROM utente WHERE mail = ?;";
+			Connection connection = null;
+			PreparedStatement preparedStatement = null;
+			ResultSet resultSet = null;
 
-		try {
-			mail= mail.toLowerCase();
-			preparedStatement = connection.prepareStatement(query);
-			preparedStatement.setString(1, mail);
-			resultSet = preparedStatement.executeQuery();
+			try {
+				connection = dataSource.getConnection();
+				preparedStatement = connection.prepareStatement(query);
+				preparedStatement.setString(1, mail.toLowerCase());
+				resultSet = preparedStatement.executeQuery();
 
-			while (resultSet.next()) {
-				result = true;
-			}
-			if (result) {
-				System.out.println("mail already exists");
-			} else {
-				System.out.println("mail not found");
-			}
-		} catch (SQLException e) {
-			throw new SQLException("Error accessing the DB when" + performedAction, e);
-		} finally {
-			if (resultSet != null) {
-				try {
-					resultSet.close();
-				} catch (SQLException e) {
-					// Log or handle the exception if necessary
+				while (resultSet.next()) {
+					result = true;
 				}
-			}
-			if (preparedStatement != null) {
-				try {
-					preparedStatement.close();
-				} catch (SQLException e) {
-					// Log or handle the exception if necessary
+				if (result) {
+					LOG.debug("mail already exists");
+				} else {
+					LOG.debug("mail not found");
+				}
+			} catch (SQLException e) {
+				throw new SQLException("Error accessing the DB when" + performedAction, e);
+			} finally {
+				if (resultSet != null) {
+					try {
+						resultSet.close();
+					} catch (SQLException e) {
+						// Log or handle the exception if necessary
+					}
+				}
+				if (preparedStatement != null) {
+					try {
+						preparedStatement.close();
+					} catch (SQLException e) {
+						// Log or handle the exception if necessary
+					}
+				}
+				if (connection != null) {
+					try {
+						connection.close();
+					} catch (SQLException e) {
+						// Log or handle the exception if necessary
+					}
 				}
 			}
-		}
-		return result;
+			return result;
+		}, exists -> exists ? 1 : 0);
 	}
 	
 	/**
@@ -150,44 +176,55 @@ public class UserDAO {
      * @throws SQLException If an error occurs while accessing the database.
      */
 	public boolean isExistingUsername(String nome) throws SQLException {
-		boolean result = false;
-		String performedAction = " finding nome";
-		String query = "SELECT * FROM utente WHERE nome = ?;";
-		PreparedStatement preparedStatement = null;
-		ResultSet resultSet = null;
+		return QueryMetrics.record("isExistingUsername", () -> {
+			boolean result = false;
+			String performedAction = " finding nome";
+			String query = "SELECT * FROM utente WHERE nome = ?;";
+			Connection connection = null;
+			PreparedStatement preparedStatement = null;
+			ResultSet resultSet = null;
 
-		try {
-			preparedStatement = connection.prepareStatement(query);
-			preparedStatement.setString(1, nome);
-			resultSet = preparedStatement.executeQuery();
+			try {
+				connection = dataSource.getConnection();
+				preparedStatement = connection.prepareStatement(query);
+				preparedStatement.setString(1, nome);
+				resultSet = preparedStatement.executeQuery();
 
-			while (resultSet.next()) {
-				result = true;
-			}
-			if (result) {
-				System.out.println("username already exists");
-			} else {
-				System.out.println("username not found");
-			}
-		} catch (SQLException e) {
-			throw new SQLException("Error accessing the DB when" + performedAction, e);
-		} finally {
-			if (resultSet != null) {
-				try {
-					resultSet.close();
-				} catch (SQLException e) {
-					// Log or handle the exception if necessary
+				while (resultSet.next()) {
+					result = true;
 				}
-			}
-			if (preparedStatement != null) {
-				try {
-					preparedStatement.close();
-				} catch (SQLException e) {
-					// Log or handle the exception if necessary
+				if (result) {
+					LOG.debug("username already exists");
+				} else {
+					LOG.debug("username not found");
+				}
+			} catch (SQLException e) {
+				throw new SQLException("Error accessing the DB when" + performedAction, e);
+			} finally {
+				if (resultSet != null) {
+					try {
+						resultSet.close();
+					} catch (SQLException e) {
+						// Log or handle the exception if necessary
+					}
+				}
+				if (preparedStatement != null) {
+					try {
+						preparedStatement.close();
+					} catch (SQLException e) {
+						// Log or handle the exception if necessary
+					}
+				}
+				if (connection != null) {
+					try {
+						connection.close();
+					} catch (SQLException e) {
+						// Log or handle the exception if necessary
+					}
 				}
 			}
-		}
-		return result;
+			return result;
+		}, exists -> exists ? 1 : 0);
 	}
 
 	 /**
@@ -205,45 +242,55 @@ public class UserDAO {
      * @throws SQLException If an error occurs while accessing the database.
      */
 	public int addUser(String nome, String mail, String psw) throws SQLException {
-		String performedAction = "registering a new user in the database";
-		String query = "INSERT INTO utente (nome, mail, psw) VALUES (?, ?, ?);";
-		PreparedStatement preparedStatement = null;
-		int ris=0;
-		if (isExistingUsername(nome)) {
-			ris += 2;
-		} 
-		if (isExistingMail(mail)) {
-			ris += 1;
-		} 
+		return QueryMetrics.record("addUser", () -> {
+			String performedAction = "registering a new user in the database";
+			String query = "INSERT INTO utente (nome, mail, psw) VALUES (?, ?, ?);";
+			Connection connection = null;
+			PreparedStatement preparedStatement = null;
+			int ris=0;
+			if (isExistingUsername(nome)) {
+				ris += 2;
+			} 
+			if (isExistingMail(mail)) {
+				ris += 1;
+			} 
 		
-		if(ris==0){
-			try {
-				mail= mail.toLowerCase();
-				preparedStatement = connection.prepareStatement(query);
-				preparedStatement.setString(1, nome);
-				preparedStatement.setString(2, mail);
-				preparedStatement.setString(3, psw);
-				int rowsAffected = preparedStatement.executeUpdate();
-				if (rowsAffected > 0) {
-					System.out.println("Utente aggiunto");
-					ris = 0;
-				} else {
-					System.out.println("Mail già registrata");
-				}
-			} catch (SQLException e) {
-				throw new SQLException("Error accessing the DB when " + performedAction, e);
-			} finally {
-				if (preparedStatement != null) {
-					try {
-						preparedStatement.close();
-					} catch (SQLException e) {
-						// Log or handle the exception if necessary
+			if(ris==0){
+				try {
+					connection = dataSource.getConnection();
+					preparedStatement = connection.prepareStatement(query);
+					preparedStatement.setString(1, nome);
+					preparedStatement.setString(2, mail.toLowerCase());
+					preparedStatement.setString(3, psw);
+					int rowsAffected = preparedStatement.executeUpdate();
+					if (rowsAffected > 0) {
+						LOG.debug("Utente aggiunto");
+						ris = 0;
+					} else {
+						LOG.debug("Mail già registrata");
+					}
+				} catch (SQLException e) {
+					throw new SQLException("Error accessing the DB when " + performedAction, e);
+				} finally {
+					if (preparedStatement != null) {
+						try {
+							preparedStatement.close();
+						} catch (SQLException e) {
+							// Log or handle the exception if necessary
+						}
+					}
+					if (connection != null) {
+						try {
+							connection.close();
+						} catch (SQLException e) {
+							// Log or handle the exception if necessary
+						}
 					}
-				}
 				
+				}
 			}
-		}
-		return ris;
+			return ris;
+		}, esito -> esito == 0 ? 1 : 0);
 	}
 
 }
@@ -1,42 +1,179 @@
 package it.polimi.tiw.utils;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
 
 import javax.servlet.ServletContext;
 import javax.servlet.UnavailableException;
+import javax.sql.DataSource;
 
 /**
  * @file ConnectionHandler.java
  * @brief This class handles the management of database connections.
  * @class ConnectionHandler
  *
- * This utility class provides methods to establish and close database connections
- * using connection parameters defined in the servlet context.
+ * This utility class creates the application-wide connection pool using the connection
+ * parameters defined in the servlet context, and provides methods to reach it, to
+ * close borrowed connections and to run idempotent reads that survive a dropped
+ * connection.
  */
 public class ConnectionHandler {
+
 	/**
-	 * @brief Establishes a database connection using parameters from the servlet context.
+	 * @interface SqlWork
+	 * @brief A unit of database work run on a borrowed connection.
+	 * @param <T> the type of the result.
+	 */
+	@FunctionalInterface
+	public interface SqlWork<T> {
+		/**
+		 * @brief Runs the work.
+		 * @param connection the connection borrowed for this work.
+		 * @return the result of the work.
+		 * @throws SQLException if there is an error accessing the database.
+		 */
+		T execute(Connection connection) throws SQLException;
+	}
+
+	/// Name of the servlet context attribute holding the connection pool.
+	public static final String POOL_ATTRIBUTE = "connectionPool";
+
+	/**
+	 * @brief Creates the connection pool using parameters from the servlet context.
 	 * @param context the ServletContext containing database connection parameters.
-	 * @return a Connection object to interact with the database.
-	 * @throws UnavailableException if the database driver cannot be loaded or if the connection cannot be established.
+	 * @return a new ConnectionPool, not yet registered in the context.
+	 * @throws UnavailableException if the database driver cannot be loaded or the pool parameters are invalid.
+	 *
+	 * Besides dbDriver, dbUrl, dbUser and dbPassword the optional parameters dbPoolMinSize,
+	 * dbPoolMaxSize, dbPoolBorrowTimeout (ms), dbPoolIdleTimeout (ms) and
+	 * dbPoolValidationTimeout (s) tune the pool, and dbPoolStatementCacheSize sets the number
+	 * of prepared statements cached by each connection.
 	 */
-	public static Connection getConnection(ServletContext context) throws UnavailableException {
-		Connection connection = null;
+	public static ConnectionPool createPool(ServletContext context) throws UnavailableException {
 		try {
 			String driver = context.getInitParameter("dbDriver");
 			String url = context.getInitParameter("dbUrl");
 			String user = context.getInitParameter("dbUser");
 			String password = context.getInitParameter("dbPassword");
 			Class.forName(driver);
-			connection = DriverManager.getConnection(url, user, password);
+			return new ConnectionPool(url, user, password,
+					getIntParameter(context, "dbPoolMinSize", 2),
+					getIntParameter(context, "dbPoolMaxSize", 20),
+					getIntParameter(context, "dbPoolBorrowTimeout", 5000),
+					getIntParameter(context, "dbPoolIdleTimeout", 300000),
+					getIntParameter(context, "dbPoolValidationTimeout", 2),
+					getIntParameter(context, "dbPoolStatementCacheSize", 50));
 		} catch (ClassNotFoundException e) {
 			throw new UnavailableException("Can't load database driver");
-		} catch (SQLException e) {
-			throw new UnavailableException("Couldn't get db connection");
+		} catch (IllegalArgumentException e) {
+			throw new UnavailableException("Invalid connection pool configuration: " + e.getMessage());
 		}
-		return connection;
+	}
+
+	/**
+	 * @brief Gets the application-wide connection pool.
+	 * @param context the ServletContext where the pool has been registered at startup.
+	 * @return the DataSource from which DAOs borrow their connections.
+	 * @throws UnavailableException if the pool has not been created.
+	 */
+	public static DataSource getDataSource(ServletContext context) throws UnavailableException {
+		DataSource dataSource = (DataSource) context.getAttribute(POOL_ATTRIBUTE);
+		if (dataSource == null) {
+			throw new UnavailableException("Couldn't get db connection pool");
+		}
+		return dataSource;
+	}
+
+	/**
+	 * @brief Runs an idempotent read, repeating it once if the connection turns out to be broken.
+	 * @param dataSource the pool from which the connection is borrowed.
+	 * @param work the read to run; it must not modify the database.
+	 * @return the result of the read.
+	 * @throws SQLException if the read fails on a healthy connection or fails twice.
+	 *
+	 * When MySQL drops a connection (e.g. after wait_timeout) the first attempt fails with a
+	 * communication error: the connection is invalidated, so the pool closes it instead of
+	 * reusing it, and the read is repeated on a freshly borrowed connection.
+	 */
+	public static <T> T executeRead(DataSource dataSource, SqlWork<T> work) throws SQLException {
+		for (int attempt = 1;; attempt++) {
+			Connection connection = dataSource.getConnection();
+			try {
+				return work.execute(connection);
+			} catch (SQLException e) {
+				if (attempt > 1 || !isConnectionBroken(e)) {
+					throw e;
+				}
+				if (dataSource instanceof ConnectionPool) {
+					ConnectionPool pool = (ConnectionPool) dataSource;
+					pool.invalidate(connection);
+					pool.countRetry();
+				}
+			} finally {
+				closeConnection(connection);
+			}
+		}
+	}
+
+	/**
+	 * @brief Opens an idempotent read whose result keeps using the connection after this method returns.
+	 * @param dataSource the pool from which the connection is borrowed.
+	 * @param work the read to open; its result takes ownership of the connection and must close it.
+	 * @return the result of the read.
+	 * @throws SQLException if the read fails on a healthy connection or fails twice.
+	 *
+	 * Like executeRead, but the connection is closed only if the work fails: on success it
+	 * is released when the returned object is closed, e.g. after a streamed result set has
+	 * been read to the end.
+	 */
+	public static <T extends AutoCloseable> T openRead(DataSource dataSource, SqlWork<T> work) throws SQLException {
+		for (int attempt = 1;; attempt++) {
+			Connection connection = dataSource.getConnection();
+			try {
+				return work.execute(connection);
+			} catch (SQLException e) {
+				if (attempt > 1 || !isConnectionBroken(e)) {
+					closeConnection(connection);
+					throw e;
+				}
+				if (dataSource instanceof ConnectionPool) {
+					ConnectionPool pool = (ConnectionPool) dataSource;
+					pool.invalidate(connection);
+					pool.countRetry();
+				}
+				closeConnection(connection);
+			} catch (RuntimeException e) {
+				closeConnection(connection);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @brief Tells whether an exception has been caused by a broken connection.
+	 * @param e the exception thrown by a database operation.
+	 * @return true if the exception, or one of its causes, reports a lost connection.
+	 *
+	 * The connection-exception SQL state class "08" and the recoverable and connection
+	 * exception subclasses of JDBC are treated as a lost connection.
+	 */
+	public static boolean isConnectionBroken(SQLException e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLRecoverableException || cause instanceof SQLNonTransientConnectionException
+					|| cause instanceof SQLTransientConnectionException) {
+				return true;
+			}
+			if (cause instanceof SQLException) {
+				String state = ((SQLException) cause).getSQLState();
+				if (state != null && state.startsWith("08")) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -50,4 +187,24 @@ public class ConnectionHandler {
 		}
 	}
 
+	/**
+	 * @brief Reads an optional integer parameter from the servlet context.
+	 * @param context the ServletContext containing the parameter.
+	 * @param name the name of the context parameter.
+	 * @param defaultValue the value used when the parameter is missing.
+	 * @return the value of the parameter.
+	 * @throws IllegalArgumentException if the parameter is not a valid integer.
+	 */
+	public static int getIntParameter(ServletContext context, String name, int defaultValue) {
+		String value = context.getInitParameter(name);
+		if (value == null || value.isBlank()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " is not a number: " + value);
+		}
+	}
+
 }
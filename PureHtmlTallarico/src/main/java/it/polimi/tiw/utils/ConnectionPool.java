@@ -0,0 +1,636 @@
+package it.polimi.tiw.utils;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * @file ConnectionPool.java
+ * @brief This class implements a bounded pool of database connections.
+ * @class ConnectionPool
+ *
+ * The pool is shared by the whole web application: every DAO operation borrows a
+ * connection with getConnection() and gives it back by closing it. At most maxSize
+ * physical connections are open at the same time; a borrower waits up to borrowTimeout
+ * milliseconds for a free one. Idle connections are validated before being handed out
+ * and are closed when they stay unused longer than idleTimeout, down to minSize.
+ *
+ * Every physical connection keeps up to statementCacheSize prepared statements, keyed by
+ * their SQL text: closing a statement prepared through a borrowed connection puts it back
+ * in the cache instead of closing it, so the hottest queries are prepared once per
+ * connection and then reused by every borrower.
+ */
+public class ConnectionPool implements DataSource {
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int minSize;
+	private final int maxSize;
+	private final long borrowTimeout;
+	private final long idleTimeout;
+	private final int validationTimeout;
+	private final int statementCacheSize;
+
+	/// Physical connections ready to be borrowed, most recently returned first.
+	private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+
+	/// One permit for every connection that can still be borrowed.
+	private final Semaphore permits;
+
+	/// Number of physical connections currently open (idle or borrowed).
+	private final AtomicInteger open = new AtomicInteger();
+
+	/// Connections found dead on borrow or invalidated after a failure.
+	private final AtomicLong brokenCount = new AtomicLong();
+
+	/// Borrows that had to replace at least one dead connection.
+	private final AtomicLong reconnectCount = new AtomicLong();
+
+	/// Read operations repeated on a fresh connection.
+	private final AtomicLong retryCount = new AtomicLong();
+
+	/// Statements found in the cache of their connection.
+	private final AtomicLong statementHitCount = new AtomicLong();
+
+	/// Statements prepared because the cache of their connection did not hold them.
+	private final AtomicLong statementMissCount = new AtomicLong();
+
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed = false;
+
+	/**
+	 * @brief Creates a pool and opens its first minSize connections.
+	 * @param url the JDBC url of the database.
+	 * @param user the database user.
+	 * @param password the password of the database user.
+	 * @param minSize the number of connections kept open even when idle.
+	 * @param maxSize the maximum number of connections open at the same time.
+	 * @param borrowTimeout the milliseconds a borrower waits for a free connection.
+	 * @param idleTimeout the milliseconds after which an idle connection is closed.
+	 * @param validationTimeout the seconds allowed to validate a connection on borrow.
+	 * @param statementCacheSize the prepared statements cached by each connection, 0 to disable the cache.
+	 */
+	public ConnectionPool(String url, String user, String password, int minSize, int maxSize, long borrowTimeout,
+			long idleTimeout, int validationTimeout, int statementCacheSize) {
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+		}
+		if (statementCacheSize < 0) {
+			throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+		}
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.borrowTimeout = borrowTimeout;
+		this.idleTimeout = idleTimeout;
+		this.validationTimeout = validationTimeout;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		for (int i = 0; i < minSize; i++) {
+			try {
+				idle.addLast(new PooledEntry(openPhysical()));
+			} catch (SQLException e) {
+				// the database may come up later, connections are then opened on demand
+				break;
+			}
+		}
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "ConnectionPool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1000, idleTimeout / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @brief Borrows a connection from the pool.
+	 * @return a connection that goes back to the pool when closed.
+	 * @throws SQLException if the pool is closed, no connection gets free within the borrow
+	 * timeout or a new connection cannot be opened.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		try {
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timeout waiting for a database connection after " + borrowTimeout + " ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+
+		boolean replacing = false;
+		try {
+			PooledEntry entry;
+			while ((entry = idle.pollFirst()) != null) {
+				if (isValid(entry.connection)) {
+					break;
+				}
+				brokenCount.incrementAndGet();
+				replacing = true;
+				discard(entry.connection);
+			}
+			if (entry == null) {
+				entry = new PooledEntry(openPhysical());
+			}
+			if (replacing) {
+				reconnectCount.incrementAndGet();
+			}
+			return entry.lease();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Not supported: the pool always uses the configured credentials.
+	 * @throws SQLFeatureNotSupportedException always.
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("ConnectionPool uses the configured credentials");
+	}
+
+	/**
+	 * @brief Marks a borrowed connection as broken.
+	 * @param connection a connection obtained from this pool.
+	 *
+	 * The physical connection is closed instead of being reused when the borrower
+	 * closes it. Connections that do not come from this pool are ignored.
+	 */
+	public void invalidate(Connection connection) {
+		if (connection != null && Proxy.isProxyClass(connection.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(connection);
+			if (handler instanceof LeaseHandler && ((LeaseHandler) handler).entry.pool() == this) {
+				((LeaseHandler) handler).entry.broken = true;
+				brokenCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @brief Records that a read operation has been repeated on a fresh connection.
+	 */
+	public void countRetry() {
+		retryCount.incrementAndGet();
+	}
+
+	/**
+	 * @brief Closes all idle connections and refuses further borrows.
+	 *
+	 * Connections still borrowed are closed physically when they are given back.
+	 */
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		PooledEntry entry;
+		while ((entry = idle.pollFirst()) != null) {
+			discard(entry.connection);
+		}
+	}
+
+	/**
+	 * @brief Gets the number of physical connections currently open.
+	 * @return the number of open connections.
+	 */
+	public int getOpenCount() {
+		return open.get();
+	}
+
+	/**
+	 * @brief Gets the number of open connections that are not borrowed.
+	 * @return the number of idle connections.
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @brief Gets the number of connections currently borrowed.
+	 * @return the number of borrowed connections.
+	 */
+	public int getActiveCount() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * @brief Gets the number of connections found dead on borrow or invalidated after a failure.
+	 * @return the number of broken connections detected so far.
+	 */
+	public long getBrokenCount() {
+		return brokenCount.get();
+	}
+
+	/**
+	 * @brief Gets the number of borrows that had to replace a dead connection.
+	 * @return the number of reconnections so far.
+	 */
+	public long getReconnectCount() {
+		return reconnectCount.get();
+	}
+
+	/**
+	 * @brief Gets the number of read operations repeated on a fresh connection.
+	 * @return the number of retries so far.
+	 */
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * @brief Gets the number of statements found in the cache of their connection.
+	 * @return the number of cache hits so far.
+	 */
+	public long getStatementHitCount() {
+		return statementHitCount.get();
+	}
+
+	/**
+	 * @brief Gets the number of statements prepared because they were not in the cache.
+	 * @return the number of cache misses so far.
+	 */
+	public long getStatementMissCount() {
+		return statementMissCount.get();
+	}
+
+	/**
+	 * @brief Gets the maximum number of connections of the pool.
+	 * @return the maximum pool size.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	private Connection openPhysical() throws SQLException {
+		Connection connection = DriverManager.getConnection(url, user, password);
+		open.incrementAndGet();
+		return connection;
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return !connection.isClosed() && connection.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(Connection connection) {
+		open.decrementAndGet();
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// the connection is being thrown away anyway
+		}
+	}
+
+	/**
+	 * @brief Gives a borrowed connection back to the pool.
+	 *
+	 * Pending transactions are rolled back and auto-commit is restored, so the next
+	 * borrower always starts from the default state.
+	 */
+	private void giveBack(PooledEntry entry) {
+		try {
+			Connection connection = entry.connection;
+			boolean reusable = !closed && !entry.broken && !connection.isClosed();
+			if (reusable) {
+				try {
+					if (!connection.getAutoCommit()) {
+						connection.rollback();
+						connection.setAutoCommit(true);
+					}
+				} catch (SQLException e) {
+					reusable = false;
+				}
+			}
+			if (reusable) {
+				entry.lastUsed = System.currentTimeMillis();
+				idle.addFirst(entry);
+			} else {
+				discard(connection);
+			}
+		} catch (SQLException e) {
+			discard(entry.connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * @brief Closes the connections that stayed idle longer than idleTimeout.
+	 *
+	 * The least recently used connections sit at the tail of the deque, so eviction
+	 * starts from there and stops as soon as only minSize connections are left open.
+	 */
+	private void evictIdle() {
+		long limit = System.currentTimeMillis() - idleTimeout;
+		Iterator<PooledEntry> iterator = idle.descendingIterator();
+		while (iterator.hasNext() && open.get() > minSize) {
+			PooledEntry entry = iterator.next();
+			if (entry.lastUsed < limit && idle.removeLastOccurrence(entry)) {
+				discard(entry.connection);
+			}
+		}
+	}
+
+	/**
+	 * @class PooledEntry
+	 * @brief A physical connection together with its pool bookkeeping.
+	 */
+	private class PooledEntry {
+		private final Connection connection;
+		private long lastUsed = System.currentTimeMillis();
+		private volatile boolean broken = false;
+
+		/// Prepared statements not in use, least recently used first; only the borrower touches it.
+		private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= statementCacheSize) {
+					return false;
+				}
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+
+		private PooledEntry(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * @brief Takes a statement from the cache, or prepares it.
+		 * @param lease the borrowed connection the statement is prepared through.
+		 * @param sql the SQL text of the statement.
+		 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS, Statement.NO_GENERATED_KEYS, or -1 if not given.
+		 * @return the statement, which goes back to the cache when closed.
+		 * @throws SQLException if the statement cannot be prepared.
+		 *
+		 * A statement is out of the cache while it is in use, so preparing the same SQL
+		 * twice before closing it gives two distinct statements.
+		 */
+		private PreparedStatement prepare(Connection lease, String sql, int autoGeneratedKeys) throws SQLException {
+			String key = autoGeneratedKeys + ":" + sql;
+			PreparedStatement statement = statements.remove(key);
+			if (statement != null) {
+				statementHitCount.incrementAndGet();
+			} else {
+				statementMissCount.incrementAndGet();
+				statement = autoGeneratedKeys < 0 ? connection.prepareStatement(sql)
+						: connection.prepareStatement(sql, autoGeneratedKeys);
+			}
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, new StatementHandler(this, lease, key, statement));
+		}
+
+		/**
+		 * @brief Puts a statement back in the cache, or closes it if it cannot be reused.
+		 */
+		private void release(String key, PreparedStatement statement, boolean reusable) {
+			if (!reusable || broken || statementCacheSize == 0 || statements.containsKey(key)) {
+				closeQuietly(statement);
+				return;
+			}
+			try {
+				statement.clearParameters();
+				statement.clearBatch();
+				statement.clearWarnings();
+				statements.put(key, statement);
+			} catch (SQLException e) {
+				closeQuietly(statement);
+			}
+		}
+
+		private ConnectionPool pool() {
+			return ConnectionPool.this;
+		}
+
+		/**
+		 * @brief Wraps the physical connection so that close() gives it back to the pool.
+		 * @return the connection handed to the borrower.
+		 */
+		private Connection lease() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new LeaseHandler(this));
+		}
+	}
+
+	/**
+	 * @class LeaseHandler
+	 * @brief Forwards the calls of a borrower to the physical connection until it is closed.
+	 */
+	private class LeaseHandler implements InvocationHandler {
+		private final PooledEntry entry;
+		private boolean released = false;
+
+		private LeaseHandler(PooledEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				synchronized (this) {
+					if (!released) {
+						released = true;
+						giveBack(entry);
+					}
+				}
+				return null;
+			case "isClosed":
+				return released || entry.connection.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + entry.connection;
+			default:
+				if (released) {
+					throw new SQLException("Connection has already been returned to the pool");
+				}
+				if (statementCacheSize > 0 && method.getName().equals("prepareStatement")
+						&& (args.length == 1 || args.length == 2 && method.getParameterTypes()[1] == int.class)) {
+					return entry.prepare((Connection) proxy, (String) args[0], args.length == 1 ? -1 : (Integer) args[1]);
+				}
+				try {
+					return method.invoke(entry.connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @class StatementHandler
+	 * @brief Forwards the calls of a borrower to a cached statement, giving it back to the cache on close.
+	 *
+	 * The result sets still open are closed with the statement, as JDBC requires. A statement
+	 * whose options other than the fetch size have been changed is closed instead of cached.
+	 */
+	private class StatementHandler implements InvocationHandler {
+		private final PooledEntry entry;
+		private final Connection lease;
+		private final String key;
+		private final PreparedStatement statement;
+		private final ArrayList<ResultSet> resultSets = new ArrayList<>();
+		private boolean reusable = true;
+		private boolean fetchSizeChanged = false;
+		private boolean closed = false;
+
+		private StatementHandler(PooledEntry entry, Connection lease, String key, PreparedStatement statement) {
+			this.entry = entry;
+			this.lease = lease;
+			this.key = key;
+			this.statement = statement;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					for (ResultSet resultSet : resultSets) {
+						try {
+							resultSet.close();
+						} catch (SQLException e) {
+							reusable = false;
+						}
+					}
+					if (fetchSizeChanged) {
+						try {
+							statement.setFetchSize(0);
+						} catch (SQLException e) {
+							reusable = false;
+						}
+					}
+					// once the connection is given back its cache belongs to the next borrower
+					entry.release(key, statement, reusable && !lease.isClosed());
+				}
+				return null;
+			case "isClosed":
+				return closed || statement.isClosed();
+			case "getConnection":
+				return lease;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Cached" + statement;
+			case "setFetchSize":
+				fetchSizeChanged = true;
+				break;
+			case "setMaxRows":
+			case "setLargeMaxRows":
+			case "setMaxFieldSize":
+			case "setQueryTimeout":
+			case "setFetchDirection":
+			case "setEscapeProcessing":
+			case "setCursorName":
+			case "setPoolable":
+			case "closeOnCompletion":
+				reusable = false;
+				break;
+			default:
+				break;
+			}
+			if (closed) {
+				throw new SQLException("Statement has already been closed");
+			}
+			try {
+				Object result = method.invoke(statement, args);
+				if (result instanceof ResultSet) {
+					resultSets.add((ResultSet) result);
+				}
+				return result;
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			// the statement is being thrown away anyway
+		}
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("ConnectionPool is not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+}
@@ -0,0 +1,45 @@
+package it.polimi.tiw.utils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.UnavailableException;
+
+/**
+ * @file ConnectionPoolListener.java
+ * @brief This listener owns the lifecycle of the application-wide connection pool.
+ * @class ConnectionPoolListener
+ *
+ * The pool is created when the web application starts, registered in the servlet
+ * context under ConnectionHandler.POOL_ATTRIBUTE and closed when the application stops.
+ */
+public class ConnectionPoolListener implements ServletContextListener {
+
+	/**
+	 * @brief Creates the connection pool and registers it in the servlet context.
+	 * @param event the event carrying the ServletContext being initialized.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		try {
+			context.setAttribute(ConnectionHandler.POOL_ATTRIBUTE, ConnectionHandler.createPool(context));
+		} catch (UnavailableException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @brief Closes the connection pool.
+	 * @param event the event carrying the ServletContext being destroyed.
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Object pool = context.getAttribute(ConnectionHandler.POOL_ATTRIBUTE);
+		if (pool instanceof ConnectionPool) {
+			((ConnectionPool) pool).close();
+		}
+		context.removeAttribute(ConnectionHandler.POOL_ATTRIBUTE);
+	}
+}
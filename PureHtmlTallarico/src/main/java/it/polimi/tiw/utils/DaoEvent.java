@@ -0,0 +1,44 @@
+package it.polimi.tiw.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * @file DaoEvent.java
+ * @brief This Flight Recorder event records a DAO operation.
+ * @class DaoEvent
+ *
+ * Emitted by QueryMetrics.record for every public DAO method. Like the other events of
+ * the application it is disabled unless a recording enables it, e.g. with the nas.jfc
+ * settings file.
+ */
+@Name("it.polimi.tiw.DaoOperation")
+@Label("DAO Operation")
+@Category({ "NAS", "Database" })
+@Description("A FileDAO or UserDAO method")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("0 ms")
+class DaoEvent extends Event {
+	@Label("Query")
+	@Description("The name of the DAO method")
+	String query;
+
+	@Label("User")
+	@Description("The ID of the user of the request, 0 if not logged in")
+	int user;
+
+	@Label("Endpoint")
+	@Description("The servlet path of the request, empty outside a request")
+	String endpoint;
+
+	@Label("Rows")
+	@Description("Rows read or written, -1 if the operation failed")
+	int rows;
+}
@@ -0,0 +1,302 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @file DaoExecutor.java
+ * @brief This class serves requests asynchronously, running their DAO calls and rendering off the container threads.
+ * @class DaoExecutor
+ *
+ * A servlet checks the session and the parameters of a request, then hands the rest,
+ * reading the database and writing the page, to execute: the request is put in async
+ * mode and the container thread goes back to the connector while a thread of the
+ * executor does the blocking work and completes the response. At most threads requests
+ * are served at the same time and at most queue more wait for a thread; beyond that the
+ * request is rejected with 503 instead of piling up.
+ *
+ * On a JVM with virtual threads (Java 21 or later), found by reflection since the
+ * application is built for Java 17, every request runs on its own virtual thread and the
+ * limits are enforced with semaphores; otherwise it runs on a pool of platform threads.
+ * The timing of the request (see RequestTiming) follows it on the thread of the executor,
+ * so RequestTimingFilter records it when the response is complete.
+ */
+public class DaoExecutor {
+	private static final Log LOG = Log.getLog(DaoExecutor.class);
+
+	/// Name of the servlet context attribute holding the executor.
+	public static final String ATTRIBUTE = "daoExecutor";
+
+	private final ExecutorService executor;
+	/// Requests being served or waiting, only with virtual threads.
+	private final Semaphore admitted;
+	/// Requests being served, only with virtual threads.
+	private final Semaphore running;
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private volatile boolean closed = false;
+
+	/**
+	 * @brief Creates the executor.
+	 * @param threads the maximum number of requests served at the same time.
+	 * @param queue the maximum number of requests waiting for a thread.
+	 * @param virtual true to use virtual threads when the JVM supports them.
+	 */
+	public DaoExecutor(int threads, int queue, boolean virtual) {
+		ExecutorService virtualExecutor = virtual ? newVirtualExecutor() : null;
+		if (virtualExecutor != null) {
+			this.executor = virtualExecutor;
+			this.admitted = new Semaphore(threads + queue);
+			this.running = new Semaphore(threads);
+		} else {
+			AtomicInteger count = new AtomicInteger();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					queue > 0 ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>(), r -> {
+						Thread thread = new Thread(r, "DaoExecutor-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			pool.allowCoreThreadTimeOut(true);
+			this.executor = pool;
+			this.admitted = null;
+			this.running = null;
+		}
+		LOG.info("DAO executor started: {} {} threads", threads, virtualExecutor != null ? "virtual" : "platform");
+	}
+
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// before Java 21
+			return null;
+		}
+	}
+
+	/**
+	 * @brief Gets the executor of the web application.
+	 * @param context the ServletContext where the executor has been registered at startup.
+	 * @return the executor, created by DaoExecutorListener.
+	 * @throws UnavailableException if the executor has not been created.
+	 */
+	public static DaoExecutor getInstance(ServletContext context) throws UnavailableException {
+		Object executor = context.getAttribute(ATTRIBUTE);
+		if (!(executor instanceof DaoExecutor)) {
+			throw new UnavailableException("Couldn't get DAO executor");
+		}
+		return (DaoExecutor) executor;
+	}
+
+	/**
+	 * @brief Serves the rest of a request on a thread of the executor.
+	 *
+	 * The servlet must be declared with async-supported, as the filters in front of it,
+	 * and must not use the request or the response after calling this method. The work
+	 * runs while the container keeps the request open and the response is completed when
+	 * it returns; if it fails, a 500 error is sent unless the response is already committed.
+	 *
+	 * @param request the request being served.
+	 * @param response its response.
+	 * @param work the DAO calls and the rendering of the page.
+	 * @throws IOException never, a rejected request being answered with 503.
+	 */
+	public void execute(HttpServletRequest request, HttpServletResponse response, Work work) throws IOException {
+		AsyncContext async = request.startAsync(request, response);
+		// as when served synchronously, the request lasts as long as its work; close
+		// completes the requests still waiting, so none is left open
+		async.setTimeout(0);
+		RequestTiming timing = RequestTiming.current();
+		if (timing != null) {
+			timing.hold();
+		}
+		Task task = new Task(async, response, request.getServletPath(), timing, work);
+		waiting.incrementAndGet();
+		try {
+			submit(task);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("DAO executor saturated, rejecting {}", task.path);
+			task.reject();
+		}
+	}
+
+	private void submit(Task task) {
+		if (admitted == null) {
+			executor.execute(task);
+			return;
+		}
+		if (!admitted.tryAcquire()) {
+			throw new RejectedExecutionException("Too many requests waiting");
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					running.acquireUninterruptibly();
+					try {
+						task.run();
+					} finally {
+						running.release();
+					}
+				} finally {
+					admitted.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			admitted.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Stops the executor, interrupting the requests being served.
+	 *
+	 * The requests still waiting for a thread are answered with 503 and completed.
+	 */
+	public void close() {
+		closed = true;
+		for (Runnable pending : executor.shutdownNow()) {
+			if (pending instanceof Task) {
+				((Task) pending).reject();
+			}
+		}
+	}
+
+	/**
+	 * @brief Tells whether the requests run on virtual threads.
+	 * @return true if the JVM supports virtual threads and they have not been disabled.
+	 */
+	public boolean isVirtual() {
+		return admitted != null;
+	}
+
+	/**
+	 * @brief Gets the number of requests being served.
+	 * @return the requests running on a thread of the executor.
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * @brief Gets the number of requests waiting for a thread.
+	 * @return the requests submitted and not started yet.
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	/**
+	 * @brief Gets the number of requests rejected so far.
+	 * @return the requests answered with 503 because the executor was saturated or closed.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @class Task
+	 * @brief A request handed to the executor, with what is needed to serve or reject it.
+	 */
+	private class Task implements Runnable {
+		private final AsyncContext async;
+		private final HttpServletResponse response;
+		private final String path;
+		private final RequestTiming timing;
+		private final Work work;
+
+		private Task(AsyncContext async, HttpServletResponse response, String path, RequestTiming timing, Work work) {
+			this.async = async;
+			this.response = response;
+			this.path = path;
+			this.timing = timing;
+			this.work = work;
+		}
+
+		@Override
+		public void run() {
+			if (closed) {
+				// a virtual thread started before close, still waiting for its turn
+				reject();
+				return;
+			}
+			waiting.decrementAndGet();
+			active.incrementAndGet();
+			if (timing != null) {
+				timing.attach();
+			}
+			boolean failed = true;
+			try {
+				work.run();
+				failed = false;
+			} catch (IOException | ServletException | RuntimeException e) {
+				LOG.warn("Async request {} failed", path, e);
+				if (!response.isCommitted()) {
+					try {
+						response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Errore!");
+					} catch (IOException | IllegalStateException ignored) {
+						// the client is gone
+					}
+				}
+			} finally {
+				RequestTiming.stop();
+				active.decrementAndGet();
+				// before completing, since the container may recycle the request afterwards
+				if (timing != null) {
+					timing.release(failed);
+				}
+				async.complete();
+			}
+		}
+
+		/**
+		 * @brief Answers the request with 503 without serving it.
+		 */
+		private void reject() {
+			waiting.decrementAndGet();
+			rejectedCount.incrementAndGet();
+			if (timing != null) {
+				// recorded by whichever thread releases it last
+				timing.release(false);
+			}
+			try {
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server occupato, riprova.");
+			} catch (IOException | IllegalStateException e) {
+				LOG.warn("Rejected request {} could not be answered", path);
+			} finally {
+				async.complete();
+			}
+		}
+	}
+
+	/**
+	 * @class Work
+	 * @brief The part of a request served on a thread of the executor.
+	 */
+	@FunctionalInterface
+	public interface Work {
+		/**
+		 * @brief Reads the database and writes the response.
+		 * @throws IOException if an I/O error occurs while writing the response.
+		 * @throws ServletException if a servlet-related error occurs.
+		 */
+		void run() throws IOException, ServletException;
+	}
+}
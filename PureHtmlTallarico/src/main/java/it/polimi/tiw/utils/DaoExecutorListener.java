@@ -0,0 +1,48 @@
+package it.polimi.tiw.utils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * @file DaoExecutorListener.java
+ * @brief This listener owns the lifecycle of the executor serving the asynchronous requests.
+ * @class DaoExecutorListener
+ *
+ * The optional daoExecutorThreads (requests served at the same time, default 20) and
+ * daoExecutorQueue (requests waiting, default 200) context parameters size the executor;
+ * more threads than connections in the pool only wait for a connection. Virtual threads
+ * are used when the JVM supports them, unless daoExecutorVirtual is false.
+ */
+public class DaoExecutorListener implements ServletContextListener {
+
+	/**
+	 * @brief Starts the executor and registers it in the servlet context.
+	 * @param event the event carrying the ServletContext being initialized.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		int threads = ConnectionHandler.getIntParameter(context, "daoExecutorThreads", 20);
+		int queue = ConnectionHandler.getIntParameter(context, "daoExecutorQueue", 200);
+		if (threads <= 0 || queue < 0) {
+			throw new IllegalArgumentException("daoExecutorThreads must be positive and daoExecutorQueue not negative");
+		}
+		boolean virtual = !"false".equalsIgnoreCase(context.getInitParameter("daoExecutorVirtual"));
+		context.setAttribute(DaoExecutor.ATTRIBUTE, new DaoExecutor(threads, queue, virtual));
+	}
+
+	/**
+	 * @brief Stops the executor.
+	 * @param event the event carrying the ServletContext being destroyed.
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Object executor = context.getAttribute(DaoExecutor.ATTRIBUTE);
+		if (executor instanceof DaoExecutor) {
+			((DaoExecutor) executor).close();
+		}
+		context.removeAttribute(DaoExecutor.ATTRIBUTE);
+	}
+}
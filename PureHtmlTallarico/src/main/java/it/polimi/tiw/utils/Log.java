@@ -0,0 +1,429 @@
+package it.polimi.tiw.utils;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @file Log.java
+ * @brief This class is the leveled, asynchronous logger of the application.
+ * @class Log
+ *
+ * Request threads never write to stdout: a message is put in a bounded ring buffer and a
+ * single daemon thread formats it and writes it out. A message whose level is disabled for
+ * its class costs one comparison, since arguments are only turned into text by the
+ * logging thread, replacing the {} placeholders of the message in order. Arguments must
+ * therefore not be modified after being logged. When the buffer is full messages are
+ * dropped and counted instead of making the request wait.
+ *
+ * Each class gets its logger with getLog. The level of a logger is the one configured
+ * for the longest prefix of its class name (e.g. "it.polimi.tiw.dao"), or the default
+ * level; configure can change it at any time.
+ */
+public class Log {
+
+	/**
+	 * @enum Level
+	 * @brief The levels of the messages, from the most to the least severe.
+	 */
+	public enum Level {
+		ERROR, WARN, INFO, DEBUG
+	}
+
+	/// Capacity of the ring buffer used until configure is called.
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+			.withZone(ZoneId.systemDefault());
+
+	/// The loggers created so far, by class name.
+	private static final Map<String, Log> loggers = new ConcurrentHashMap<>();
+
+	private static volatile Level defaultLevel = Level.INFO;
+	private static volatile Map<String, Level> levels = Map.of();
+	private static volatile RingBuffer buffer = new RingBuffer(DEFAULT_BUFFER_SIZE);
+
+	/// Messages dropped because the buffer was full, and how many of them have been reported.
+	private static final AtomicLong dropped = new AtomicLong();
+	private static final AtomicLong reported = new AtomicLong();
+
+	private final String name;
+	private final String shortName;
+	private volatile int level;
+
+	private Log(String name) {
+		this.name = name;
+		this.shortName = name.substring(name.lastIndexOf('.') + 1);
+		this.level = resolve(name).ordinal();
+	}
+
+	/**
+	 * @brief Gets the logger of a class.
+	 * @param type the class logging the messages.
+	 * @return the logger, shared by all the instances of the class.
+	 */
+	public static Log getLog(Class<?> type) {
+		return loggers.computeIfAbsent(type.getName(), Log::new);
+	}
+
+	/**
+	 * @brief Sets the levels of the loggers and the size of the ring buffer.
+	 * @param defaultLevel the level of the classes not matched by levels.
+	 * @param levels the levels of classes or packages, by class name prefix.
+	 * @param bufferSize the maximum number of messages waiting to be written.
+	 *
+	 * Loggers already created take the new levels at once. Changing the size of the
+	 * buffer replaces it: the messages still in the old one are written first.
+	 */
+	public static synchronized void configure(Level defaultLevel, Map<String, Level> levels, int bufferSize) {
+		Log.defaultLevel = defaultLevel;
+		Log.levels = Map.copyOf(levels);
+		for (Log log : loggers.values()) {
+			log.level = resolve(log.name).ordinal();
+		}
+		if (bufferSize != buffer.capacity()) {
+			RingBuffer old = buffer;
+			buffer = new RingBuffer(bufferSize);
+			old.shutdown();
+		}
+	}
+
+	/**
+	 * @brief Parses the per-class levels of a configuration string.
+	 * @param value comma separated prefix=LEVEL pairs, e.g. "it.polimi.tiw.dao=DEBUG,it.polimi.tiw.utils=WARN".
+	 * @return the levels by class name prefix.
+	 * @throws IllegalArgumentException if a pair or a level is not valid.
+	 */
+	public static Map<String, Level> parseLevels(String value) {
+		Map<String, Level> parsed = new ConcurrentHashMap<>();
+		if (value == null || value.isBlank()) {
+			return parsed;
+		}
+		for (String pair : value.split(",")) {
+			int equals = pair.indexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException("Invalid log level: " + pair.trim());
+			}
+			parsed.put(pair.substring(0, equals).trim(), parseLevel(pair.substring(equals + 1)));
+		}
+		return parsed;
+	}
+
+	/**
+	 * @brief Parses a level name.
+	 * @param value the name of the level, in any case.
+	 * @return the level.
+	 * @throws IllegalArgumentException if the name is not a level.
+	 */
+	public static Level parseLevel(String value) {
+		return Level.valueOf(value.trim().toUpperCase());
+	}
+
+	/**
+	 * @brief Writes the messages still in the buffer and stops the logging thread.
+	 *
+	 * Messages logged afterwards start a new logging thread.
+	 */
+	public static synchronized void shutdown() {
+		RingBuffer old = buffer;
+		buffer = new RingBuffer(old.capacity());
+		old.shutdown();
+	}
+
+	/**
+	 * @brief Gets the number of messages dropped because the buffer was full.
+	 * @return the number of messages dropped so far.
+	 */
+	public static long getDroppedCount() {
+		return dropped.get();
+	}
+
+	private static Level resolve(String name) {
+		Level resolved = defaultLevel;
+		int longest = -1;
+		for (Map.Entry<String, Level> entry : levels.entrySet()) {
+			String prefix = entry.getKey();
+			if (prefix.length() > longest && (name.equals(prefix) || name.startsWith(prefix + "."))) {
+				resolved = entry.getValue();
+				longest = prefix.length();
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * @brief Tells whether messages of a level are written.
+	 * @param messageLevel the level of the message.
+	 * @return true if the level is enabled for the class of this logger.
+	 */
+	public boolean isEnabled(Level messageLevel) {
+		return messageLevel.ordinal() <= level;
+	}
+
+	/**
+	 * @brief Tells whether debug messages are written.
+	 * @return true if the DEBUG level is enabled for the class of this logger.
+	 */
+	public boolean isDebugEnabled() {
+		return Level.DEBUG.ordinal() <= level;
+	}
+
+	/**
+	 * @brief Logs an error with its stack trace.
+	 * @param message the message.
+	 * @param error the exception that caused the error.
+	 */
+	public void error(String message, Throwable error) {
+		if (Level.ERROR.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.ERROR, message, null, error));
+		}
+	}
+
+	/**
+	 * @brief Logs an error.
+	 * @param message the message, with a {} placeholder for each argument.
+	 * @param args the arguments of the message; a trailing exception is logged with its stack trace.
+	 */
+	public void error(String message, Object... args) {
+		if (Level.ERROR.ordinal() <= level) {
+			buffer.offer(event(Level.ERROR, message, args));
+		}
+	}
+
+	/**
+	 * @brief Logs a warning with its stack trace.
+	 * @param message the message.
+	 * @param error the exception that caused the warning.
+	 */
+	public void warn(String message, Throwable error) {
+		if (Level.WARN.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.WARN, message, null, error));
+		}
+	}
+
+	/**
+	 * @brief Logs a warning.
+	 * @param message the message, with a {} placeholder for each argument.
+	 * @param args the arguments of the message; a trailing exception is logged with its stack trace.
+	 */
+	public void warn(String message, Object... args) {
+		if (Level.WARN.ordinal() <= level) {
+			buffer.offer(event(Level.WARN, message, args));
+		}
+	}
+
+	private Event event(Level level, String message, Object[] args) {
+		int last = args.length - 1;
+		if (last >= 0 && args[last] instanceof Throwable) {
+			return new Event(this, level, message, Arrays.copyOf(args, last), (Throwable) args[last]);
+		}
+		return new Event(this, level, message, args, null);
+	}
+
+	/**
+	 * @brief Logs an information message; the overloads with arguments allocate nothing when INFO is disabled.
+	 * @param message the message, with a {} placeholder for each argument.
+	 */
+	public void info(String message) {
+		if (Level.INFO.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.INFO, message, null, null));
+		}
+	}
+
+	public void info(String message, Object arg) {
+		if (Level.INFO.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.INFO, message, new Object[] { arg }, null));
+		}
+	}
+
+	public void info(String message, Object arg1, Object arg2) {
+		if (Level.INFO.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.INFO, message, new Object[] { arg1, arg2 }, null));
+		}
+	}
+
+	/**
+	 * @brief Logs a debug message; the overloads with arguments allocate nothing when DEBUG is disabled.
+	 * @param message the message, with a {} placeholder for each argument.
+	 */
+	public void debug(String message) {
+		if (Level.DEBUG.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.DEBUG, message, null, null));
+		}
+	}
+
+	public void debug(String message, Object arg) {
+		if (Level.DEBUG.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.DEBUG, message, new Object[] { arg }, null));
+		}
+	}
+
+	public void debug(String message, Object arg1, Object arg2) {
+		if (Level.DEBUG.ordinal() <= level) {
+			buffer.offer(new Event(this, Level.DEBUG, message, new Object[] { arg1, arg2 }, null));
+		}
+	}
+
+	/**
+	 * @class Event
+	 * @brief A message waiting in the ring buffer, with the time and thread that logged it.
+	 */
+	private static final class Event {
+		private final Log log;
+		private final Level level;
+		private final String message;
+		private final Object[] args;
+		private final Throwable error;
+		private final long time = System.currentTimeMillis();
+		private final String thread = Thread.currentThread().getName();
+
+		private Event(Log log, Level level, String message, Object[] args, Throwable error) {
+			this.log = log;
+			this.level = level;
+			this.message = message;
+			this.args = args;
+			this.error = error;
+		}
+
+		private void write(PrintWriter out) {
+			out.append(TIMESTAMP.format(Instant.ofEpochMilli(time))).append(' ');
+			out.append(level.name());
+			for (int i = level.name().length(); i < 6; i++) {
+				out.append(' ');
+			}
+			out.append('[').append(thread).append("] ").append(log.shortName).append(" - ");
+			int arg = 0;
+			int start = 0;
+			int placeholder;
+			while (args != null && arg < args.length && (placeholder = message.indexOf("{}", start)) >= 0) {
+				out.append(message, start, placeholder).append(String.valueOf(args[arg++]));
+				start = placeholder + 2;
+			}
+			out.append(message, start, message.length()).append(System.lineSeparator());
+			if (error != null) {
+				error.printStackTrace(out);
+			}
+		}
+	}
+
+	/**
+	 * @class RingBuffer
+	 * @brief A bounded multi-producer, single-consumer queue of events, drained by its own thread.
+	 *
+	 * Producers claim a sequence number with a compare-and-set and then publish the event
+	 * in the slot of that number; the consumer takes the slots in sequence order, waiting
+	 * for a claimed slot to be published. The logging thread starts with the first event.
+	 */
+	private static final class RingBuffer implements Runnable {
+		private static final long IDLE_PARK_NANOS = 1_000_000;
+
+		private final AtomicReferenceArray<Event> slots;
+		private final int mask;
+		private final AtomicLong tail = new AtomicLong();
+		private volatile long head = 0;
+		private volatile boolean running = true;
+		private volatile Thread consumer;
+
+		private RingBuffer(int capacity) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException("Invalid log buffer size: " + capacity);
+			}
+			// a power of two, so that a sequence number is turned into a slot with a mask
+			int size = Integer.highestOneBit(capacity);
+			size = size < capacity ? size << 1 : size;
+			this.slots = new AtomicReferenceArray<>(size);
+			this.mask = size - 1;
+		}
+
+		private int capacity() {
+			return slots.length();
+		}
+
+		private void offer(Event event) {
+			long sequence;
+			do {
+				sequence = tail.get();
+				if (sequence - head >= slots.length() || !running) {
+					dropped.incrementAndGet();
+					return;
+				}
+			} while (!tail.compareAndSet(sequence, sequence + 1));
+			slots.set((int) sequence & mask, event);
+			if (consumer == null) {
+				start();
+			}
+		}
+
+		private synchronized void start() {
+			if (consumer == null && running) {
+				Thread thread = new Thread(this, "AsyncLog");
+				thread.setDaemon(true);
+				consumer = thread;
+				thread.start();
+			}
+		}
+
+		/**
+		 * @brief Stops taking events and waits for the logging thread to write those already taken.
+		 */
+		private void shutdown() {
+			running = false;
+			Thread thread;
+			synchronized (this) {
+				thread = consumer;
+			}
+			if (thread != null) {
+				LockSupport.unpark(thread);
+				try {
+					thread.join(5000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+			PrintWriter out = new PrintWriter(writer, false);
+			while (true) {
+				long sequence = head;
+				Event event = slots.get((int) sequence & mask);
+				if (event != null) {
+					slots.set((int) sequence & mask, null);
+					head = sequence + 1;
+					try {
+						event.write(out);
+					} catch (RuntimeException e) {
+						// a failing toString() of an argument must not stop the logging thread
+						out.println("Log message could not be written: " + e);
+					}
+					continue;
+				}
+				long total = dropped.get();
+				long lost = total - reported.getAndSet(total);
+				if (lost > 0) {
+					out.println(TIMESTAMP.format(Instant.now()) + " WARN  [AsyncLog] Log - " + lost
+							+ " messages dropped, the log buffer was full");
+				}
+				out.flush();
+				if (!running && tail.get() == sequence) {
+					return;
+				}
+				// a claimed slot not yet published, or nothing to write
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package it.polimi.tiw.utils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * @file LogListener.java
+ * @brief This listener configures the application logger and flushes it on shutdown.
+ * @class LogListener
+ *
+ * It must be declared first, so that the other listeners log with the configured levels,
+ * and it is destroyed last. The optional logLevel (default level), logLevels (levels by
+ * class or package, e.g. "it.polimi.tiw.dao=DEBUG") and logBufferSize (messages waiting
+ * to be written) context parameters tune the logger.
+ */
+public class LogListener implements ServletContextListener {
+
+	/**
+	 * @brief Configures the logger.
+	 * @param event the event carrying the ServletContext being initialized.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		String level = context.getInitParameter("logLevel");
+		int bufferSize = ConnectionHandler.getIntParameter(context, "logBufferSize", Log.DEFAULT_BUFFER_SIZE);
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("logBufferSize must be positive");
+		}
+		Log.configure(level == null || level.isBlank() ? Log.Level.INFO : Log.parseLevel(level),
+				Log.parseLevels(context.getInitParameter("logLevels")), bufferSize);
+	}
+
+	/**
+	 * @brief Writes the messages still waiting and stops the logging thread.
+	 * @param event the event carrying the ServletContext being destroyed.
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		Log.shutdown();
+	}
+}
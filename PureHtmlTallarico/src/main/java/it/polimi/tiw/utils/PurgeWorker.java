@@ -0,0 +1,93 @@
+package it.polimi.tiw.utils;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import it.polimi.tiw.dao.FileDAO;
+
+/**
+ * @file PurgeWorker.java
+ * @brief This class removes in background the documents marked as deleted.
+ * @class PurgeWorker
+ *
+ * Deleting a document only marks its subtree (see FileDAO.deleteDocu). A daemon thread
+ * periodically removes the marked rows with FileDAO.purgeDeleted, one bounded batch per
+ * transaction, until none is left; the database never runs a single huge delete.
+ */
+public class PurgeWorker {
+	private static final Log LOG = Log.getLog(PurgeWorker.class);
+
+	/// Name of the servlet context attribute holding the worker.
+	public static final String ATTRIBUTE = "purgeWorker";
+
+	private final FileDAO fileDao;
+	private final int batchSize;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicLong purgedCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+
+	/**
+	 * @brief Creates the worker and schedules its runs.
+	 * @param dataSource the pool from which the connections are borrowed.
+	 * @param batchSize the maximum number of documents removed per transaction.
+	 * @param interval ms between the end of a run and the start of the next one.
+	 */
+	public PurgeWorker(DataSource dataSource, int batchSize, long interval) {
+		this.fileDao = new FileDAO(dataSource);
+		this.batchSize = batchSize;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "PurgeWorker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::purge, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @brief Removes batches of deleted documents until none is left.
+	 *
+	 * purgeDeleted removes only leaves, so a deleted subtree goes away at most a level per
+	 * batch, even when the batch is short: the run goes on until a batch removes nothing.
+	 * A failed batch ends the run; the rows are still marked and the next run retries them.
+	 */
+	void purge() {
+		try {
+			int purged;
+			do {
+				purged = fileDao.purgeDeleted(batchSize);
+				purgedCount.addAndGet(purged);
+			} while (purged > 0 && !Thread.currentThread().isInterrupted());
+		} catch (SQLException e) {
+			failureCount.incrementAndGet();
+			LOG.warn("Purge of deleted documents failed", e);
+		}
+	}
+
+	/**
+	 * @brief Stops the worker, interrupting a run in progress between two batches.
+	 */
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * @brief Gets the number of documents removed so far.
+	 * @return the documents removed since the worker started.
+	 */
+	public long getPurgedCount() {
+		return purgedCount.get();
+	}
+
+	/**
+	 * @brief Gets the number of runs that failed.
+	 * @return the runs ended by a database error since the worker started.
+	 */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+}
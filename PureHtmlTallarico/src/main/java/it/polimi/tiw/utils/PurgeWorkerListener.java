@@ -0,0 +1,52 @@
+package it.polimi.tiw.utils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.UnavailableException;
+
+/**
+ * @file PurgeWorkerListener.java
+ * @brief This listener owns the lifecycle of the worker removing deleted documents.
+ * @class PurgeWorkerListener
+ *
+ * It must be declared after ConnectionPoolListener, whose pool the worker uses. The
+ * optional purgeBatchSize (documents per transaction) and purgeInterval (ms between two
+ * runs) context parameters tune the worker.
+ */
+public class PurgeWorkerListener implements ServletContextListener {
+
+	/**
+	 * @brief Starts the worker and registers it in the servlet context.
+	 * @param event the event carrying the ServletContext being initialized.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		try {
+			int batchSize = ConnectionHandler.getIntParameter(context, "purgeBatchSize", 500);
+			int interval = ConnectionHandler.getIntParameter(context, "purgeInterval", 60000);
+			if (batchSize <= 0 || interval <= 0) {
+				throw new IllegalArgumentException("purgeBatchSize and purgeInterval must be positive");
+			}
+			context.setAttribute(PurgeWorker.ATTRIBUTE,
+					new PurgeWorker(ConnectionHandler.getDataSource(context), batchSize, interval));
+		} catch (UnavailableException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @brief Stops the worker.
+	 * @param event the event carrying the ServletContext being destroyed.
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Object worker = context.getAttribute(PurgeWorker.ATTRIBUTE);
+		if (worker instanceof PurgeWorker) {
+			((PurgeWorker) worker).close();
+		}
+		context.removeAttribute(PurgeWorker.ATTRIBUTE);
+	}
+}
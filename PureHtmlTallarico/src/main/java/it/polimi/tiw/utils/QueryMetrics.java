@@ -0,0 +1,246 @@
+package it.polimi.tiw.utils;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * @file QueryMetrics.java
+ * @brief This class collects latency, row and error statistics of the DAO operations.
+ * @class QueryMetrics
+ *
+ * Every public DAO method runs through record, which times it and adds the time to the
+ * histogram of the operation. Histograms have eight buckets for every power of two of
+ * nanoseconds, so a percentile is read with an error below 12.5% from a fixed array of
+ * counters, and recording a time is a few atomic increments with no lock and no
+ * allocation. The statistics cover the whole life of the application. The time is also
+ * added to the RequestTiming of the request being served, if any, and emitted as a
+ * DaoEvent when a Flight Recorder recording enables it.
+ */
+public class QueryMetrics {
+
+	/**
+	 * @interface SqlCall
+	 * @brief A DAO operation whose time is recorded.
+	 * @param <T> the type of the result.
+	 */
+	@FunctionalInterface
+	public interface SqlCall<T> {
+		/**
+		 * @brief Runs the operation.
+		 * @return the result of the operation.
+		 * @throws SQLException if there is an error accessing the database.
+		 */
+		T call() throws SQLException;
+	}
+
+	/// The statistics of the operations recorded so far, by name.
+	private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * @brief Runs a DAO operation, recording its time, its rows and whether it failed.
+	 * @param query the name of the operation, e.g. the DAO method.
+	 * @param call the operation.
+	 * @param rows the number of rows read or written, from the result of the operation.
+	 * @return the result of the operation.
+	 * @throws SQLException if the operation fails; the failure is counted.
+	 */
+	public static <T> T record(String query, SqlCall<T> call, ToIntFunction<? super T> rows) throws SQLException {
+		Stats queryStats = get(query);
+		RequestTiming timing = RequestTiming.current();
+		if (timing != null) {
+			timing.enterDao();
+		}
+		DaoEvent event = new DaoEvent();
+		event.begin();
+		long start = System.nanoTime();
+		boolean failed = true;
+		int read = -1;
+		try {
+			T result = call.call();
+			read = rows.applyAsInt(result);
+			queryStats.rows.add(read);
+			failed = false;
+			return result;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			queryStats.record(nanos, failed);
+			if (timing != null) {
+				timing.exitDao(nanos);
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.query = query;
+				event.rows = read;
+				event.user = timing == null ? 0 : timing.getUser();
+				event.endpoint = timing == null ? "" : timing.getEndpoint();
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * @brief Gets the statistics of an operation, creating them on first use.
+	 * @param query the name of the operation.
+	 * @return the statistics of the operation.
+	 */
+	public static Stats get(String query) {
+		return stats.computeIfAbsent(query, Stats::new);
+	}
+
+	/**
+	 * @brief Gets the statistics of all the operations recorded so far.
+	 * @return the statistics, by operation name in alphabetical order.
+	 */
+	public static Map<String, Stats> getAll() {
+		return new TreeMap<>(stats);
+	}
+
+	/**
+	 * @class Stats
+	 * @brief The latency histogram and the counters of one operation.
+	 */
+	public static class Stats {
+		/// Values below 2^MIN_EXPONENT ns (about 1 µs) share the first bucket.
+		private static final int MIN_EXPONENT = 10;
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private final String query;
+		private final AtomicLongArray buckets = new AtomicLongArray((63 - MIN_EXPONENT) * SUB_BUCKETS + 1);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		Stats(String query) {
+			this.query = query;
+		}
+
+		/**
+		 * @brief Adds an execution of the operation.
+		 * @param nanos the time of the execution.
+		 * @param failed true if the execution failed.
+		 */
+		public void record(long nanos, boolean failed) {
+			nanos = Math.max(0, nanos);
+			buckets.incrementAndGet(bucket(nanos));
+			count.increment();
+			totalNanos.add(nanos);
+			if (failed) {
+				errors.increment();
+			}
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/**
+		 * @brief Adds rows read by the operation after it returned, e.g. while streaming them.
+		 * @param read the number of rows.
+		 */
+		public void addRows(int read) {
+			rows.add(read);
+		}
+
+		/**
+		 * @brief Gets a percentile of the time of the operation.
+		 * @param quantile the quantile, between 0 and 1.
+		 * @return the upper bound of the bucket holding the quantile, in nanoseconds, never above the maximum;
+		 *         0 if the operation never ran.
+		 */
+		public long getQuantileNanos(double quantile) {
+			long total = 0;
+			long[] counts = new long[buckets.length()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * total));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(upperBound(i), maxNanos.get());
+				}
+			}
+			return maxNanos.get();
+		}
+
+		/**
+		 * @brief Gets the name of the operation.
+		 * @return the name given to record.
+		 */
+		public String getQuery() {
+			return query;
+		}
+
+		/**
+		 * @brief Gets the number of executions of the operation.
+		 * @return the number of executions, failed ones included.
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * @brief Gets the total time of the executions.
+		 * @return the sum of the times, in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * @brief Gets the time of the slowest execution.
+		 * @return the longest time, in nanoseconds.
+		 */
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * @brief Gets the rows read or written by the operation.
+		 * @return the number of rows.
+		 */
+		public long getRows() {
+			return rows.sum();
+		}
+
+		/**
+		 * @brief Gets the number of executions that failed.
+		 * @return the number of failures.
+		 */
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		private static int bucket(long nanos) {
+			int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+			if (exponent < MIN_EXPONENT) {
+				return 0;
+			}
+			int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket + 1;
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket == 0) {
+				return 1L << MIN_EXPONENT;
+			}
+			int exponent = (bucket - 1) / SUB_BUCKETS + MIN_EXPONENT;
+			long subBucket = (bucket - 1) % SUB_BUCKETS;
+			return (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package it.polimi.tiw.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * @file RenderEvent.java
+ * @brief This Flight Recorder event records the rendering of a template.
+ * @class RenderEvent
+ *
+ * Emitted by TimedTemplateEngine for every process call.
+ */
+@Name("it.polimi.tiw.TemplateRender")
+@Label("Template Render")
+@Category({ "NAS", "Thymeleaf" })
+@Description("A template processed by the Thymeleaf engine")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("0 ms")
+class RenderEvent extends Event {
+	@Label("Template")
+	String template;
+
+	@Label("Characters")
+	@Description("Characters written by the template, -1 if the rendering failed")
+	long characters;
+
+	@Label("User")
+	@Description("The ID of the user of the request, 0 if not logged in")
+	int user;
+
+	@Label("Endpoint")
+	@Description("The servlet path of the request, empty outside a request")
+	String endpoint;
+}
@@ -0,0 +1,170 @@
+package it.polimi.tiw.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @file RequestTiming.java
+ * @brief This class accumulates the database and rendering time of the request being served.
+ * @class RequestTiming
+ *
+ * RequestTimingFilter starts a timing on the thread serving a request and stops it when
+ * the request is over; in between QueryMetrics adds the time of every DAO operation and
+ * TimedTemplateEngine the time of every template rendering. Outside a request nothing
+ * is accumulated. DAO operations nested in another one, e.g. the checks run by
+ * UserDAO.addUser, are counted once, with the outer operation. The endpoint and the user
+ * of the request are attached to the Flight Recorder events of the application.
+ *
+ * A request served asynchronously by DaoExecutor continues on another thread: the
+ * executor holds the timing before handing the request over and attaches it to its own
+ * thread, and the timing ends when the last of the two threads releases it. The servlet
+ * does nothing after the handover, so only one thread at a time updates the counters.
+ */
+public class RequestTiming {
+
+	private static final ThreadLocal<RequestTiming> current = new ThreadLocal<>();
+
+	private final String endpoint;
+	private final int user;
+	private long daoNanos = 0;
+	private int queries = 0;
+	private long renderNanos = 0;
+	private int daoDepth = 0;
+	/// Threads still serving the request, the one that started the timing included.
+	private final AtomicInteger holders = new AtomicInteger(1);
+	private Consumer<Boolean> onEnd;
+	private boolean failed = false;
+
+	private RequestTiming(String endpoint, int user) {
+		this.endpoint = endpoint;
+		this.user = user;
+	}
+
+	/**
+	 * @brief Starts timing the request served by the current thread.
+	 * @param endpoint the servlet path of the request.
+	 * @param user the ID of the user logged in, 0 if none.
+	 * @return the new timing.
+	 */
+	static RequestTiming start(String endpoint, int user) {
+		RequestTiming timing = new RequestTiming(endpoint, user);
+		current.set(timing);
+		return timing;
+	}
+
+	/**
+	 * @brief Stops timing the request served by the current thread.
+	 */
+	static void stop() {
+		current.remove();
+	}
+
+	/**
+	 * @brief Gets the timing of the request served by the current thread.
+	 * @return the timing, or null if the thread is not serving a timed request.
+	 */
+	public static RequestTiming current() {
+		return current.get();
+	}
+
+	/**
+	 * @brief Attaches the timing to the current thread, which continues the request.
+	 */
+	void attach() {
+		current.set(this);
+	}
+
+	/**
+	 * @brief Sets what is done when the request is over.
+	 * @param onEnd called with true if the request failed, by the thread releasing the timing last.
+	 */
+	void onEnd(Consumer<Boolean> onEnd) {
+		this.onEnd = onEnd;
+	}
+
+	/**
+	 * @brief Records that another thread will continue the request.
+	 */
+	void hold() {
+		holders.incrementAndGet();
+	}
+
+	/**
+	 * @brief Records that a thread is done with the request, ending it if it is the last one.
+	 * @param failed true if the part of the request served by the thread failed.
+	 */
+	void release(boolean failed) {
+		if (failed) {
+			this.failed = true;
+		}
+		if (holders.decrementAndGet() == 0 && onEnd != null) {
+			onEnd.accept(this.failed);
+		}
+	}
+
+	/**
+	 * @brief Records that a DAO operation starts.
+	 */
+	void enterDao() {
+		daoDepth++;
+	}
+
+	/**
+	 * @brief Records that a DAO operation is over.
+	 * @param nanos the time of the operation, counted only if it is not nested in another one.
+	 */
+	void exitDao(long nanos) {
+		if (--daoDepth == 0) {
+			daoNanos += nanos;
+			queries++;
+		}
+	}
+
+	/**
+	 * @brief Adds the time of a template rendering.
+	 * @param nanos the time of the rendering.
+	 */
+	void addRender(long nanos) {
+		renderNanos += nanos;
+	}
+
+	/**
+	 * @brief Gets the endpoint of the request.
+	 * @return the servlet path of the request.
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @brief Gets the user of the request.
+	 * @return the ID of the user logged in when the request started, 0 if none.
+	 */
+	public int getUser() {
+		return user;
+	}
+
+	/**
+	 * @brief Gets the time spent in DAO operations.
+	 * @return the time, in nanoseconds.
+	 */
+	public long getDaoNanos() {
+		return daoNanos;
+	}
+
+	/**
+	 * @brief Gets the number of DAO operations.
+	 * @return the number of operations not nested in another one.
+	 */
+	public int getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @brief Gets the time spent rendering templates.
+	 * @return the time, in nanoseconds.
+	 */
+	public long getRenderNanos() {
+		return renderNanos;
+	}
+}
@@ -0,0 +1,176 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import it.polimi.tiw.beans.User;
+
+/**
+ * @file RequestTimingFilter.java
+ * @brief This filter measures the latency of every endpoint and logs the slow requests.
+ * @class RequestTimingFilter
+ *
+ * For every request it records the total time in the histogram of its servlet path, and
+ * adds the time spent in DAO operations and in template rendering, collected by
+ * RequestTiming, to the totals of the endpoint. Rows read from a FileStream while the
+ * template is written count as rendering time. Requests slower than the optional
+ * slowRequestThreshold context parameter (ms, default 500, 0 to disable) are logged as
+ * warnings with their breakdown. A request served asynchronously is recorded when its
+ * response is complete, so the filter must be declared with async-supported.
+ */
+public class RequestTimingFilter implements Filter {
+	private static final Log LOG = Log.getLog(RequestTimingFilter.class);
+
+	/// The statistics of the endpoints requested so far, by servlet path.
+	private static final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+	private long slowNanos;
+
+	/**
+	 * @brief Reads the threshold of the slow requests.
+	 * @param config the configuration of the filter.
+	 * @throws ServletException if the threshold is invalid.
+	 */
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		int threshold;
+		try {
+			threshold = ConnectionHandler.getIntParameter(config.getServletContext(), "slowRequestThreshold", 500);
+		} catch (IllegalArgumentException e) {
+			throw new ServletException("Invalid slow request threshold: " + e.getMessage());
+		}
+		if (threshold < 0) {
+			throw new ServletException("slowRequestThreshold must not be negative");
+		}
+		slowNanos = threshold * 1_000_000L;
+	}
+
+	/**
+	 * @brief Times the request.
+	 * @param request the request.
+	 * @param response the response.
+	 * @param chain the rest of the chain, serving the request.
+	 * @throws IOException if an I/O error occurs during the processing of the request.
+	 * @throws ServletException if a servlet-related error occurs.
+	 */
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest) || RequestTiming.current() != null) {
+			// not HTTP, or a forward or include of a request already timed
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		String path = httpRequest.getServletPath();
+		HttpSession session = httpRequest.getSession(false);
+		Object user = session == null ? null : session.getAttribute("user");
+		RequestTiming timing = RequestTiming.start(path, user instanceof User ? ((User) user).getId() : 0);
+		long start = System.nanoTime();
+		timing.onEnd(failure -> end(httpRequest, (HttpServletResponse) response, timing, start, failure));
+		boolean failed = true;
+		try {
+			chain.doFilter(request, response);
+			failed = false;
+		} finally {
+			RequestTiming.stop();
+			// ends the timing now, unless the request goes on asynchronously (see DaoExecutor)
+			timing.release(failed);
+		}
+	}
+
+	private void end(HttpServletRequest request, HttpServletResponse response, RequestTiming timing, long start,
+			boolean failed) {
+		long nanos = System.nanoTime() - start;
+		String path = timing.getEndpoint();
+		endpoints.computeIfAbsent(path, Endpoint::new).record(nanos, failed || response.getStatus() >= 500, timing);
+		if (slowNanos > 0 && nanos >= slowNanos) {
+			LOG.warn("Slow request {} {}: {} ms, {} ms in {} DAO operations, {} ms rendering", request.getMethod(),
+					path, millis(nanos), millis(timing.getDaoNanos()), timing.getQueries(),
+					millis(timing.getRenderNanos()));
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	/**
+	 * @brief Gets the statistics of all the endpoints requested so far.
+	 * @return the statistics, by servlet path in alphabetical order.
+	 */
+	public static Map<String, Endpoint> getAll() {
+		return new TreeMap<>(endpoints);
+	}
+
+	private static long millis(long nanos) {
+		return nanos / 1_000_000;
+	}
+
+	/**
+	 * @class Endpoint
+	 * @brief The latency histogram of an endpoint and the time its requests spent in the DAO and rendering.
+	 */
+	public static class Endpoint {
+		private final QueryMetrics.Stats stats;
+		private final LongAdder daoNanos = new LongAdder();
+		private final LongAdder queries = new LongAdder();
+		private final LongAdder renderNanos = new LongAdder();
+
+		private Endpoint(String path) {
+			this.stats = new QueryMetrics.Stats(path);
+		}
+
+		private void record(long nanos, boolean failed, RequestTiming timing) {
+			stats.record(nanos, failed);
+			daoNanos.add(timing.getDaoNanos());
+			queries.add(timing.getQueries());
+			renderNanos.add(timing.getRenderNanos());
+		}
+
+		/**
+		 * @brief Gets the latency of the requests.
+		 * @return the histogram and counters of the total time, failures being the responses with status 5xx.
+		 */
+		public QueryMetrics.Stats getStats() {
+			return stats;
+		}
+
+		/**
+		 * @brief Gets the time the requests spent in DAO operations.
+		 * @return the sum of the times, in nanoseconds.
+		 */
+		public long getDaoNanos() {
+			return daoNanos.sum();
+		}
+
+		/**
+		 * @brief Gets the number of DAO operations run by the requests.
+		 * @return the number of operations.
+		 */
+		public long getQueries() {
+			return queries.sum();
+		}
+
+		/**
+		 * @brief Gets the time the requests spent rendering templates.
+		 * @return the sum of the times, in nanoseconds.
+		 */
+		public long getRenderNanos() {
+			return renderNanos.sum();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.UnavailableException;
+
+/**
+ * @file SchemaMigrationListener.java
+ * @brief This listener brings the database schema up to date when the application starts.
+ * @class SchemaMigrationListener
+ *
+ * It must be declared after ConnectionPoolListener, whose pool it uses. The migrations
+ * can be turned off with the dbSchemaMigrate context parameter set to false, e.g. when
+ * the schema is managed by the database administrators.
+ */
+public class SchemaMigrationListener implements ServletContextListener {
+	private static final Log LOG = Log.getLog(SchemaMigrationListener.class);
+
+	/**
+	 * @brief Runs the migration scripts not yet applied to the database.
+	 * @param event the event carrying the ServletContext being initialized.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		if ("false".equalsIgnoreCase(context.getInitParameter("dbSchemaMigrate"))) {
+			return;
+		}
+		try {
+			int applied = SchemaMigrator.migrate(context, ConnectionHandler.getDataSource(context));
+			if (applied > 0) {
+				LOG.info("{} schema migrations applied", applied);
+			}
+		} catch (UnavailableException | SQLException | IOException e) {
+			throw new IllegalStateException("Couldn't migrate the database schema", e);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+	}
+}
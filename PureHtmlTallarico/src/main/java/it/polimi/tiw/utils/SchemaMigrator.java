@@ -0,0 +1,208 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+import javax.sql.DataSource;
+
+/**
+ * @file SchemaMigrator.java
+ * @brief This class creates and upgrades the database schema of the application.
+ * @class SchemaMigrator
+ *
+ * The schema is described by versioned SQL scripts in /WEB-INF/sql, named
+ * V<version>__<description>.sql. Scripts newer than the version recorded in the
+ * schema_versione table are run in order, and each one is recorded once all its
+ * statements succeed. A MySQL named lock keeps several instances starting together
+ * from running the same scripts.
+ */
+public class SchemaMigrator {
+
+	/// Folder of the web application holding the migration scripts.
+	public static final String MIGRATIONS_PATH = "/WEB-INF/sql/";
+
+	private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+	private static final String LOCK_NAME = "nas.schema_versione";
+
+	private static final int LOCK_TIMEOUT = 60;
+
+	/// MySQL error codes of objects that already exist: the change was made by hand.
+	private static final int ER_DUP_FIELDNAME = 1060;
+	private static final int ER_DUP_KEYNAME = 1061;
+
+	/**
+	 * @brief Runs the migration scripts not yet applied to the database.
+	 * @param context the ServletContext of the application, used to read the scripts.
+	 * @param dataSource the pool from which the connection is borrowed.
+	 * @return the number of scripts applied.
+	 * @throws SQLException if a script fails or the schema lock cannot be acquired.
+	 * @throws IOException if a script cannot be read.
+	 *
+	 * Statements creating a column or an index that already exists do not fail the
+	 * script, so databases created by hand before the scripts existed are brought up to
+	 * date instead of being rejected.
+	 */
+	public static int migrate(ServletContext context, DataSource dataSource) throws SQLException, IOException {
+		TreeMap<Integer, String> scripts = findScripts(context);
+		int applied = 0;
+		try (Connection connection = dataSource.getConnection()) {
+			connection.setAutoCommit(true);
+			lock(connection);
+			try {
+				createVersionTable(connection);
+				int current = getVersion(connection);
+				for (Integer version : scripts.tailMap(current, false).keySet()) {
+					String path = scripts.get(version);
+					for (String sql : splitStatements(readScript(context, path))) {
+						execute(connection, sql);
+					}
+					recordVersion(connection, version, describe(path));
+					applied++;
+				}
+			} finally {
+				if (!unlock(connection) && dataSource instanceof ConnectionPool) {
+					// a pooled session would keep holding the lock
+					((ConnectionPool) dataSource).invalidate(connection);
+				}
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * @brief Finds the migration scripts of the application.
+	 * @param context the ServletContext of the application.
+	 * @return the paths of the scripts, by version.
+	 * @throws IllegalStateException if two scripts have the same version.
+	 */
+	static TreeMap<Integer, String> findScripts(ServletContext context) {
+		TreeMap<Integer, String> scripts = new TreeMap<>();
+		Set<String> paths = context.getResourcePaths(MIGRATIONS_PATH);
+		if (paths == null) {
+			return scripts;
+		}
+		for (String path : paths) {
+			Matcher matcher = SCRIPT_NAME.matcher(path.substring(path.lastIndexOf('/') + 1));
+			if (matcher.matches()) {
+				String previous = scripts.put(Integer.parseInt(matcher.group(1)), path);
+				if (previous != null) {
+					throw new IllegalStateException("Two migration scripts for the same version: " + previous + ", " + path);
+				}
+			}
+		}
+		return scripts;
+	}
+
+	/**
+	 * @brief Splits a script into its statements.
+	 * @param script the content of the script.
+	 * @return the statements, without the terminating semicolons.
+	 *
+	 * Statements end with a semicolon at the end of a line; lines starting with "--"
+	 * are comments.
+	 */
+	static ArrayList<String> splitStatements(String script) {
+		ArrayList<String> statements = new ArrayList<>();
+		StringBuilder statement = new StringBuilder();
+		for (String line : script.split("\r?\n")) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+				continue;
+			}
+			if (trimmed.endsWith(";")) {
+				statement.append(trimmed, 0, trimmed.length() - 1);
+				statements.add(statement.toString());
+				statement.setLength(0);
+			} else {
+				statement.append(trimmed).append('\n');
+			}
+		}
+		if (statement.length() > 0) {
+			statements.add(statement.toString());
+		}
+		return statements;
+	}
+
+	private static String describe(String path) {
+		Matcher matcher = SCRIPT_NAME.matcher(path.substring(path.lastIndexOf('/') + 1));
+		return matcher.matches() ? matcher.group(2) : path;
+	}
+
+	private static String readScript(ServletContext context, String path) throws IOException {
+		try (InputStream in = context.getResourceAsStream(path)) {
+			if (in == null) {
+				throw new IOException("Migration script not found: " + path);
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void execute(Connection connection, String sql) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		} catch (SQLException e) {
+			if (e.getErrorCode() != ER_DUP_FIELDNAME && e.getErrorCode() != ER_DUP_KEYNAME) {
+				throw new SQLException("Error accessing the DB when migrating the schema: " + sql, e);
+			}
+		}
+	}
+
+	private static void createVersionTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE IF NOT EXISTS schema_versione (versione INT NOT NULL, descrizione VARCHAR(200) NOT NULL, "
+					+ "applicata TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (versione)) ENGINE = InnoDB");
+		}
+	}
+
+	private static int getVersion(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(versione), 0) FROM schema_versione")) {
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+	}
+
+	private static void recordVersion(Connection connection, int version, String description) throws SQLException {
+		try (PreparedStatement preparedStatement = connection
+				.prepareStatement("INSERT INTO schema_versione (versione, descrizione) VALUES (?, ?)")) {
+			preparedStatement.setInt(1, version);
+			preparedStatement.setString(2, description);
+			preparedStatement.executeUpdate();
+		}
+	}
+
+	private static void lock(Connection connection) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+			preparedStatement.setString(1, LOCK_NAME);
+			preparedStatement.setInt(2, LOCK_TIMEOUT);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next() || resultSet.getInt(1) != 1) {
+					throw new SQLException("Couldn't acquire the schema lock");
+				}
+			}
+		}
+	}
+
+	private static boolean unlock(Connection connection) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+			preparedStatement.setString(1, LOCK_NAME);
+			preparedStatement.executeQuery().close();
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+}
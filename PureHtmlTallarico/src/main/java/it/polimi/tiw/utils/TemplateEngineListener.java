@@ -0,0 +1,50 @@
+package it.polimi.tiw.utils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.UnavailableException;
+
+import org.thymeleaf.TemplateEngine;
+
+/**
+ * @file TemplateEngineListener.java
+ * @brief This listener owns the lifecycle of the application-wide template engine.
+ * @class TemplateEngineListener
+ *
+ * The engine is created when the web application starts, its templates are parsed
+ * right away and it is registered in the servlet context under
+ * TemplateHandler.ENGINE_ATTRIBUTE for every servlet to use.
+ */
+public class TemplateEngineListener implements ServletContextListener {
+	private static final Log LOG = Log.getLog(TemplateEngineListener.class);
+
+	/**
+	 * @brief Creates and warms up the template engine and registers it in the servlet context.
+	 * @param event the event carrying the ServletContext being initialized.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		TemplateEngine templateEngine;
+		try {
+			templateEngine = TemplateHandler.createTemplateEngine(context);
+		} catch (UnavailableException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		int failed = TemplateHandler.warmUp(templateEngine);
+		if (failed > 0) {
+			LOG.warn("{} templates could not be parsed at startup", failed);
+		}
+		context.setAttribute(TemplateHandler.ENGINE_ATTRIBUTE, templateEngine);
+	}
+
+	/**
+	 * @brief Removes the template engine from the servlet context.
+	 * @param event the event carrying the ServletContext being destroyed.
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		event.getServletContext().removeAttribute(TemplateHandler.ENGINE_ATTRIBUTE);
+	}
+}
@@ -0,0 +1,110 @@
+package it.polimi.tiw.utils;
+
+import java.io.Writer;
+
+import javax.servlet.ServletContext;
+import javax.servlet.UnavailableException;
+
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.exceptions.TemplateInputException;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
+
+/**
+ * @file TemplateHandler.java
+ * @brief This class handles the Thymeleaf template engine shared by all servlets.
+ * @class TemplateHandler
+ *
+ * This utility class creates the application-wide TemplateEngine, so that templates are
+ * parsed and cached once for the whole application instead of once per servlet, and
+ * parses the application's templates ahead of the first request. The engine includes the
+ * TreeDialect used by the templates to render directory trees.
+ */
+public class TemplateHandler {
+
+	/// Name of the servlet context attribute holding the template engine.
+	public static final String ENGINE_ATTRIBUTE = "templateEngine";
+
+	/// Templates parsed when the application starts.
+	public static final String[] TEMPLATES = { "/WEB-INF/Home.html", "/WEB-INF/Contenuti.html",
+			"/WEB-INF/Sposta.html", "/WEB-INF/Descrizione.html", "/WEB-INF/GestioneContenuti.html", "/Index.html",
+			"/Registrazione.html" };
+
+	/**
+	 * @brief Creates the template engine using parameters from the servlet context.
+	 * @param context the ServletContext of the application.
+	 * @return a new TemplateEngine, not yet registered in the context.
+	 * @throws UnavailableException if the cache parameters are invalid.
+	 *
+	 * The optional parameters templateCacheMaxSize (number of parsed templates kept) and
+	 * templateCacheTTL (ms a parsed template stays valid, 0 for no expiry) tune the cache.
+	 */
+	public static TemplateEngine createTemplateEngine(ServletContext context) throws UnavailableException {
+		int maxSize;
+		int ttl;
+		try {
+			maxSize = ConnectionHandler.getIntParameter(context, "templateCacheMaxSize", 200);
+			ttl = ConnectionHandler.getIntParameter(context, "templateCacheTTL", 0);
+		} catch (IllegalArgumentException e) {
+			throw new UnavailableException("Invalid template cache configuration: " + e.getMessage());
+		}
+
+		ServletContextTemplateResolver templateResolver = new ServletContextTemplateResolver(context);
+		templateResolver.setTemplateMode(TemplateMode.HTML);
+		templateResolver.setSuffix(".html");
+		templateResolver.setCacheable(maxSize > 0);
+		if (ttl > 0) {
+			templateResolver.setCacheTTLMs((long) ttl);
+		}
+
+		StandardCacheManager cacheManager = new StandardCacheManager();
+		cacheManager.setTemplateCacheMaxSize(maxSize);
+
+		TemplateEngine templateEngine = new TemplateEngine();
+		templateEngine.setTemplateResolver(templateResolver);
+		templateEngine.setCacheManager(cacheManager);
+		templateEngine.addDialect(new TreeDialect());
+		return templateEngine;
+	}
+
+	/**
+	 * @brief Gets the application-wide template engine.
+	 * @param context the ServletContext where the engine has been registered at startup.
+	 * @return the shared TemplateEngine, wrapped to add the rendering time to the timing of the request.
+	 * @throws UnavailableException if the engine has not been created.
+	 */
+	public static ITemplateEngine getTemplateEngine(ServletContext context) throws UnavailableException {
+		TemplateEngine templateEngine = (TemplateEngine) context.getAttribute(ENGINE_ATTRIBUTE);
+		if (templateEngine == null) {
+			throw new UnavailableException("Template engine not initialized");
+		}
+		return new TimedTemplateEngine(templateEngine);
+	}
+
+	/**
+	 * @brief Parses the application's templates so that they are cached before the first request.
+	 * @param templateEngine the engine whose cache is filled.
+	 * @return the number of templates that could not be found or parsed.
+	 *
+	 * Each template is processed once with an empty context. Templates are parsed and
+	 * cached before being evaluated, so expressions failing for lack of request data
+	 * (e.g. the session user) do not prevent the warm-up.
+	 */
+	public static int warmUp(TemplateEngine templateEngine) {
+		int failed = 0;
+		for (String template : TEMPLATES) {
+			try {
+				templateEngine.process(template, new Context(), Writer.nullWriter());
+			} catch (TemplateInputException e) {
+				failed++;
+			} catch (TemplateProcessingException e) {
+				// evaluation failed without request data, the template has been parsed anyway
+			}
+		}
+		return failed;
+	}
+}
@@ -0,0 +1,171 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.IThrottledTemplateProcessor;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.IContext;
+
+/**
+ * @file TimedTemplateEngine.java
+ * @brief This template engine adds the time of every rendering to the timing of the request.
+ * @class TimedTemplateEngine
+ *
+ * It wraps the shared engine returned to the servlets by TemplateHandler.getTemplateEngine
+ * and forwards every call to it, measuring the process calls. Throttled processing is
+ * forwarded without being measured, since it is spread over several calls. When a Flight
+ * Recorder recording enables RenderEvent, each process call emits one with the characters
+ * written, counted by wrapping the writer only while the event is enabled.
+ */
+public class TimedTemplateEngine implements ITemplateEngine {
+	private final ITemplateEngine templateEngine;
+
+	/**
+	 * @brief Wraps a template engine.
+	 * @param templateEngine the engine doing the rendering.
+	 */
+	public TimedTemplateEngine(ITemplateEngine templateEngine) {
+		this.templateEngine = templateEngine;
+	}
+
+	@Override
+	public IEngineConfiguration getConfiguration() {
+		return templateEngine.getConfiguration();
+	}
+
+	@Override
+	public String process(String template, IContext context) {
+		return render(template, () -> templateEngine.process(template, context));
+	}
+
+	@Override
+	public String process(String template, Set<String> templateSelectors, IContext context) {
+		return render(template, () -> templateEngine.process(template, templateSelectors, context));
+	}
+
+	@Override
+	public String process(TemplateSpec templateSpec, IContext context) {
+		return render(templateSpec.getTemplate(), () -> templateEngine.process(templateSpec, context));
+	}
+
+	@Override
+	public void process(String template, IContext context, Writer writer) {
+		render(template, writer, counted -> templateEngine.process(template, context, counted));
+	}
+
+	@Override
+	public void process(String template, Set<String> templateSelectors, IContext context, Writer writer) {
+		render(template, writer, counted -> templateEngine.process(template, templateSelectors, context, counted));
+	}
+
+	@Override
+	public void process(TemplateSpec templateSpec, IContext context, Writer writer) {
+		render(templateSpec.getTemplate(), writer, counted -> templateEngine.process(templateSpec, context, counted));
+	}
+
+	@Override
+	public IThrottledTemplateProcessor processThrottled(String template, IContext context) {
+		return templateEngine.processThrottled(template, context);
+	}
+
+	@Override
+	public IThrottledTemplateProcessor processThrottled(String template, Set<String> templateSelectors,
+			IContext context) {
+		return templateEngine.processThrottled(template, templateSelectors, context);
+	}
+
+	@Override
+	public IThrottledTemplateProcessor processThrottled(TemplateSpec templateSpec, IContext context) {
+		return templateEngine.processThrottled(templateSpec, context);
+	}
+
+	private static String render(String template, Supplier<String> process) {
+		RenderEvent event = new RenderEvent();
+		event.begin();
+		long start = System.nanoTime();
+		String result = null;
+		try {
+			result = process.get();
+			return result;
+		} finally {
+			record(start, event, template, result == null ? -1 : result.length());
+		}
+	}
+
+	private static void render(String template, Writer writer, Consumer<Writer> process) {
+		RenderEvent event = new RenderEvent();
+		CountingWriter counted = event.isEnabled() ? new CountingWriter(writer) : null;
+		event.begin();
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			process.accept(counted == null ? writer : counted);
+			failed = false;
+		} finally {
+			record(start, event, template, failed || counted == null ? -1 : counted.characters);
+		}
+	}
+
+	private static void record(long start, RenderEvent event, String template, long characters) {
+		long nanos = System.nanoTime() - start;
+		RequestTiming timing = RequestTiming.current();
+		if (timing != null) {
+			timing.addRender(nanos);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.template = template;
+			event.characters = characters;
+			event.user = timing == null ? 0 : timing.getUser();
+			event.endpoint = timing == null ? "" : timing.getEndpoint();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @class CountingWriter
+	 * @brief A writer counting the characters it forwards.
+	 */
+	private static class CountingWriter extends Writer {
+		private final Writer writer;
+		private long characters = 0;
+
+		private CountingWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			writer.write(c);
+			characters++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			writer.write(cbuf, off, len);
+			characters += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			writer.write(str, off, len);
+			characters += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writer.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+}
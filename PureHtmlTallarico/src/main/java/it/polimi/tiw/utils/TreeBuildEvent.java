@@ -0,0 +1,42 @@
+package it.polimi.tiw.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * @file TreeBuildEvent.java
+ * @brief This Flight Recorder event records the arrangement of a list of files into a tree.
+ * @class TreeBuildEvent
+ *
+ * Emitted by TreeOrder.getOrder.
+ */
+@Name("it.polimi.tiw.TreeBuild")
+@Label("Tree Build")
+@Category({ "NAS", "Tree" })
+@Description("Files arranged into a tree by TreeOrder")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("0 ms")
+class TreeBuildEvent extends Event {
+	@Label("Nodes")
+	@Description("The number of files arranged")
+	int nodes;
+
+	@Label("Root")
+	@Description("The parent directory ID of the top level of the tree")
+	int root;
+
+	@Label("User")
+	@Description("The ID of the user of the request, 0 if not logged in")
+	int user;
+
+	@Label("Endpoint")
+	@Description("The servlet path of the request, empty outside a request")
+	String endpoint;
+}
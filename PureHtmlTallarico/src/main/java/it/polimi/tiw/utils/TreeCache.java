@@ -0,0 +1,213 @@
+package it.polimi.tiw.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import it.polimi.tiw.beans.File;
+
+/**
+ * @file TreeCache.java
+ * @brief This class caches the directory trees built for each user.
+ * @class TreeCache
+ *
+ * The home page shows the tree of the user's folders and the move page the tree of
+ * all the user's documents: both are built from a full scan of the user's rows, but
+ * they only change when a document is created or moved. The cache keeps the built
+ * trees in memory, bounded by the total number of nodes and evicting the least
+ * recently used tree first, and FileDAO drops the trees of a user after every write.
+ *
+ * Cached trees are shared by concurrent requests and must be treated as read-only.
+ */
+public class TreeCache {
+
+	/// Name of the servlet context attribute holding the cache.
+	public static final String ATTRIBUTE = "treeCache";
+
+	/// Kind of tree holding only the user's folders, as returned by FileDAO.getDir.
+	public static final int DIRECTORIES = 0;
+
+	/// Kind of tree holding all the user's documents, as returned by FileDAO.getAll.
+	public static final int ALL = 1;
+
+	private static final int STRIPES = 1024;
+
+	private final long maxNodes;
+
+	/// Cached trees in access order, keyed by user ID and kind of tree.
+	private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/// Invalidation counters, one per stripe of user IDs, used to reject stale trees.
+	private final long[] versions = new long[STRIPES];
+
+	private long nodes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long invalidations = 0;
+
+	/**
+	 * @brief Creates a cache holding at most maxNodes nodes over all its trees.
+	 * @param maxNodes the node budget of the cache; 0 disables caching.
+	 */
+	public TreeCache(long maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * @brief Gets the cache of the web application, creating it on first use.
+	 * @param context the ServletContext of the application.
+	 * @return the application-wide TreeCache.
+	 *
+	 * The node budget is read from the optional treeCacheMaxNodes context parameter.
+	 */
+	public static TreeCache getInstance(ServletContext context) {
+		synchronized (context) {
+			TreeCache cache = (TreeCache) context.getAttribute(ATTRIBUTE);
+			if (cache == null) {
+				cache = new TreeCache(ConnectionHandler.getIntParameter(context, "treeCacheMaxNodes", 200000));
+				context.setAttribute(ATTRIBUTE, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * @brief Gets a cached tree.
+	 * @param userId the ID of the owner of the tree.
+	 * @param kind DIRECTORIES or ALL.
+	 * @return the root of the tree, or null if it is not cached.
+	 */
+	public synchronized File get(int userId, int kind) {
+		Entry entry = entries.get(key(userId, kind));
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.root;
+	}
+
+	/**
+	 * @brief Gets the invalidation version of a user, to be read before loading a tree.
+	 * @param userId the ID of the user.
+	 * @return the current version.
+	 */
+	public synchronized long version(int userId) {
+		return versions[stripe(userId)];
+	}
+
+	/**
+	 * @brief Caches a tree, unless the user's documents changed while it was being loaded.
+	 * @param userId the ID of the owner of the tree.
+	 * @param kind DIRECTORIES or ALL.
+	 * @param root the root of the tree.
+	 * @param nodeCount the number of documents in the tree.
+	 * @param version the value returned by version(userId) before the tree was loaded.
+	 */
+	public synchronized void put(int userId, int kind, File root, int nodeCount, long version) {
+		if (version != versions[stripe(userId)] || nodeCount > maxNodes) {
+			return;
+		}
+		Entry previous = entries.put(key(userId, kind), new Entry(root, nodeCount));
+		if (previous != null) {
+			nodes -= previous.nodeCount;
+		}
+		nodes += nodeCount;
+
+		Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+		while (nodes > maxNodes && iterator.hasNext()) {
+			Entry eldest = iterator.next().getValue();
+			iterator.remove();
+			nodes -= eldest.nodeCount;
+			evictions++;
+		}
+	}
+
+	/**
+	 * @brief Drops every cached tree of a user.
+	 * @param userId the ID of the user whose documents changed.
+	 */
+	public synchronized void invalidate(int userId) {
+		versions[stripe(userId)]++;
+		for (int kind = DIRECTORIES; kind <= ALL; kind++) {
+			Entry entry = entries.remove(key(userId, kind));
+			if (entry != null) {
+				nodes -= entry.nodeCount;
+				invalidations++;
+			}
+		}
+	}
+
+	/**
+	 * @brief Gets the number of lookups that found a cached tree.
+	 * @return the number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @brief Gets the number of lookups that did not find a cached tree.
+	 * @return the number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @brief Gets the number of trees dropped to stay within the node budget.
+	 * @return the number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @brief Gets the number of trees dropped because their owner wrote to the database.
+	 * @return the number of invalidations.
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * @brief Gets the number of nodes currently cached.
+	 * @return the number of cached nodes.
+	 */
+	public synchronized long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * @brief Gets the number of trees currently cached.
+	 * @return the number of cached trees.
+	 */
+	public synchronized int getTreeCount() {
+		return entries.size();
+	}
+
+	private static long key(int userId, int kind) {
+		return ((long) userId << 1) | kind;
+	}
+
+	private static int stripe(int userId) {
+		return (userId ^ (userId >>> 16)) & (STRIPES - 1);
+	}
+
+	/**
+	 * @class Entry
+	 * @brief A cached tree with its size.
+	 */
+	private static class Entry {
+		private final File root;
+		private final int nodeCount;
+
+		private Entry(File root, int nodeCount) {
+			this.root = root;
+			this.nodeCount = nodeCount;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.dialect.AbstractProcessorDialect;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.IProcessor;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.standard.StandardDialect;
+import org.thymeleaf.standard.expression.StandardExpressions;
+import org.thymeleaf.standard.processor.StandardXmlNsTagProcessor;
+import org.thymeleaf.templatemode.TemplateMode;
+
+import it.polimi.tiw.beans.File;
+
+/**
+ * @file TreeDialect.java
+ * @brief This Thymeleaf dialect renders directory trees with TreeRenderer.
+ * @class TreeDialect
+ *
+ * The dialect adds two attributes that fill the body of their element with the tree
+ * given as expression, replacing the recursive fragments the templates used before. The
+ * tree:partenza attribute of the move tree takes one document ID or a collection of them:
+ *
+ *     <ul class="tree" tree:home="${lista}"></ul>
+ *     <ul class="tree" tree:sposta="${lista}" tree:partenza="${idPartenza}" tree:padre="${dirPadre}"></ul>
+ */
+public class TreeDialect extends AbstractProcessorDialect {
+
+	/// Prefix of the attributes of the dialect.
+	public static final String PREFIX = "tree";
+
+	public TreeDialect() {
+		super("Tree Dialect", PREFIX, StandardDialect.PROCESSOR_PRECEDENCE);
+	}
+
+	/**
+	 * @brief Gets the processors of the dialect.
+	 * @param dialectPrefix the prefix configured for the dialect.
+	 * @return the processors of the tree:home and tree:sposta attributes, and the one removing
+	 *         the xmlns:tree declaration from the output.
+	 */
+	@Override
+	public Set<IProcessor> getProcessors(String dialectPrefix) {
+		Set<IProcessor> processors = new HashSet<>();
+		processors.add(new TreeAttributeProcessor(dialectPrefix, "home"));
+		processors.add(new TreeAttributeProcessor(dialectPrefix, "sposta"));
+		processors.add(new StandardXmlNsTagProcessor(TemplateMode.HTML, dialectPrefix));
+		return processors;
+	}
+
+	/**
+	 * @class TreeAttributeProcessor
+	 * @brief Evaluates the tree of a tree:home or tree:sposta attribute and renders it as body.
+	 */
+	private static class TreeAttributeProcessor extends AbstractAttributeTagProcessor {
+		private final String dialectPrefix;
+		private final String mode;
+
+		private TreeAttributeProcessor(String dialectPrefix, String mode) {
+			super(TemplateMode.HTML, dialectPrefix, null, false, mode, true, StandardDialect.PROCESSOR_PRECEDENCE,
+					true);
+			this.dialectPrefix = dialectPrefix;
+			this.mode = mode;
+		}
+
+		@Override
+		protected void doProcess(ITemplateContext context, IProcessableElementTag tag, AttributeName attributeName,
+				String attributeValue, IElementTagStructureHandler structureHandler) {
+			List<File> lista = toList(evaluate(context, attributeValue));
+			StringBuilder markup = new StringBuilder(Math.max(256, lista.size() * 256));
+			try {
+				if (mode.equals("home")) {
+					TreeRenderer.renderHome(lista, markup);
+				} else {
+					Set<Integer> partenze = toIds(evaluate(context, tag.getAttributeValue(dialectPrefix, "partenza")));
+					int dirPadre = toInt(evaluate(context, tag.getAttributeValue(dialectPrefix, "padre")));
+					structureHandler.removeAttribute(dialectPrefix, "partenza");
+					structureHandler.removeAttribute(dialectPrefix, "padre");
+					TreeRenderer.renderSposta(lista, partenze, dirPadre, markup);
+				}
+			} catch (IOException e) {
+				// a StringBuilder never fails
+				throw new TemplateProcessingException("Error rendering the tree", e);
+			}
+			structureHandler.setBody(markup, false);
+		}
+
+		private static Object evaluate(ITemplateContext context, String expression) {
+			if (expression == null) {
+				return null;
+			}
+			return StandardExpressions.getExpressionParser(context.getConfiguration())
+					.parseExpression(context, expression).execute(context);
+		}
+
+		@SuppressWarnings("unchecked")
+		private static List<File> toList(Object value) {
+			if (value == null) {
+				return List.of();
+			}
+			if (!(value instanceof List)) {
+				throw new TemplateProcessingException("The tree must be a list of files");
+			}
+			return (List<File>) value;
+		}
+
+		private static Set<Integer> toIds(Object value) {
+			Set<Integer> ids = new HashSet<>();
+			if (value instanceof Iterable) {
+				for (Object id : (Iterable<?>) value) {
+					ids.add(toInt(id));
+				}
+			} else if (value instanceof int[]) {
+				for (int id : (int[]) value) {
+					ids.add(id);
+				}
+			} else if (value != null) {
+				ids.add(toInt(value));
+			}
+			return ids;
+		}
+
+		private static int toInt(Object value) {
+			if (value instanceof Number) {
+				return ((Number) value).intValue();
+			}
+			return value == null ? 0 : Integer.parseInt(value.toString());
+		}
+	}
+}
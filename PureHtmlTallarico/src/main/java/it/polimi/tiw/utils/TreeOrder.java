@@ -2,6 +2,7 @@ package it.polimi.tiw.utils;
 
 import it.polimi.tiw.beans.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @file TreeOrder.java
@@ -12,7 +13,7 @@ import java.util.ArrayList;
  * based on their parent directory relationships.
  */
 public class TreeOrder {
-	
+
 	/**
 	 * @brief Organizes a list of files into a tree structure.
 	 * @param lista an ArrayList of File objects to be organized.
@@ -22,23 +23,110 @@ public class TreeOrder {
 	 * based on the directory IDs. Files with a parent directory ID of 0 are considered
 	 * root elements and are added directly to the root of the tree. Other files are added
 	 * as children to their respective parent directories.
+	 *
+	 * The files are first indexed by ID in a single pass, so every parent is found in
+	 * constant time and the whole tree is built in linear time. Children keep the order
+	 * they have in the input list. If several files share an ID, children are attached to
+	 * the first one. Files whose parent is not in the list (orphans), and files that name
+	 * themselves as parent, are left out of the tree.
 	 */
 	public static File getOrder(ArrayList<File> lista) {
+		return getOrder(lista, 0);
+	}
+
+	/**
+	 * @brief Organizes a part of the hierarchy into a tree structure.
+	 * @param lista an ArrayList of File objects to be organized.
+	 * @param idRadice the parent directory ID of the files to be placed at the top of the tree.
+	 * @return a File object representing the root of the organized tree.
+	 *
+	 * Works like getOrder(ArrayList), but the files added directly to the root are the
+	 * ones whose parent directory ID is idRadice, e.g. the first level of a subtree. Each
+	 * call emits a TreeBuildEvent when a Flight Recorder recording enables it.
+	 */
+	public static File getOrder(ArrayList<File> lista, int idRadice) {
+		TreeBuildEvent event = new TreeBuildEvent();
+		event.begin();
 		File root = new File();
-		boolean find;
+		IdIndex index = new IdIndex(lista);
 		for (int i = 0; i < lista.size(); i++) {
-			find = false;
-			if (lista.get(i).getIdDirPadre() == 0) {
-				root.addFiglio(lista.get(i));
-				find = true;
-			}
-			for (int j = 0; j < lista.size() && !find; j++) {
-				if (lista.get(i).getIdDirPadre() == lista.get(j).getIdDocu()) {
-					lista.get(j).addFiglio(lista.get(i));
-					find = true;
+			File file = lista.get(i);
+			int idDirPadre = file.getIdDirPadre();
+			if (idDirPadre == idRadice) {
+				root.addFiglio(file);
+			} else {
+				int parent = index.positionOf(idDirPadre);
+				if (parent >= 0 && parent != i) {
+					lista.get(parent).addFiglio(file);
 				}
 			}
 		}
+		event.end();
+		if (event.shouldCommit()) {
+			RequestTiming timing = RequestTiming.current();
+			event.nodes = lista.size();
+			event.root = idRadice;
+			event.user = timing == null ? 0 : timing.getUser();
+			event.endpoint = timing == null ? "" : timing.getEndpoint();
+			event.commit();
+		}
 		return root;
 	}
+
+	/**
+	 * @class IdIndex
+	 * @brief Maps document IDs to their position in a list of files.
+	 *
+	 * Open-addressing hash table on primitive ints with linear probing: neither keys nor
+	 * positions are boxed, and the table is allocated once with a load factor below 0.5.
+	 */
+	private static class IdIndex {
+		private final int[] keys;
+		private final int[] positions;
+		private final int mask;
+
+		/**
+		 * @brief Indexes every file of the list by its ID, keeping the first occurrence.
+		 * @param lista the files to index.
+		 */
+		private IdIndex(ArrayList<File> lista) {
+			int capacity = Integer.highestOneBit(Math.max(2, lista.size()) * 2 - 1) << 1;
+			keys = new int[capacity];
+			positions = new int[capacity];
+			mask = capacity - 1;
+			Arrays.fill(positions, -1);
+			for (int i = 0; i < lista.size(); i++) {
+				int key = lista.get(i).getIdDocu();
+				int slot = slot(key);
+				while (positions[slot] >= 0 && keys[slot] != key) {
+					slot = (slot + 1) & mask;
+				}
+				if (positions[slot] < 0) {
+					keys[slot] = key;
+					positions[slot] = i;
+				}
+			}
+		}
+
+		/**
+		 * @brief Finds the position of a file in the indexed list.
+		 * @param key the ID of the file.
+		 * @return the position of the first file with that ID, or -1 if there is none.
+		 */
+		private int positionOf(int key) {
+			int slot = slot(key);
+			while (positions[slot] >= 0) {
+				if (keys[slot] == key) {
+					return positions[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private int slot(int key) {
+			int hash = key * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+	}
 }
@@ -0,0 +1,143 @@
+package it.polimi.tiw.utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.unbescape.html.HtmlEscape;
+
+import it.polimi.tiw.beans.File;
+
+/**
+ * @file TreeRenderer.java
+ * @brief This class writes the HTML markup of a directory tree.
+ * @class TreeRenderer
+ *
+ * The tree is walked iteratively with an explicit stack of child iterators, so the
+ * rendering time is linear in the number of nodes and the Java stack depth does not
+ * grow with the depth of the folders. The markup is appended straight to the given
+ * output as nested ul/li elements with the same forms the templates used to produce.
+ */
+public class TreeRenderer {
+
+	/// ID of the form of the move page holding the documents being moved.
+	public static final String SPOSTA_FORM = "sposta";
+
+	/**
+	 * @interface NodeWriter
+	 * @brief Writes the content of the li element of a single node.
+	 */
+	private interface NodeWriter {
+		void write(File file, Appendable out) throws IOException;
+	}
+
+	/**
+	 * @brief Writes the tree of the home page: each node opens its directory contents.
+	 * @param lista the top-level nodes of the tree.
+	 * @param out the output the markup is appended to.
+	 * @throws IOException if the output cannot be written.
+	 */
+	public static void renderHome(List<File> lista, Appendable out) throws IOException {
+		render(lista, out, (file, o) -> {
+			o.append("<form action=\"createcontenuti\" method=\"post\">");
+			hidden(o, "idDir", file.getIdDocu());
+			o.append("<button type=\"submit\">");
+			name(o, file, false);
+			o.append("</button></form>");
+			if (file.isDaEspandere()) {
+				o.append("<form action=\"createhome\" method=\"post\">");
+				hidden(o, "idDir", file.getIdDocu());
+				o.append("<button type=\"submit\">Espandi</button></form>");
+			}
+		});
+	}
+
+	/**
+	 * @brief Writes the tree of the move page: each directory is a possible destination.
+	 * @param lista the top-level nodes of the tree.
+	 * @param partenze the IDs of the documents being moved.
+	 * @param dirPadre the ID of the directory currently containing the documents.
+	 * @param out the output the markup is appended to.
+	 * @throws IOException if the output cannot be written.
+	 *
+	 * Every directory is a button submitting its ID as idDirDest with the form SPOSTA_FORM,
+	 * which holds the documents being moved once for the whole tree. The current directory
+	 * cannot be selected and, like the documents being moved, is highlighted. Directories
+	 * being moved cannot be selected either, nor can any directory inside them.
+	 */
+	public static void renderSposta(List<File> lista, Set<Integer> partenze, int dirPadre, Appendable out)
+			throws IOException {
+		// the subtrees of the documents being moved, found in one pass over the tree
+		Set<File> bloccati = Collections.newSetFromMap(new IdentityHashMap<>());
+		ArrayDeque<File> pending = new ArrayDeque<>(lista);
+		while (!pending.isEmpty()) {
+			File file = pending.pop();
+			boolean bloccato = bloccati.contains(file) || partenze.contains(file.getIdDocu());
+			for (File figlio : file.getFigli()) {
+				if (bloccato) {
+					bloccati.add(figlio);
+				}
+				pending.push(figlio);
+			}
+		}
+		render(lista, out, (file, o) -> {
+			boolean dir = "dir".equals(file.getTipo());
+			boolean current = partenze.contains(file.getIdDocu()) || dir && file.getIdDocu() == dirPadre;
+			if (dir && !current && !bloccati.contains(file)) {
+				o.append("<button type=\"submit\" form=\"").append(SPOSTA_FORM).append("\" name=\"idDirDest\" value=\"")
+						.append(Integer.toString(file.getIdDocu())).append("\">");
+			} else {
+				o.append("<button type=\"button\">");
+			}
+			name(o, file, current);
+			o.append("</button>");
+		});
+	}
+
+	/**
+	 * @brief Walks the tree depth-first, writing every node in the order of its siblings.
+	 * @param lista the top-level nodes of the tree.
+	 * @param out the output the markup is appended to.
+	 * @param nodeWriter the writer of the content of each node.
+	 * @throws IOException if the output cannot be written.
+	 */
+	private static void render(List<File> lista, Appendable out, NodeWriter nodeWriter) throws IOException {
+		ArrayDeque<Iterator<File>> stack = new ArrayDeque<>();
+		stack.push(lista.iterator());
+		while (!stack.isEmpty()) {
+			Iterator<File> siblings = stack.peek();
+			if (!siblings.hasNext()) {
+				stack.pop();
+				if (!stack.isEmpty()) {
+					out.append("</ul></li>");
+				}
+				continue;
+			}
+			File file = siblings.next();
+			out.append("<li>");
+			nodeWriter.write(file, out);
+			if (file.getFigli().isEmpty()) {
+				out.append("</li>");
+			} else {
+				out.append("<ul class=\"tree\">");
+				stack.push(file.getFigli().iterator());
+			}
+		}
+	}
+
+	private static void hidden(Appendable out, String name, int value) throws IOException {
+		out.append("<input type=\"hidden\" name=\"").append(name).append("\" value=\"")
+				.append(Integer.toString(value)).append("\" />");
+	}
+
+	private static void name(Appendable out, File file, boolean highlighted) throws IOException {
+		out.append("dir".equals(file.getTipo()) ? "<span class=\"icon dir\"></span>" : "<span class=\"icon file\"></span>");
+		out.append(highlighted ? "<span class=\"red-text\">" : "<span>");
+		out.append(HtmlEscape.escapeHtml5Xml(file.getNome() == null ? "" : file.getNome()));
+		out.append("</span>");
+	}
+}
@@ -0,0 +1,23 @@
+-- Tables of the NAS service: users and their documents (files and directories).
+-- Directories have tipo = 'dir'; top-level documents have a NULL id_dirPadre.
+
+CREATE TABLE IF NOT EXISTS utente (
+	id_utente INT NOT NULL AUTO_INCREMENT,
+	nome VARCHAR(45) NOT NULL,
+	mail VARCHAR(100) NOT NULL,
+	psw VARCHAR(45) NOT NULL,
+	PRIMARY KEY (id_utente)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS docu (
+	id_docu INT NOT NULL AUTO_INCREMENT,
+	nome VARCHAR(45) NOT NULL,
+	creazione DATE NOT NULL,
+	proprietario INT NOT NULL,
+	tipo VARCHAR(45) NOT NULL,
+	id_dirPadre INT NULL,
+	descrizione VARCHAR(255) NULL,
+	PRIMARY KEY (id_docu),
+	CONSTRAINT docu_proprietario_fk FOREIGN KEY (proprietario) REFERENCES utente (id_utente) ON DELETE CASCADE,
+	CONSTRAINT docu_padre_fk FOREIGN KEY (id_dirPadre) REFERENCES docu (id_docu) ON DELETE CASCADE
+) ENGINE = InnoDB;
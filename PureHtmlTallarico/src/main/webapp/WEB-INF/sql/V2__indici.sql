@@ -0,0 +1,19 @@
+-- Indexes matching the access paths of FileDAO and UserDAO.
+-- InnoDB appends the primary key to every secondary index, so id_docu is the
+-- tie-breaker of the sorted listings without being named.
+
+-- getDir, getDirSubtree: the directories of a user, sorted by parent
+CREATE INDEX docu_proprietario_tipo ON docu (proprietario, tipo, id_dirPadre);
+
+-- getAll, getFileFrom sorted by name: the documents of a user, by parent
+CREATE INDEX docu_proprietario_padre_nome ON docu (proprietario, id_dirPadre, nome);
+
+-- getFileFrom sorted by creation date
+CREATE INDEX docu_proprietario_padre_creazione ON docu (proprietario, id_dirPadre, creazione);
+
+-- children of a directory, whatever their owner (getDirSubtree, foreign key checks)
+CREATE INDEX docu_padre_tipo ON docu (id_dirPadre, tipo);
+
+-- getUser, isExistingMail, isExistingUsername; registrations cannot race past the checks
+CREATE UNIQUE INDEX utente_mail ON utente (mail);
+CREATE UNIQUE INDEX utente_nome ON utente (nome);
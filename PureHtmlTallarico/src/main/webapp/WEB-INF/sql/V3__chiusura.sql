@@ -0,0 +1,29 @@
+-- Closure table of the docu hierarchy: one row for every document and each of its
+-- ancestors, itself included at depth 0. Maintained by FileDAO in the same
+-- transaction as every insert and move.
+
+CREATE TABLE IF NOT EXISTS docu_chiusura (
+	antenato INT NOT NULL,
+	discendente INT NOT NULL,
+	profondita INT NOT NULL,
+	PRIMARY KEY (antenato, discendente),
+	CONSTRAINT docu_chiusura_antenato_fk FOREIGN KEY (antenato) REFERENCES docu (id_docu) ON DELETE CASCADE,
+	CONSTRAINT docu_chiusura_discendente_fk FOREIGN KEY (discendente) REFERENCES docu (id_docu) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+-- getAncestors and the moves: the ancestors of a document, by depth
+CREATE INDEX docu_chiusura_discendente ON docu_chiusura (discendente, profondita);
+
+-- the existing hierarchy, however deep
+SET SESSION cte_max_recursion_depth = 1000000;
+
+INSERT IGNORE INTO docu_chiusura (antenato, discendente, profondita)
+WITH RECURSIVE chiusura (antenato, discendente, profondita) AS (
+	SELECT id_docu, id_docu, 0 FROM docu
+	UNION ALL
+	SELECT C.antenato, D.id_docu, C.profondita + 1 FROM chiusura C JOIN docu D ON D.id_dirPadre = C.discendente
+)
+SELECT antenato, discendente, profondita FROM chiusura;
+
+-- the connection goes back to the pool: later borrowers get the default limit
+SET SESSION cte_max_recursion_depth = DEFAULT;
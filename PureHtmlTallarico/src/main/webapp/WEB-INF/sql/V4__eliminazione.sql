@@ -0,0 +1,6 @@
+-- Deleted documents are only marked, then removed in small batches in background.
+
+ALTER TABLE docu ADD COLUMN eliminato BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- purgeDeleted: the few documents waiting to be removed
+CREATE INDEX docu_eliminato ON docu (eliminato);